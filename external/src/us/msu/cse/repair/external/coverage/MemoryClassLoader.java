@@ -14,6 +14,10 @@ public class MemoryClassLoader extends URLClassLoader {
 		// TODO Auto-generated constructor stub
 	}
 
+	public MemoryClassLoader(URL[] urls, ClassLoader parent) {
+		super(urls, parent);
+	}
+
 	public void addDefinition(final String name, final byte[] bytes) {
 		definitions.put(name, bytes);
 	}
@@ -0,0 +1,173 @@
+package us.msu.cse.repair.external.coverage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.IRuntime;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+
+import us.msu.cse.repair.external.junit.TimedTest;
+import us.msu.cse.repair.external.util.Util;
+
+/**
+ * Per-test coverage of a given list of lines. The classes of the lines are
+ * instrumented once, and every test runs in a fresh MemoryClassLoader, as in
+ * TestFilter, so that static state does not carry over between tests.
+ *
+ * For every test, "TestCoverage: test i j ..." is printed, where i, j, ...
+ * are the indices of the covered lines in the given list. A test that does
+ * not finish within the timeout is reported as "TestTimeout: test" instead,
+ * and ends the run: it is left behind on its thread, where it may still hit
+ * probes and change static state. The caller runs the rest in a fresh JVM.
+ *
+ * The collector is run on the class path of ARJA itself, with its JaCoCo
+ * 0.8.x, since the 0.7.9 in external/lib cannot instrument Java 11 classes.
+ */
+public class TestCoverageCollector {
+	private static String binJavaDir;
+	private static String binTestDir;
+	private static Set<String> dependences;
+
+	private static Map<LCNode, Integer> lineIndices;
+	private static Set<String> classes;
+	private static List<String> tests;
+
+	private static long timeout;
+
+	public static void main(String args[]) throws Exception {
+		binJavaDir = args[0].trim();
+		binTestDir = args[1].trim();
+		dependences = new HashSet<String>();
+
+		lineIndices = new LinkedHashMap<LCNode, Integer>();
+		classes = new HashSet<String>();
+		tests = new ArrayList<String>();
+
+		String[] depStrs = args[2].trim().split(File.pathSeparator);
+		for (String dep : depStrs) {
+			if (!dep.isEmpty())
+				dependences.add(dep);
+		}
+
+		List<String> lineStrs = Util.readLines(new File(args[3].trim().substring(1)));
+		for (String str : lineStrs) {
+			String ns[] = str.split("#");
+			lineIndices.put(new LCNode(ns[0], Integer.parseInt(ns[1])), lineIndices.size());
+			classes.add(ns[0]);
+		}
+
+		for (String str : Util.readLines(new File(args[4].trim().substring(1)))) {
+			if (!str.isEmpty())
+				tests.add(str);
+		}
+
+		timeout = Long.parseLong(args[5].trim());
+
+		collect();
+		System.exit(0);
+	}
+
+	private static void collect() throws Exception {
+		// whatever the tests print must not mix with the coverage lines
+		PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true);
+		System.setOut(System.err);
+
+		URL[] urls = Util.getURLs(binJavaDir, binTestDir, dependences);
+
+		final IRuntime runtime = new LoggerRuntime();
+		final Instrumenter instr = new Instrumenter(runtime);
+
+		Map<String, byte[]> originalBytes = new HashMap<String, byte[]>();
+		Map<String, byte[]> instrumentedBytes = new HashMap<String, byte[]>();
+		for (String binJavaClass : classes) {
+			InputStream istream = Util.getTargetClass(binJavaDir, binJavaClass);
+			byte[] bytes = readAll(istream);
+			istream.close();
+			originalBytes.put(binJavaClass, bytes);
+			instrumentedBytes.put(binJavaClass, instr.instrument(bytes, binJavaClass));
+		}
+
+		RuntimeData data = new RuntimeData();
+		runtime.startup(data);
+
+		out.println();
+		for (String test : tests) {
+			MemoryClassLoader loader = new MemoryClassLoader(urls);
+			for (Map.Entry<String, byte[]> entry : instrumentedBytes.entrySet())
+				loader.addDefinition(entry.getKey(), entry.getValue());
+
+			int outcome;
+			try {
+				outcome = TimedTest.run(loader, test, timeout);
+			} catch (ClassNotFoundException e) {
+				// not reported, so the test is always run
+				System.err.println("Test class cannot be loaded: " + test);
+				loader.close();
+				continue;
+			}
+
+			final ExecutionDataStore executionData = new ExecutionDataStore();
+			final SessionInfoStore sessionInfos = new SessionInfoStore();
+			data.collect(executionData, sessionInfos, false);
+			loader.close();
+
+			if (outcome == TimedTest.TIMEOUT) {
+				out.println("TestTimeout: " + test);
+				break;
+			}
+
+			StringBuilder builder = new StringBuilder("TestCoverage: " + test);
+			final CoverageBuilder coverageBuilder = new CoverageBuilder();
+			final Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
+			for (Map.Entry<String, byte[]> entry : originalBytes.entrySet())
+				analyzer.analyzeClass(entry.getValue(), entry.getKey());
+
+			for (final IClassCoverage cc : coverageBuilder.getClasses()) {
+				String className = cc.getName().replace("/", ".");
+				for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
+					int status = cc.getLine(i).getStatus();
+					if (status == ICounter.FULLY_COVERED || status == ICounter.PARTLY_COVERED) {
+						Integer index = lineIndices.get(new LCNode(className, i));
+						if (index != null)
+							builder.append(" ").append(index);
+					}
+				}
+			}
+			out.println(builder.toString());
+
+			// the store shares the probe arrays, so they are only cleared now
+			data.reset();
+		}
+
+		runtime.shutdown();
+	}
+
+	private static byte[] readAll(InputStream istream) throws Exception {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int n;
+		while ((n = istream.read(chunk)) != -1)
+			buffer.write(chunk, 0, n);
+		return buffer.toByteArray();
+	}
+}
@@ -1,16 +1,23 @@
 package us.msu.cse.repair.external.coverage;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IClassCoverage;
 import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.data.ExecutionData;
 import org.jacoco.core.data.ExecutionDataStore;
 import org.jacoco.core.data.SessionInfoStore;
 import org.jacoco.core.instr.Instrumenter;
@@ -32,6 +39,10 @@ public class TestFilter {
 	private static Set<LCNode> faultyLines;
 	private static Set<String> orgPositiveTests;
 	private static Set<String> faultyClasses;
+
+	// the results, tests print to System.err instead
+	private static PrintStream out;
+
 	public static void main(String args[]) throws Exception  {
 		binJavaDir = args[0].trim();
 		binTestDir = args[1].trim();
@@ -39,7 +50,7 @@ public class TestFilter {
 		
 		faultyLines = new HashSet<LCNode>();
 		faultyClasses = new HashSet<String>();
-		orgPositiveTests = new HashSet<String>();
+		orgPositiveTests = new LinkedHashSet<String>();
 		
 		String[] depStrs = args[2].trim().split(File.pathSeparator);
 		for (String dep : depStrs)
@@ -75,81 +86,180 @@ public class TestFilter {
 				orgPositiveTests.add(str);
 		}
 		
-		List<String> filteredPositiveTests = getFilteredPositiveTests();
-		printFilteredPositiveTests(filteredPositiveTests);
+		out = System.out;
+		System.setOut(System.err);
+
+		getFilteredPositiveTests();
+		out.flush();
 		System.exit(0);
 	}
-	
-	private static void printFilteredPositiveTests(List<String> filteredPositiveTests) {
-		System.out.println();
-		for (String test : filteredPositiveTests)
-			System.out.println("FilteredTest: " + test);
-	}
 
-	private static List<String> getFilteredPositiveTests() throws Exception {
-		List<String> filteredPositiveTests = new ArrayList<String>();
-		for (String test : orgPositiveTests) {
-			if (!canFiltered(test))
-				filteredPositiveTests.add(test);
-		}
-
-		return filteredPositiveTests;
+	/**
+	 * Prints the result of a test as soon as it is known, in the order of the
+	 * tests given, so a caller that kills a hanging JVM keeps the results
+	 * before it and knows which test hung.
+	 */
+	private static void printResult(String test, boolean kept) {
+		out.println((kept ? "FilteredTest: " : "DiscardedTest: ") + test);
+		out.flush();
 	}
 
-	private static boolean canFiltered(String test)
-			throws Exception {
-	//	System.out.println(test);
-		final MemoryClassLoader loader = new MemoryClassLoader(Util.getURLs(binJavaDir, binTestDir, dependences));
-		
+	/**
+	 * Runs every test once in a single loader in which each faulty class is
+	 * instrumented and defined only once; the probes are reset between tests.
+	 * A test is kept if it executes a probe of the faulty lines (see
+	 * getFaultyProbes).
+	 *
+	 * Static initializers run only once in the shared loader, so the faulty
+	 * classes are initialized before the first test. If the initializer of a
+	 * class covers a faulty line, every test that executes the class is kept,
+	 * rather than only the test that happened to load it first. A class whose
+	 * initializer fails here is initialized by the first test that uses it.
+	 */
+	private static List<String> getFilteredPositiveTests() throws Exception {
 		final IRuntime runtime = new LoggerRuntime();
 		final Instrumenter instr = new Instrumenter(runtime);
 
+		final MemoryClassLoader loader = new MemoryClassLoader(Util.getURLs(binJavaDir, binTestDir, dependences));
+		Map<String, byte[]> originalBytes = new HashMap<String, byte[]>();
 		for (String binJavaClass : faultyClasses) {
 			InputStream istream = Util.getTargetClass(binJavaDir, binJavaClass);
-			byte[] bytes = instr.instrument(istream, binJavaClass);
+			byte[] bytes = readAll(istream);
 			istream.close();
-			loader.addDefinition(binJavaClass, bytes);
+			originalBytes.put(binJavaClass, bytes);
+			loader.addDefinition(binJavaClass, instr.instrument(bytes, binJavaClass));
 		}
 
 		RuntimeData data = new RuntimeData();
 		runtime.startup(data);
 
-		String clsName = test.split("#")[0];
-		String mName = test.split("#")[1];
-		Request request = Request.method(loader.loadClass(clsName), mName);
-		new JUnitCore().run(request);		
+		// class name -> probes that cover a faulty line
+		Map<String, BitSet> faultyProbes = new HashMap<String, BitSet>();
 
-		final ExecutionDataStore executionData = new ExecutionDataStore();
-		final SessionInfoStore sessionInfos = new SessionInfoStore();
-		data.collect(executionData, sessionInfos, false);
-		runtime.shutdown();
+		data.reset();
+		for (String binJavaClass : faultyClasses) {
+			try {
+				Class.forName(binJavaClass, true, loader);
+			} catch (Throwable t) {
+				System.err.println("Class cannot be initialized before the tests: " + binJavaClass);
+			}
+		}
+		// classes whose static initializer covers a faulty line
+		Set<String> faultyInitClasses = new HashSet<String>();
+		final ExecutionDataStore initData = new ExecutionDataStore();
+		data.collect(initData, new SessionInfoStore(), false);
+		for (ExecutionData classData : initData.getContents()) {
+			String className = classData.getName().replace("/", ".");
+			byte[] bytes = originalBytes.get(className);
+			if (bytes == null || !classData.hasHits())
+				continue;
 
-		final CoverageBuilder coverageBuilder = new CoverageBuilder();
-		final Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
+			BitSet probes = getFaultyProbes(classData, bytes);
+			faultyProbes.put(className, probes);
+			if (intersects(classData.getProbes(), probes))
+				faultyInitClasses.add(className);
+		}
 
-		
-		for (String binJavaClass : faultyClasses) {
-			InputStream istream = Util.getTargetClass(binJavaDir, binJavaClass);
-			analyzer.analyzeClass(istream, binJavaClass);
-			istream.close();
+		List<String> filteredPositiveTests = new ArrayList<String>();
+		JUnitCore junit = new JUnitCore();
+		for (String test : orgPositiveTests) {
+			data.reset();
+			try {
+				String clsName = test.split("#")[0];
+				String mName = test.split("#")[1];
+				junit.run(Request.method(loader.loadClass(clsName), mName));
+			} catch (Throwable t) {
+				// nothing is known about the test, keep it
+				filteredPositiveTests.add(test);
+				printResult(test, true);
+				continue;
+			}
+
+			final ExecutionDataStore executionData = new ExecutionDataStore();
+			final SessionInfoStore sessionInfos = new SessionInfoStore();
+			data.collect(executionData, sessionInfos, false);
+
+			boolean kept = false;
+			for (ExecutionData classData : executionData.getContents()) {
+				String className = classData.getName().replace("/", ".");
+				byte[] bytes = originalBytes.get(className);
+				if (bytes == null || !classData.hasHits())
+					continue;
+
+				if (faultyInitClasses.contains(className)) {
+					kept = true;
+					break;
+				}
+
+				BitSet probes = faultyProbes.get(className);
+				if (probes == null) {
+					probes = getFaultyProbes(classData, bytes);
+					faultyProbes.put(className, probes);
+				}
+				if (intersects(classData.getProbes(), probes)) {
+					kept = true;
+					break;
+				}
+			}
+
+			if (kept)
+				filteredPositiveTests.add(test);
+			printResult(test, kept);
 		}
 
+		runtime.shutdown();
 		loader.close();
-		
-		for (final IClassCoverage cc : coverageBuilder.getClasses()) {
-			String className = cc.getName().replace("/", ".");
-			for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
-				int status = cc.getLine(i).getStatus();
-				if (status == ICounter.FULLY_COVERED || status == ICounter.PARTLY_COVERED) {
-					LCNode lcNode = new LCNode(className, i);
-					if (faultyLines.contains(lcNode))
-						return false;
+		return filteredPositiveTests;
+	}
+
+	/**
+	 * The probes of a class whose execution alone covers a faulty line. JaCoCo
+	 * derives the coverage of an instruction from the probes that follow it,
+	 * so a set of probes covers a line iff one of its probes does; the class is
+	 * analyzed once per probe here instead of once per test.
+	 */
+	private static BitSet getFaultyProbes(ExecutionData classData, byte[] bytes) throws Exception {
+		String className = classData.getName().replace("/", ".");
+		int probeCount = classData.getProbes().length;
+
+		BitSet faultyProbes = new BitSet(probeCount);
+		for (int p = 0; p < probeCount; p++) {
+			boolean[] probes = new boolean[probeCount];
+			probes[p] = true;
+
+			final ExecutionDataStore store = new ExecutionDataStore();
+			store.put(new ExecutionData(classData.getId(), classData.getName(), probes));
+			final CoverageBuilder coverageBuilder = new CoverageBuilder();
+			new Analyzer(store, coverageBuilder).analyzeClass(bytes, className);
+
+			for (final IClassCoverage cc : coverageBuilder.getClasses()) {
+				for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
+					int status = cc.getLine(i).getStatus();
+					if ((status == ICounter.FULLY_COVERED || status == ICounter.PARTLY_COVERED)
+							&& faultyLines.contains(new LCNode(className, i))) {
+						faultyProbes.set(p);
+						break;
+					}
 				}
 			}
 		}
-		
-//		System.out.println("end!");
-		return true;
+		return faultyProbes;
+	}
+
+	private static boolean intersects(boolean[] probes, BitSet faultyProbes) {
+		for (int p = faultyProbes.nextSetBit(0); p >= 0; p = faultyProbes.nextSetBit(p + 1)) {
+			if (p < probes.length && probes[p])
+				return true;
+		}
+		return false;
 	}
 
+	private static byte[] readAll(InputStream istream) throws Exception {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[8192];
+		int n;
+		while ((n = istream.read(chunk)) != -1)
+			buffer.write(chunk, 0, n);
+		return buffer.toByteArray();
+	}
 }
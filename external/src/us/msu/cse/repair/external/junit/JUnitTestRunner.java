@@ -1,21 +1,73 @@
 package us.msu.cse.repair.external.junit;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-
-import org.junit.runner.JUnitCore;
-import org.junit.runner.Request;
-import org.junit.runner.Result;
-
+import us.msu.cse.repair.external.coverage.MemoryClassLoader;
 import us.msu.cse.repair.external.util.Util;
 
+/**
+ * Runs the given tests once and prints their outcomes. The tests are either
+ * args[0] (separated by the path separator), a file given as "@path", or, with
+ * "-", read from stdin together with the classes of the program variant: int
+ * n, n times (UTF class name, int length, class bytes), int m, m times (UTF
+ * test). In the last case the program is not on the class path; it is loaded
+ * from the directories given by the "programDirs=" option, with the variant
+ * classes taking precedence, so nothing has to be written to disk.
+ *
+ * Options after args[0]: "failFast=n" stops the run at the first failing test
+ * once the first n tests have run ("failFast" alone is n = 0).
+ *
+ * A test that times out also ends the run, since its thread is left behind;
+ * the caller runs the rest in a fresh JVM. A test class that cannot be
+ * loaded ends the run with an error.
+ */
 public class JUnitTestRunner {
 	public static void main(String args[]) throws Exception {
+		int failFastFrom = -1;
+		String programDirs = null;
+		for (int i = 1; i < args.length; i++) {
+			String arg = args[i].trim();
+			if (arg.equals("failFast"))
+				failFastFrom = 0;
+			else if (arg.startsWith("failFast="))
+				failFastFrom = Integer.parseInt(arg.substring("failFast=".length()));
+			else if (arg.startsWith("programDirs="))
+				programDirs = arg.substring("programDirs=".length());
+		}
+
 		List<String> tests;
-		if (args[0].startsWith("@")) {
+		ClassLoader loader = JUnitTestRunner.class.getClassLoader();
+		if (args[0].trim().equals("-")) {
+			List<URL> urls = new ArrayList<URL>();
+			if (programDirs != null) {
+				for (String dir : programDirs.split(File.pathSeparator)) {
+					if (!dir.isEmpty())
+						urls.add(new File(dir).toURI().toURL());
+				}
+			}
+			MemoryClassLoader memoryLoader = new MemoryClassLoader(urls.toArray(new URL[0]));
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+			int classCount = in.readInt();
+			for (int i = 0; i < classCount; i++) {
+				String className = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				memoryLoader.addDefinition(className, bytes);
+			}
+			int testCount = in.readInt();
+			tests = new ArrayList<String>();
+			for (int i = 0; i < testCount; i++)
+				tests.add(in.readUTF());
+
+			loader = memoryLoader;
+		} else if (args[0].startsWith("@")) {
 			String path = args[0].trim().substring(1);
 			tests = Util.readLines(new File(path));
 		} else {
@@ -23,38 +75,45 @@ public class JUnitTestRunner {
 			tests = Arrays.asList(testStrs);
 		}
 
-		runTests(tests);
+		runTests(tests, loader, failFastFrom);
 		System.exit(0);
 	}
 
-	private static void runTests(List<String> tests) throws ClassNotFoundException {
+	/**
+	 * Each entry is a test, optionally followed by "=" and its timeout in ms.
+	 * Outcomes are printed as soon as a test finishes, so a run that is killed
+	 * from outside still leaves the results of the tests that completed.
+	 */
+	private static void runTests(List<String> tests, ClassLoader loader, int failFastFrom)
+			throws ClassNotFoundException {
 		List<String> failedTests = new ArrayList<String>();
 
-		for (String test : tests) {
+		for (int i = 0; i < tests.size(); i++) {
+			String test = tests.get(i);
 			if (test == null || test.trim().isEmpty()) continue;
-			
-			String strs[] = test.split("#");
-			if (strs.length < 2) {
-				System.err.println("Invalid test format: " + test);
-				continue;
+
+			long timeout = 0;
+			int index = test.lastIndexOf('=');
+			if (index != -1) {
+				timeout = Long.parseLong(test.substring(index + 1).trim());
+				test = test.substring(0, index);
 			}
-			String className = strs[0];
-			String methodName = strs[1];
-			
-			Request request = Request.method(Class.forName(className), methodName);
-			Result res = new JUnitCore().run(request);
 
-			if (!res.wasSuccessful())
+			int outcome = TimedTest.run(loader, test, timeout);
+			if (outcome == TimedTest.TIMEOUT)
+				System.out.println("TimeoutTest: " + test);
+			if (outcome != TimedTest.PASSED) {
 				failedTests.add(test);
-		}
+				System.out.println("FailedTest: " + test);
+			}
+			System.out.println("ExecutedTest: " + test);
 
-		printFailedTests(failedTests);
-	}
+			if (outcome == TimedTest.TIMEOUT)
+				break;
+			if (failFastFrom >= 0 && !failedTests.isEmpty() && i + 1 >= failFastFrom)
+				break;
+		}
 
-		
-	private static void printFailedTests(List<String> failedTests) {
 		System.out.println("FailureCount: " + failedTests.size());
-		for (String test : failedTests) 
-			System.out.println("FailedTest: " + test);
 	}
 }
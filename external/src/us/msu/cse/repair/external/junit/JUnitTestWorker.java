@@ -0,0 +1,106 @@
+package us.msu.cse.repair.external.junit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import us.msu.cse.repair.external.coverage.MemoryClassLoader;
+import us.msu.cse.repair.external.util.Util;
+
+/**
+ * Long-lived test runner. It reads requests from stdin and answers on stdout,
+ * so the JVM, JUnit and the dependences stay loaded between program variants.
+ *
+ * Request: int n (negative to stop), n times (UTF class name, int length,
+ * class bytes), int m, m times (UTF test, long timeout in ms, 0 for none),
+ * int failFastFrom (-1 for none). Response, one per test as soon as it
+ * finishes: boolean failed, boolean timedOut, long duration in ms. With
+ * failFastFrom n, no test runs after the first failing one once the first n
+ * tests have run. A timed-out test leaves its thread behind, so the worker
+ * answers for it and exits; the client runs the rest of the tests in a fresh
+ * worker. A test class that cannot be loaded ends the worker with an error.
+ *
+ * Every request runs in a fresh MemoryClassLoader over binJavaDir and
+ * binTestDir, so the classes of one variant never leak into the next. Its
+ * parent is one loader over the dependences that lives as long as the worker,
+ * so the library classes are loaded once. The worker's own class path only
+ * holds JUnit and this project.
+ */
+public class JUnitTestWorker {
+	public static void main(String args[]) throws Exception {
+		String binJavaDir = args[0].trim();
+		String binTestDir = args[1].trim();
+		Set<String> dependences = new HashSet<String>();
+		for (String dep : args[2].trim().split(File.pathSeparator)) {
+			if (!dep.isEmpty())
+				dependences.add(dep);
+		}
+		URL[] urls = Util.getURLs(binJavaDir, binTestDir, dependences);
+		URL[] programURLs = Arrays.copyOfRange(urls, 0, 2);
+		URLClassLoader dependenceLoader = new URLClassLoader(Arrays.copyOfRange(urls, 2, urls.length));
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		// whatever the tests print must not end up in the protocol stream
+		System.setOut(System.err);
+
+		while (true) {
+			int classCount;
+			try {
+				classCount = in.readInt();
+			} catch (EOFException e) {
+				break;
+			}
+			if (classCount < 0)
+				break;
+
+			MemoryClassLoader loader = new MemoryClassLoader(programURLs, dependenceLoader);
+			for (int i = 0; i < classCount; i++) {
+				String className = in.readUTF();
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				loader.addDefinition(className, bytes);
+			}
+
+			int testCount = in.readInt();
+			String tests[] = new String[testCount];
+			long timeouts[] = new long[testCount];
+			for (int i = 0; i < testCount; i++) {
+				tests[i] = in.readUTF();
+				timeouts[i] = in.readLong();
+			}
+			int failFastFrom = in.readInt();
+
+			Thread.currentThread().setContextClassLoader(loader);
+			boolean anyFailed = false;
+			for (int i = 0; i < testCount; i++) {
+				long start = System.currentTimeMillis();
+				int outcome = TimedTest.run(loader, tests[i], timeouts[i]);
+				boolean failed = outcome != TimedTest.PASSED;
+				out.writeBoolean(failed);
+				out.writeBoolean(outcome == TimedTest.TIMEOUT);
+				out.writeLong(System.currentTimeMillis() - start);
+				out.flush();
+				if (outcome == TimedTest.TIMEOUT)
+					System.exit(0);
+				anyFailed |= failed;
+				if (failFastFrom >= 0 && anyFailed && i + 1 >= failFastFrom)
+					break;
+			}
+			Thread.currentThread().setContextClassLoader(null);
+			loader.close();
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,62 @@
+package us.msu.cse.repair.external.junit;
+
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+
+/**
+ * Runs a single test method with its own time limit. A test that does not
+ * finish in time is interrupted and left behind on a daemon thread, where it
+ * may still change static state, so the JVM must not run other tests
+ * afterwards.
+ */
+public class TimedTest {
+	public static final int PASSED = 0;
+	public static final int FAILED = 1;
+	public static final int TIMEOUT = 2;
+
+	/**
+	 * Runs test ("className#methodName") with classes from loader. A timeout
+	 * of 0 means no limit. Invalid test names count as passed, as the runners
+	 * have always skipped them. A test class that cannot be loaded is an
+	 * error of the whole run, as it has always been, not a failing test.
+	 */
+	public static int run(final ClassLoader loader, String test, long timeout) throws ClassNotFoundException {
+		final String strs[] = test.split("#");
+		if (strs.length < 2) {
+			System.err.println("Invalid test format: " + test);
+			return PASSED;
+		}
+		final Class<?> testClass = loader.loadClass(strs[0]);
+
+		final int outcome[] = { FAILED };
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Request request = Request.method(testClass, strs[1]);
+					Result res = new JUnitCore().run(request);
+					outcome[0] = res.wasSuccessful() ? PASSED : FAILED;
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+		};
+		thread.setContextClassLoader(loader);
+		thread.setDaemon(true);
+		thread.start();
+
+		try {
+			thread.join(timeout);
+		} catch (InterruptedException e) {
+			thread.interrupt();
+			return TIMEOUT;
+		}
+
+		if (thread.isAlive()) {
+			thread.interrupt();
+			return TIMEOUT;
+		}
+		return outcome[0];
+	}
+}
@@ -49,6 +49,21 @@ public class ArjaMain {
 		if (noveltyDiversityWeightS != null)
 			parameters.put("noveltyDiversityWeight", Double.parseDouble(noveltyDiversityWeightS));
 		
+		String evaluationCacheSizeS = parameterStrs.get("evaluationCacheSize");
+		if (evaluationCacheSizeS != null)
+			parameters.put("evaluationCacheSize", Integer.parseInt(evaluationCacheSizeS));
+		
+		String compileBlacklistS = parameterStrs.get("compileBlacklist");
+		if (compileBlacklistS != null)
+			parameters.put("compileBlacklist", Boolean.parseBoolean(compileBlacklistS));
+		
+		int evaluationThreads = 1;
+		String evaluationThreadsS = parameterStrs.get("evaluationThreads");
+		if (evaluationThreadsS != null) {
+			evaluationThreads = Integer.parseInt(evaluationThreadsS);
+			parameters.put("evaluationThreads", evaluationThreads);
+		}
+		
 		int populationSize = 40;
 		int maxGenerations = 50;
 		
@@ -62,7 +77,7 @@ public class ArjaMain {
 		
 		
 		ArjaProblem problem = new ArjaProblem(parameters);
-		AbstractRepairAlgorithm repairAlg = new Arja(problem);
+		AbstractRepairAlgorithm repairAlg = new Arja(problem, evaluationThreads);
 
 		repairAlg.setInputParameter("populationSize", populationSize);
 		repairAlg.setInputParameter("maxEvaluations", populationSize * maxGenerations);
@@ -91,5 +106,14 @@ public class ArjaMain {
 		repairAlg.addOperator("selection", selection);
 		
 		repairAlg.execute();
+		
+		if (problem.getEvaluationCache() != null)
+			System.out.println(problem.getEvaluationCache());
+		if (problem.getEditFragmentCache() != null)
+			System.out.println(problem.getEditFragmentCache());
+		if (problem.getCompileFailureBlacklist() != null)
+			System.out.println(problem.getCompileFailureBlacklist());
+		if (problem.getTestCoverageMatrix() != null)
+			System.out.println(problem.getTestCoverageMatrix());
 	}
 }
@@ -83,6 +83,54 @@ public class Interpreter {
 			parameters.put("waitTime", waitTime);
 		}   
 		
+		String inMemoryVariantsS = parameterStrs.get("inMemoryVariants");
+		if (inMemoryVariantsS != null) {
+			boolean inMemoryVariants = Boolean.parseBoolean(inMemoryVariantsS);
+			parameters.put("inMemoryVariants", inMemoryVariants);
+		}
+		
+		String editFragmentsS = parameterStrs.get("editFragments");
+		if (editFragmentsS != null) {
+			boolean editFragments = Boolean.parseBoolean(editFragmentsS);
+			parameters.put("editFragments", editFragments);
+		}
+		
+		String testWorkerMaxRunsS = parameterStrs.get("testWorkerMaxRuns");
+		if (testWorkerMaxRunsS != null) {
+			int testWorkerMaxRuns = Integer.parseInt(testWorkerMaxRunsS);
+			parameters.put("testWorkerMaxRuns", testWorkerMaxRuns);
+		}
+		
+		String prioritizeTestsS = parameterStrs.get("prioritizeTests");
+		if (prioritizeTestsS != null) {
+			boolean prioritizeTests = Boolean.parseBoolean(prioritizeTestsS);
+			parameters.put("prioritizeTests", prioritizeTests);
+		}
+		
+		String failFastS = parameterStrs.get("failFast");
+		if (failFastS != null) {
+			boolean failFast = Boolean.parseBoolean(failFastS);
+			parameters.put("failFast", failFast);
+		}
+		
+		String perTestTimeoutFactorS = parameterStrs.get("perTestTimeoutFactor");
+		if (perTestTimeoutFactorS != null) {
+			double perTestTimeoutFactor = Double.parseDouble(perTestTimeoutFactorS);
+			parameters.put("perTestTimeoutFactor", perTestTimeoutFactor);
+		}
+		
+		String minTestTimeoutS = parameterStrs.get("minTestTimeout");
+		if (minTestTimeoutS != null) {
+			int minTestTimeout = Integer.parseInt(minTestTimeoutS);
+			parameters.put("minTestTimeout", minTestTimeout);
+		}
+		
+		String testImpactSelectionS = parameterStrs.get("testImpactSelection");
+		if (testImpactSelectionS != null) {
+			boolean testImpactSelection = Boolean.parseBoolean(testImpactSelectionS);
+			parameters.put("testImpactSelection", testImpactSelection);
+		}
+		
 		String patchOutputRootS = parameterStrs.get("patchOutputRoot");
 		if (patchOutputRootS != null)
 			parameters.put("patchOutputRoot", patchOutputRootS);
@@ -90,10 +138,54 @@ public class Interpreter {
 		String gzoltarDataDirS = (String) parameterStrs.get("gzoltarDataDir");
 		if (gzoltarDataDirS != null)
 			parameters.put("gzoltarDataDir", gzoltarDataDirS);
+		
+		String faultLocalizerNameS = parameterStrs.get("faultLocalizerName");
+		if (faultLocalizerNameS != null)
+			parameters.put("faultLocalizerName", faultLocalizerNameS);
+
+		String faultLocalizationShardsS = parameterStrs.get("faultLocalizationShards");
+		if (faultLocalizationShardsS != null) {
+			int faultLocalizationShards = Integer.parseInt(faultLocalizationShardsS);
+			parameters.put("faultLocalizationShards", faultLocalizationShards);
+		}
+
+		String faultLocalizationTimeoutS = parameterStrs.get("faultLocalizationTimeout");
+		if (faultLocalizationTimeoutS != null) {
+			int faultLocalizationTimeout = Integer.parseInt(faultLocalizationTimeoutS);
+			parameters.put("faultLocalizationTimeout", faultLocalizationTimeout);
+		}
+
+		String suspiciousnessFormulaS = parameterStrs.get("suspiciousnessFormula");
+		if (suspiciousnessFormulaS != null)
+			parameters.put("suspiciousnessFormula", suspiciousnessFormulaS);
+
+		String faultLocalizationCacheDirS = parameterStrs.get("faultLocalizationCacheDir");
+		if (faultLocalizationCacheDirS != null)
+			parameters.put("faultLocalizationCacheDir", faultLocalizationCacheDirS);
+
+		String defects4jDataDirS = parameterStrs.get("defects4jDataDir");
+		if (defects4jDataDirS != null)
+			parameters.put("defects4jDataDir", defects4jDataDirS);
 			
 		String ingredientModeS = parameterStrs.get("ingredientMode");
 		if (ingredientModeS != null)
 			parameters.put("ingredientMode", ingredientModeS);
+
+		String targetedParsingS = parameterStrs.get("targetedParsing");
+		if (targetedParsingS != null) {
+			boolean targetedParsing = Boolean.parseBoolean(targetedParsingS);
+			parameters.put("targetedParsing", targetedParsing);
+		}
+
+		String parsingThreadsS = parameterStrs.get("parsingThreads");
+		if (parsingThreadsS != null) {
+			int parsingThreads = Integer.parseInt(parsingThreadsS);
+			parameters.put("parsingThreads", parsingThreads);
+		}
+
+		String initSnapshotDirS = parameterStrs.get("initSnapshotDir");
+		if (initSnapshotDirS != null)
+			parameters.put("initSnapshotDir", initSnapshotDirS);
 		
 		String diffFormatS = parameterStrs.get("diffFormat");
 		if (diffFormatS != null) {
@@ -106,6 +198,22 @@ public class Interpreter {
 			boolean testFiltered = Boolean.parseBoolean(testFilteredS);
 			parameters.put("testFiltered", testFiltered);
 		}
+
+		String testFilterShardsS = parameterStrs.get("testFilterShards");
+		if (testFilterShardsS != null) {
+			int testFilterShards = Integer.parseInt(testFilterShardsS);
+			parameters.put("testFilterShards", testFilterShards);
+		}
+
+		String testFilterTimeoutS = parameterStrs.get("testFilterTimeout");
+		if (testFilterTimeoutS != null) {
+			int testFilterTimeout = Integer.parseInt(testFilterTimeoutS);
+			parameters.put("testFilterTimeout", testFilterTimeout);
+		}
+
+		String testFilterCheckpointDirS = parameterStrs.get("testFilterCheckpointDir");
+		if (testFilterCheckpointDirS != null)
+			parameters.put("testFilterCheckpointDir", testFilterCheckpointDirS);
 		
 		// ✅ 关键修复：添加 percentage 参数处理
 		String percentageS = parameterStrs.get("percentage");
@@ -134,6 +242,12 @@ public class Interpreter {
 			boolean ingredientFilterRule = Boolean.parseBoolean(ingredientFilterRuleS);
 			parameters.put("ingredientFilterRule", ingredientFilterRule);
 		}
+
+		String screeningThreadsS = parameterStrs.get("screeningThreads");
+		if (screeningThreadsS != null) {
+			int screeningThreads = Integer.parseInt(screeningThreadsS);
+			parameters.put("screeningThreads", screeningThreads);
+		}
 		
 		// ✅ 关键修复：添加 miFilterRule 参数处理（ArjaProblem 使用）
 		String miFilterRuleS = parameterStrs.get("miFilterRule");
@@ -148,6 +262,7 @@ public class Interpreter {
 		if (seed_str != null) {
 			seed = Double.parseDouble(seed_str);
 		}
+		parameters.put("seed", seed);
 		try {
 			PseudoRandom.randDouble();
 
@@ -31,10 +31,80 @@ public class ParameterInfoMain {
 		System.out.println("-DwaitTime: the allowed maximum time (ms) to execute all the considered "
 				          + "\n            tests of a program variant, default 6000ms");
 		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DtestExecutorName: ExternalTestExecutor, InternalTestExecutor or PooledTestExecutor"
+				          + "\n            (warm worker JVMs), default ExternalTestExecutor");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DeditFragments: if true, every edit is rendered to a text fragment once and the"
+				          + "\n            sources of a variant are built by splicing fragments, with AST rewriting"
+				          + "\n            only for files whose edits overlap, default true");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DinMemoryVariants: if true, ExternalTestExecutor passes the compiled classes of a"
+				          + "\n            variant to the test JVM through a pipe instead of writing them to"
+				          + "\n            binWorkingRoot, default true");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DtestWorkerMaxRuns: the number of variants a PooledTestExecutor worker JVM runs"
+				          + "\n            before it is replaced, default 100");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DprioritizeTests: if true, the negative tests and the positive tests that failed most"
+				          + "\n            often in earlier evaluations are run first, default false");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DfailFast: if true, test execution stops at the first failing test once the negative"
+				          + "\n            tests and the positive tests that failed before have run, and the"
+				          + "\n            failures of the remaining tests are estimated from their history"
+				          + "\n            (implies prioritizeTests), default false");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DperTestTimeoutFactor: if positive, the durations of the tests on the original program"
+				          + "\n            are measured first and every test gets its own timeout of this factor"
+				          + "\n            times its duration (at most waitTime); a run cut short by waitTime"
+				          + "\n            then keeps the results of the tests that finished, default 0 (off)");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DminTestTimeout: the lower bound (ms) of a per-test timeout, default 1000ms");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DtestImpactSelection: if true, the coverage of every positive test is measured once"
+				          + "\n            and a variant only runs the positive tests that execute one of its"
+				          + "\n            modification points, plus the negative tests; a test-adequate variant"
+				          + "\n            is confirmed on all the positive tests, default false");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DtestFilterShards: the number of JVMs that filter the positive tests in parallel,"
+				          + "\n            default the number of processors");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DtestFilterTimeout: the time (ms) a test filter JVM may go without a result before"
+				          + "\n            it is killed; the test it hung on is kept, default 60000ms");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DtestFilterCheckpointDir: directory where the results of the test filter are"
+				          + "\n            appended as they arrive, so a restarted run resumes where it"
+				          + "\n            stopped, default null (no checkpoint)");
+		System.out.println("-------------------------------------------------------------------------------------");
 		System.out.println("-DdiffFormat: if true, the output patch is a file generated by \"diff -u\"");
 		System.out.println("-------------------------------------------------------------------------------------");
 		System.out.println("-DgzoltarDataDir : the root directory of the output of Gzoltar 1.6.2,"
-				        + "\n                   e.g., .../gzoltar-data, default not used");
+				        + "\n                   e.g., .../gzoltar-data, default not used. The spectra are"
+				        + "\n                   converted once to spectra.bin in that directory (see"
+				        + "\n                   GZoltarSpectraConverter), which later runs memory-map");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DfaultLocalizerName : Defects4JFaultLocalizer, SpectrumFaultLocalizer (runs the"
+				        + "\n                   tests once in process under JaCoCo and records the exact"
+				        + "\n                   spectrum of every line) or JaCoCoFaultLocalizer (runs every test"
+				        + "\n                   method on its own in forked JVMs), ignored if gzoltarDataDir"
+				        + "\n                   is given, default Defects4JFaultLocalizer");
+		System.out.println("-DfaultLocalizationShards : number of JVMs JaCoCoFaultLocalizer forks, the test"
+				        + "\n                   classes are split among them, default the number of processors");
+		System.out.println("-DfaultLocalizationTimeout : the allowed maximum time (ms) for each JVM forked by"
+				        + "\n                   JaCoCoFaultLocalizer; every test method in them gets waitTime,"
+				        + "\n                   default 3600000ms");
+		System.out.println("-DsuspiciousnessFormula : Ochiai, Tarantula, DStar, Jaccard or Barinel, the formula"
+				        + "\n                   that scores the spectrum of the fault localizer (gzoltarDataDir"
+				        + "\n                   is always Ochiai; DStar scores are divided by the highest finite"
+				        + "\n                   one to stay within [0, 1]), default Ochiai");
+		System.out.println("-DfaultLocalizationCacheDir : directory where fault localization results are cached,"
+				        + "\n                   keyed by a hash of binJavaDir, binTestDir, the dependencies, the"
+				        + "\n                   tests and the settings above, so a rerun on the same program"
+				        + "\n                   skips fault localization, default null (no caching)");
+		System.out.println("-Ddefects4jDataDir : directory of pre-collected Defects4J data for"
+				        + "\n                   Defects4JFaultLocalizer (tests.all, failing_tests, coverage.xml"
+				        + "\n                   and tests/<Class#method>.xml), Defects4J is then not run; the"
+				        + "\n                   .arja-defects4j cache of a checkout has this layout, default"
+				        + "\n                   null (run the Defects4J CLI, cached in the checkout)");
 		System.out.println("*************************************************************************************");
 		
 		
@@ -45,6 +115,23 @@ public class ParameterInfoMain {
 		System.out.println("-DingredientMode : the ingreidient mode (File, Package or Application), "
 				+ "	\n                   default Package");
 		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DtargetedParsing : if true, only the source files of the faulty lines and the files"
+				+ "\n                   that can provide seed statements under the ingredient mode are"
+				+ "\n                   parsed into ASTs, default false (all files)");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DparsingThreads : the number of threads that parse the source files, each with its"
+				+ "\n                   own parser over whole packages; the modification points and"
+				+ "\n                   seed statements are merged in file order as in a serial parse,"
+				+ "\n                   but types of different partitions are never assignment-"
+				+ "\n                   compatible, so the files are parsed in a single batch anyway"
+				+ "\n                   with ingredientMode Application or a *TypeMatch screener,"
+				+ "\n                   default 1 (serial)");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DinitSnapshotDir : directory where the modification points, ingredients,"
+				+ "\n                   manipulations and filtered tests are stored after initialization,"
+				+ "\n                   keyed by a hash of the sources, binaries, tests and settings, so a"
+				+ "\n                   rerun only parses the files they are in, default null (no snapshot)");
+		System.out.println("-------------------------------------------------------------------------------------");
 		System.out.println("-DpopulationSize : " + "the population size, default 40");
 		System.out.println("-------------------------------------------------------------------------------------");
 		System.out.println("-DmaxGenerations : " + "the maximum number of generations, default 50");
@@ -55,6 +142,19 @@ public class ParameterInfoMain {
 		System.out.println("*************************************************************************************");
 		System.out.println("-DingredientScreenerName : the ingreidient screening method (Direct, VarTypeMatch,"
 				+ "\n                           MethodTypeMatch or VMTypeMatch), default Direct ");	
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DscreeningThreads : the number of threads of the fork-join pool that screens the"
+				+ "\n                   ingredients of the modification points, each point gets the"
+				+ "\n                   same ingredients in the same order as serially; the threads screen"
+				+ "\n                   one point at a time, as JDT bindings are not thread-safe, default 1");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DevaluationCacheSize : the maximum number of memoized fitness evaluations,"
+				+ "\n                        0 disables the cache, default 10000");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DevaluationThreads : the number of offspring evaluated concurrently, default 1");
+		System.out.println("-------------------------------------------------------------------------------------");
+		System.out.println("-DcompileBlacklist : whether edits blamed for compilation errors are removed from"
+				+ "\n                     later variants (requires editFragments), default true");
 		System.out.println("*************************************************************************************");
 	}
 }
@@ -1,11 +1,20 @@
 package us.msu.cse.repair.algorithms.arja;
 
 import us.msu.cse.repair.core.AbstractRepairAlgorithm;
+import us.msu.cse.repair.ec.algorithms.OrderedParallelEvaluator;
 import us.msu.cse.repair.ec.problems.ArjaProblem;
 import jmetal.metaheuristics.nsgaII.NSGAII;
+import jmetal.metaheuristics.nsgaII.pNSGAII;
 
 public class Arja extends AbstractRepairAlgorithm {
 	public Arja(ArjaProblem problem) throws Exception {
-		algorithm = new NSGAII(problem);
+		this(problem, 1);
+	}
+
+	public Arja(ArjaProblem problem, int evaluationThreads) throws Exception {
+		if (evaluationThreads > 1)
+			algorithm = new pNSGAII(problem, new OrderedParallelEvaluator(evaluationThreads));
+		else
+			algorithm = new NSGAII(problem);
 	}
 }
@@ -163,7 +163,7 @@ public class Kali extends AbstractRepairProblem {
 		if (compiledClasses != null) {
 			boolean flag = invokeTestExecutor(compiledClasses);
 			if (flag && diffFormat) {
-				IO.savePatch(modifiedJavaSources, srcJavaDir, patchOutputRoot, globalID);
+				IO.savePatch(modifiedJavaSources, srcJavaDir, patchOutputRoot, globalID.get());
 			}
 			return flag;
 		}
@@ -223,7 +223,7 @@ public class Kali extends AbstractRepairProblem {
 	}
 
 	void savePatch(String data) throws IOException {
-		File file = new File(patchOutputRoot, "Patch_" + (globalID++) + ".txt");
+		File file = new File(patchOutputRoot, "Patch_" + globalID.getAndIncrement() + ".txt");
 		if (file.exists())
 			file.delete();
 
@@ -17,6 +17,7 @@ public abstract class AbstractRepairAlgorithm {
 	public SolutionSet execute() throws ClassNotFoundException, JMException {
 		SolutionSet solutionSet = algorithm.execute();
 		try {
+			((AbstractRepairProblem) getProblem()).releaseResources();
 			deleteWorkingDirs();
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
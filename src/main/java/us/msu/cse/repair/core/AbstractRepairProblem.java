@@ -13,10 +13,12 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.tools.JavaFileObject;
 
@@ -35,31 +37,42 @@ import org.eclipse.jface.text.Document;
 import org.eclipse.text.edits.TextEdit;
 
 import jmetal.core.Problem;
+import jmetal.core.Solution;
 import jmetal.metaheuristics.moead.Utils;
 import jmetal.util.Configuration;
 import jmetal.util.JMException;
+import us.msu.cse.repair.core.compiler.CompilerService;
 import us.msu.cse.repair.core.compiler.JavaJDKCompiler;
 import us.msu.cse.repair.core.coverage.SeedLineGeneratorProcess;
+import us.msu.cse.repair.core.coverage.TestCoverageMatrix;
 import us.msu.cse.repair.core.coverage.TestFilterProcess;
 import us.msu.cse.repair.core.faultlocalizer.*;
-import us.msu.cse.repair.core.filterrules.IngredientFilterRule;
 import us.msu.cse.repair.core.filterrules.ManipulationFilterRule;
 import us.msu.cse.repair.core.manipulation.AbstractManipulation;
+import us.msu.cse.repair.core.manipulation.EditFragmentCache;
 import us.msu.cse.repair.core.manipulation.ManipulationFactory;
+import us.msu.cse.repair.core.manipulation.SourceEdit;
 import us.msu.cse.repair.core.parser.FieldVarDetector;
 import us.msu.cse.repair.core.parser.FileASTRequestorImpl;
+import us.msu.cse.repair.core.parser.InitializationSnapshot;
 import us.msu.cse.repair.core.parser.LCNode;
 import us.msu.cse.repair.core.parser.LocalVarDetector;
 import us.msu.cse.repair.core.parser.MethodDetector;
 import us.msu.cse.repair.core.parser.ModificationPoint;
+import us.msu.cse.repair.core.parser.PartitionedASTParser;
 import us.msu.cse.repair.core.parser.SeedStatement;
 import us.msu.cse.repair.core.parser.SeedStatementInfo;
+import us.msu.cse.repair.core.parser.SourceFileSelector;
 import us.msu.cse.repair.core.parser.ingredient.AbstractIngredientScreener;
 import us.msu.cse.repair.core.parser.ingredient.IngredientMode;
 import us.msu.cse.repair.core.parser.ingredient.IngredientScreenerFactory;
 import us.msu.cse.repair.core.testexecutors.ExternalTestExecutor;
 import us.msu.cse.repair.core.testexecutors.ITestExecutor;
 import us.msu.cse.repair.core.testexecutors.InternalTestExecutor;
+import us.msu.cse.repair.core.testexecutors.PooledTestExecutor;
+import us.msu.cse.repair.core.testexecutors.TestDurationProfile;
+import us.msu.cse.repair.core.testexecutors.TestScheduler;
+import us.msu.cse.repair.core.testexecutors.TestWorkerPool;
 import us.msu.cse.repair.core.util.ClassFinder;
 import us.msu.cse.repair.core.util.CustomURLClassLoader;
 import us.msu.cse.repair.core.util.Helper;
@@ -95,8 +108,13 @@ public abstract class AbstractRepairProblem extends Problem {
 
 	protected Set<String> positiveTests;
 	protected Set<String> negativeTests;
+	// the positive tests before filtering
+	protected Set<String> orgPositiveTests;
 
 	protected Boolean testFiltered;
+	protected Integer testFilterShards;
+	protected Integer testFilterTimeout;
+	protected String testFilterCheckpointDir;
 	protected String orgPosTestsInfoPath;
 	protected String finalTestsInfoPath;
 
@@ -117,6 +135,27 @@ public abstract class AbstractRepairProblem extends Problem {
 
 	protected Integer waitTime;
 
+	protected Boolean inMemoryVariants;
+
+	protected Boolean editFragments;
+	protected EditFragmentCache editFragmentCache;
+
+	protected Integer evaluationThreads;
+
+	protected Integer testWorkerMaxRuns;
+	protected TestWorkerPool testWorkerPool;
+
+	protected Boolean prioritizeTests;
+	protected Boolean failFast;
+	protected TestScheduler testScheduler;
+
+	protected Double perTestTimeoutFactor;
+	protected Integer minTestTimeout;
+	protected TestDurationProfile testDurationProfile;
+
+	protected Boolean testImpactSelection;
+	protected TestCoverageMatrix testCoverageMatrix;
+
 
 	protected String patchOutputRoot;
 
@@ -124,8 +163,17 @@ public abstract class AbstractRepairProblem extends Problem {
 
 	protected String ingredientScreenerName;
 	protected IngredientMode ingredientMode;
+	protected Boolean targetedParsing;
+	protected Integer parsingThreads;
+
+	protected String initSnapshotDir;
+	protected String initSnapshotKey;
+	protected Double seed;
+	// random numbers drawn by the initialization modules, replayed with a snapshot
+	protected int initRandomDraws;
 
 	protected Boolean ingredientFilterRule;
+	protected Integer screeningThreads;
 	protected Boolean manipulationFilterRule;
 
 	protected Boolean seedLineGenerated;
@@ -134,16 +182,32 @@ public abstract class AbstractRepairProblem extends Problem {
 
 	protected String jvmPath;
 	protected List<String> compilerOptions;
+	protected CompilerService compilerService;
 
 	protected URL[] progURLs;
 	
 	protected String gzoltarDataDir;
+	protected String faultLocalizerName;
+	protected String defects4jDataDir;
+	protected SuspiciousnessFormula suspiciousnessFormula;
+	protected String faultLocalizationCacheDir;
+	protected Integer faultLocalizationShards;
+	protected Integer faultLocalizationTimeout;
+
+	// per-test coverage of the fault localization run, null unless every test has a row
+	protected SpectrumMatrix spectrum;
 
-	protected static int globalID;
+	protected static final AtomicInteger globalID = new AtomicInteger();
 	protected Set<Patch> patches;
 
 	protected static long launchTime;
-	protected static int evaluations;
+	protected static final AtomicInteger evaluations = new AtomicInteger();
+
+	// numbering of the bin_N directories handed to external test executors
+	protected static final AtomicInteger binWorkingID = new AtomicInteger();
+
+	// the JDT ASTs are shared by all variants and are not thread-safe
+	protected final Object astLock = new Object();
 
 	
 
@@ -164,6 +228,33 @@ public abstract class AbstractRepairProblem extends Problem {
 		faultyLinesInfoPath = (String) parameters.get("faultyLinesInfoPath");
 	
 		gzoltarDataDir = (String) parameters.get("gzoltarDataDir");
+
+		faultLocalizerName = (String) parameters.get("faultLocalizerName");
+		if (faultLocalizerName == null)
+			faultLocalizerName = "Defects4JFaultLocalizer";
+
+		faultLocalizationCacheDir = (String) parameters.get("faultLocalizationCacheDir");
+
+		defects4jDataDir = (String) parameters.get("defects4jDataDir");
+
+		faultLocalizationShards = (Integer) parameters.get("faultLocalizationShards");
+		if (faultLocalizationShards == null)
+			faultLocalizationShards = Runtime.getRuntime().availableProcessors();
+
+		faultLocalizationTimeout = (Integer) parameters.get("faultLocalizationTimeout");
+		if (faultLocalizationTimeout == null)
+			faultLocalizationTimeout = 3600000;
+
+		String suspiciousnessFormulaName = (String) parameters.get("suspiciousnessFormula");
+		if (suspiciousnessFormulaName == null)
+			suspiciousnessFormula = SuspiciousnessFormula.OCHIAI;
+		else {
+			suspiciousnessFormula = SuspiciousnessFormula.fromName(suspiciousnessFormulaName);
+			if (suspiciousnessFormula == null) {
+				Configuration.logger_.severe("suspiciousness formula '" + suspiciousnessFormulaName + "' not found ");
+				throw new JMException("Exception in AbstractRepairProblem()");
+			}
+		}
 		
 		String id = Helper.getRandomID();
 		
@@ -216,6 +307,17 @@ public abstract class AbstractRepairProblem extends Problem {
 			ingredientMode = IngredientMode.Package;
 		else
 			ingredientMode = IngredientMode.valueOf(modeStr);
+
+		targetedParsing = (Boolean) parameters.get("targetedParsing");
+		if (targetedParsing == null)
+			targetedParsing = false;
+
+		parsingThreads = (Integer) parameters.get("parsingThreads");
+		if (parsingThreads == null)
+			parsingThreads = 1;
+
+		initSnapshotDir = (String) parameters.get("initSnapshotDir");
+		seed = (Double) parameters.get("seed");
 		
 		diffFormat = (Boolean) parameters.get("diffFormat");
 		if (diffFormat == null)
@@ -226,10 +328,56 @@ public abstract class AbstractRepairProblem extends Problem {
 		if (testFiltered == null)
 			testFiltered = true;
 
+		testFilterShards = (Integer) parameters.get("testFilterShards");
+		if (testFilterShards == null)
+			testFilterShards = Runtime.getRuntime().availableProcessors();
+
+		testFilterTimeout = (Integer) parameters.get("testFilterTimeout");
+		if (testFilterTimeout == null)
+			testFilterTimeout = 60000;
+
+		testFilterCheckpointDir = (String) parameters.get("testFilterCheckpointDir");
+
 		waitTime = (Integer) parameters.get("waitTime");
 		if (waitTime == null)
 			waitTime = 6000;
 
+		inMemoryVariants = (Boolean) parameters.get("inMemoryVariants");
+		if (inMemoryVariants == null)
+			inMemoryVariants = true;
+
+		editFragments = (Boolean) parameters.get("editFragments");
+		if (editFragments == null)
+			editFragments = true;
+
+		evaluationThreads = (Integer) parameters.get("evaluationThreads");
+		if (evaluationThreads == null)
+			evaluationThreads = 1;
+
+		testWorkerMaxRuns = (Integer) parameters.get("testWorkerMaxRuns");
+		if (testWorkerMaxRuns == null)
+			testWorkerMaxRuns = 100;
+
+		prioritizeTests = (Boolean) parameters.get("prioritizeTests");
+		if (prioritizeTests == null)
+			prioritizeTests = false;
+
+		failFast = (Boolean) parameters.get("failFast");
+		if (failFast == null)
+			failFast = false;
+
+		perTestTimeoutFactor = (Double) parameters.get("perTestTimeoutFactor");
+		if (perTestTimeoutFactor == null)
+			perTestTimeoutFactor = 0.0;
+
+		minTestTimeout = (Integer) parameters.get("minTestTimeout");
+		if (minTestTimeout == null)
+			minTestTimeout = 1000;
+
+		testImpactSelection = (Boolean) parameters.get("testImpactSelection");
+		if (testImpactSelection == null)
+			testImpactSelection = false;
+
 		seedLineGenerated = (Boolean) parameters.get("seedLineGenerated");
 		if (seedLineGenerated == null)
 			seedLineGenerated = true;
@@ -242,13 +390,18 @@ public abstract class AbstractRepairProblem extends Problem {
 		if (ingredientFilterRule == null)
 			ingredientFilterRule = true;
 
+		screeningThreads = (Integer) parameters.get("screeningThreads");
+		if (screeningThreads == null)
+			screeningThreads = 1;
+
 		checkParameters();
 		invokeModules();
 
-		globalID = 0;
-		evaluations = 0;
+		globalID.set(0);
+		evaluations.set(0);
+		binWorkingID.set(0);
 		launchTime = System.currentTimeMillis();
-		patches = new HashSet<Patch>();
+		patches = Collections.synchronizedSet(new HashSet<Patch>());
 	}
 
 	void checkParameters() throws Exception {
@@ -268,18 +421,27 @@ public abstract class AbstractRepairProblem extends Problem {
 
 	void invokeModules() throws Exception {
 		invokeClassFinder();
-		invokeFaultLocalizer();
-		invokeSeedLineGenerator();
-		invokeASTRequestor();
-		invokeLocalVarDetector();
-		invokeFieldVarDetector();
-		invokeMethodDetector();
-		invokeIngredientScreener();
-		invokeManipulationInitializer();
-		invokeModificationPointsTrimmer();
-		invokeTestFilter();
+		if (!invokeInitSnapshotLoader()) {
+			invokeFaultLocalizer();
+			invokeSeedLineGenerator();
+			invokeASTRequestor();
+			invokeLocalVarDetector();
+			invokeFieldVarDetector();
+			invokeMethodDetector();
+			invokeIngredientScreener();
+			invokeManipulationInitializer();
+			invokeModificationPointsTrimmer();
+			invokeTestFilter();
+			invokeInitSnapshotWriter();
+		}
+		invokeTestCoverageMatrixBuilder();
 		invokeCompilerOptionsInitializer();
+		invokeCompilerServiceInitializer();
 		invokeProgURLsInitializer();
+		invokeTestWorkerPoolInitializer();
+		invokeTestSchedulerInitializer();
+		invokeTestDurationProfiler();
+		invokeEditFragmentCacheInitializer();
 	}
 
 	void invokeClassFinder() throws ClassNotFoundException, IOException {
@@ -295,23 +457,108 @@ public abstract class AbstractRepairProblem extends Problem {
 			FileUtils.writeLines(new File(testClassesInfoPath), binExecuteTestClasses);
 	}
 
-	void invokeFaultLocalizer() throws FileNotFoundException, IOException {
+	/**
+	 * Restores the modification points, ingredients, manipulations and tests
+	 * of an earlier run on identical sources, binaries and settings. Returns
+	 * false if there is no usable snapshot, and the modules then run.
+	 */
+	boolean invokeInitSnapshotLoader() throws IOException {
+		if (initSnapshotDir == null)
+			return false;
+
+		// the sources are hashed like the binaries, the settings are those that change the modules' result
+		Set<String> hashedPaths = new HashSet<String>(dependences);
+		hashedPaths.add(srcJavaDir);
+		initSnapshotKey = new FaultLocalizationCache(initSnapshotDir).getKey(binJavaDir, binTestDir, hashedPaths,
+				binExecuteTestClasses, "Initialization", faultLocalizerName, suspiciousnessFormula.name(),
+				String.valueOf(thr), String.valueOf(gzoltarDataDir), String.valueOf(defects4jDataDir),
+				String.valueOf(maxNumberOfModificationPoints), String.join(",", manipulationNames),
+				ingredientScreenerName, ingredientMode.name(), String.valueOf(ingredientFilterRule),
+				String.valueOf(manipulationFilterRule), String.valueOf(seedLineGenerated),
+				String.valueOf(testFiltered), String.valueOf(seed));
+
+		InitializationSnapshot snapshot = createInitSnapshot();
+		if (!snapshot.load(initSnapshotKey))
+			return false;
+
+		modificationPoints = snapshot.getModificationPoints();
+		availableManipulations = snapshot.getAvailableManipulations();
+		faultyLines = snapshot.getFaultyLines();
+		orgPositiveTests = snapshot.getOriginalPositiveTests();
+		positiveTests = snapshot.getPositiveTests();
+		negativeTests = snapshot.getNegativeTests();
+		sourceASTs = snapshot.getSourceASTs();
+		sourceContents = snapshot.getSourceContents();
+
+		// the search draws the same random numbers as after a run of the modules
+		initRandomDraws = snapshot.getRandomDraws();
+		if (initRandomDraws > 0)
+			Utils.randomPermutation(new int[initRandomDraws], initRandomDraws);
+
+		// the files the modules would have written, the test executors read them
+		if (orgPosTestsInfoPath != null)
+			FileUtils.writeLines(new File(orgPosTestsInfoPath), orgPositiveTests);
+		writeFinalTestsInfo();
+
+		System.out.println("Using the initialization snapshot (key " + initSnapshotKey + "): "
+				+ modificationPoints.size() + " modification points, " + sourceASTs.size() + " source files");
+		System.out.println("Number of positive tests considered: " + positiveTests.size());
+		System.out.println("Number of negative tests: " + negativeTests.size());
+		return true;
+	}
+
+	void invokeInitSnapshotWriter() throws IOException {
+		// no modification point usually means a module failed, it is not kept
+		if (initSnapshotKey == null || modificationPoints.isEmpty())
+			return;
+
+		createInitSnapshot().store(initSnapshotKey, modificationPoints, availableManipulations, faultyLines,
+				orgPositiveTests, positiveTests, negativeTests, sourceASTs, initRandomDraws);
+		System.out.println("Initialization snapshot stored (key " + initSnapshotKey + ")");
+	}
+
+	InitializationSnapshot createInitSnapshot() {
+		String[] classpathEntries = dependences.toArray(new String[dependences.size()]);
+		Map<String, String> options = JavaCore.getOptions();
+		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+		return new InitializationSnapshot(initSnapshotDir, classpathEntries, new String[] { srcJavaDir }, options);
+	}
+
+	void invokeFaultLocalizer() throws FileNotFoundException, IOException, JMException {
 		System.out.println("Fault localization starts...");
-		IFaultLocalizer faultLocalizer;
-		
-		// ✅ 使用 Defects4JFaultLocalizer 替代 GZoltar（Java 11 兼容）
-		if (gzoltarDataDir == null) {
-			System.out.println("Using Defects4JFaultLocalizer (Java 11 compatible)");
-			// ✅ 修复：不传递 externalProjRoot，让 Defects4JFaultLocalizer 自动推导项目根目录
-			// 因为 externalProjRoot 指向的是 ARJA 的 external 目录，而不是被修复项目的根目录
-			faultLocalizer = new Defects4JFaultLocalizer(binJavaClasses, binExecuteTestClasses, binJavaDir, binTestDir,
-					dependences);
-		} else {
-			System.out.println("Using GZoltarFaultLocalizer2 with pre-computed data");
-			faultLocalizer = new GZoltarFaultLocalizer2(gzoltarDataDir);
+		IFaultLocalizer faultLocalizer = null;
+
+		// the results of an identical program, test selection and settings are read back from disk
+		FaultLocalizationCache cache = null;
+		String cacheKey = null;
+		if (faultLocalizationCacheDir != null && gzoltarDataDir == null) {
+			cache = new FaultLocalizationCache(faultLocalizationCacheDir);
+			cacheKey = cache.getKey(binJavaDir, binTestDir, dependences, binExecuteTestClasses, faultLocalizerName,
+					suspiciousnessFormula.name(), String.valueOf(thr));
+			faultLocalizer = cache.load(cacheKey);
+			if (faultLocalizer != null)
+				System.out.println("Using cached fault localization results (key " + cacheKey + ")");
 		}
 
-		faultyLines = faultLocalizer.searchSuspicious(thr);
+		boolean cached = faultLocalizer != null;
+		if (!cached)
+			faultLocalizer = createFaultLocalizer();
+
+		faultyLines = faultLocalizer.searchSuspicious(thr, suspiciousnessFormula);
+
+		// one instrumented run then also gives the seed lines, the test filter and the coverage matrix
+		spectrum = faultLocalizer.getSpectrum();
+		if (spectrum != null && !spectrum.hasAllRows())
+			spectrum = null;
+		if (spectrum != null)
+			System.out.println("Per-test coverage of " + spectrum.getTestCount() + " tests is kept for the next modules");
+
+		// an empty result usually means the localizer failed, it is not kept
+		if (cache != null && !cached && !faultyLines.isEmpty()) {
+			cache.store(cacheKey, faultyLines, faultLocalizer.getPositiveTests(), faultLocalizer.getNegativeTests(),
+					faultLocalizer.getSpectrum());
+			System.out.println("Fault localization results cached (key " + cacheKey + ")");
+		}
 
 		// ✅ 关键修复：防御性复制，避免测试集被后续操作修改
 		Set<String> originalPositiveTests = faultLocalizer.getPositiveTests();
@@ -324,6 +571,7 @@ public abstract class AbstractRepairProblem extends Problem {
 		System.out.println("DEBUG: After defensive copy, positiveTests = " + positiveTests.size());
 		System.out.println("DEBUG: positiveTests object ID: " + System.identityHashCode(positiveTests));
 
+		orgPositiveTests = new HashSet<String>(positiveTests);
 		if (orgPosTestsInfoPath != null)
 			FileUtils.writeLines(new File(orgPosTestsInfoPath), positiveTests);
 
@@ -350,10 +598,64 @@ public abstract class AbstractRepairProblem extends Problem {
 		System.out.println("DEBUG: At end of invokeFaultLocalizer, positiveTests = " + positiveTests.size());
 	}
 
+	IFaultLocalizer createFaultLocalizer() throws IOException, JMException {
+		IFaultLocalizer faultLocalizer;
+
+		// ✅ 使用 Defects4JFaultLocalizer 替代 GZoltar（Java 11 兼容）
+		if (gzoltarDataDir == null && faultLocalizerName.equalsIgnoreCase("SpectrumFaultLocalizer")) {
+			System.out.println("Using SpectrumFaultLocalizer (single in-process run of the tests)");
+			faultLocalizer = new SpectrumFaultLocalizer(binJavaClasses, binExecuteTestClasses, binJavaDir, binTestDir,
+					dependences);
+		} else if (gzoltarDataDir == null && faultLocalizerName.equalsIgnoreCase("JaCoCoFaultLocalizer")) {
+			System.out.println("Using JaCoCoFaultLocalizer (" + faultLocalizationShards + " forked JVMs)");
+			faultLocalizer = new JaCoCoFaultLocalizer(binJavaClasses, binExecuteTestClasses, binJavaDir, binTestDir,
+					dependences, faultLocalizationShards, jvmPath, waitTime, faultLocalizationTimeout);
+		} else if (gzoltarDataDir == null && !faultLocalizerName.equalsIgnoreCase("Defects4JFaultLocalizer")) {
+			Configuration.logger_.severe("fault localizer name '" + faultLocalizerName + "' not found ");
+			throw new JMException("Exception in invokeFaultLocalizer()");
+		} else if (gzoltarDataDir == null && defects4jDataDir != null) {
+			System.out.println("Using Defects4JFaultLocalizer with pre-collected data in " + defects4jDataDir);
+			faultLocalizer = new Defects4JFaultLocalizer(
+					new Defects4JDirectoryMetadataProvider(new File(defects4jDataDir)));
+		} else if (gzoltarDataDir == null) {
+			System.out.println("Using Defects4JFaultLocalizer (Java 11 compatible)");
+			// ✅ 修复：不传递 externalProjRoot，让 Defects4JFaultLocalizer 自动推导项目根目录
+			// 因为 externalProjRoot 指向的是 ARJA 的 external 目录，而不是被修复项目的根目录
+			faultLocalizer = new Defects4JFaultLocalizer(binJavaClasses, binExecuteTestClasses, binJavaDir, binTestDir,
+					dependences);
+		} else {
+			// the text spectra are converted once, later runs map the binary file
+			File spectraFile = GZoltarSpectraConverter.getBinaryFile(gzoltarDataDir);
+			if (spectraFile == null) {
+				try {
+					spectraFile = new File(gzoltarDataDir, GZoltarSpectraConverter.FILE_NAME);
+					GZoltarSpectraConverter.convert(gzoltarDataDir, spectraFile);
+				} catch (IOException e) {
+					System.err.println("Binary spectra cannot be written: " + e.getMessage());
+					spectraFile = null;
+				}
+			}
+
+			if (spectraFile != null) {
+				System.out.println("Using GZoltarBinaryFaultLocalizer with pre-computed data");
+				faultLocalizer = new GZoltarBinaryFaultLocalizer(spectraFile);
+			} else {
+				System.out.println("Using GZoltarFaultLocalizer2 with pre-computed data");
+				faultLocalizer = new GZoltarFaultLocalizer2(gzoltarDataDir);
+			}
+		}
+
+		return faultLocalizer;
+	}
+
 	void invokeSeedLineGenerator() throws IOException, InterruptedException {
 		System.out.println("DEBUG: At start of invokeSeedLineGenerator, positiveTests = " + positiveTests.size());
 		
-		if (seedLineGenerated) {
+		if (seedLineGenerated && spectrum != null) {
+			// the lines executed by the tests, as SeedLineGeneratorProcess computes them
+			seedLines = spectrum.getExecutedLines();
+			System.out.println("Seed lines taken from the fault localization coverage: " + seedLines.size() + " lines");
+		} else if (seedLineGenerated) {
 			// ✅ Java 11 兼容性修复：使用故障定位结果作为种子行
 			// 原代码调用外部进程在 Java 11 下因模块系统限制而失败
 			// SeedLineGeneratorProcess slgp = new SeedLineGeneratorProcess(binJavaClasses, javaClassesInfoPath,
@@ -410,18 +712,46 @@ public abstract class AbstractRepairProblem extends Problem {
 		File srcFile = new File(srcJavaDir);
 		Collection<File> javaFiles = FileUtils.listFiles(srcFile, new SuffixFileFilter(".java"),
 				TrueFileFilter.INSTANCE);
-		String[] sourceFilePaths = new String[javaFiles.size()];
+		String[] sourceFilePaths;
+		if (targetedParsing) {
+			// the other files are still found through the source path when bindings need them
+			SourceFileSelector selector = new SourceFileSelector(srcJavaDir, faultyLines.keySet(), seedLines,
+					ingredientMode);
+			List<String> selectedPaths = selector.select(javaFiles);
+			sourceFilePaths = selectedPaths.toArray(new String[selectedPaths.size()]);
+			System.out.println("Parsing " + sourceFilePaths.length + " of " + javaFiles.size()
+					+ " source files (ingredient mode " + ingredientMode + ")");
+		} else {
+			sourceFilePaths = new String[javaFiles.size()];
 
-		int i = 0;
-		for (File file : javaFiles) {
-			sourceFilePaths[i++] = file.getCanonicalPath();
-			if (file.getName().equals("Fraction.java")) {
-				System.out.println("DEBUG: Found Fraction.java at " + file.getCanonicalPath());
+			int i = 0;
+			for (File file : javaFiles) {
+				sourceFilePaths[i++] = file.getCanonicalPath();
+				if (file.getName().equals("Fraction.java")) {
+					System.out.println("DEBUG: Found Fraction.java at " + file.getCanonicalPath());
+				}
 			}
 		}
 		System.out.println("DEBUG: Total source files found: " + sourceFilePaths.length);
 
-		parser.createASTs(sourceFilePaths, null, new String[] { "UTF-8" }, requestor, null);
+		// bindings of different partitions are never assignment-compatible, so
+		// the files stay in one batch whenever types are matched across packages
+		boolean typeMatched = ingredientScreenerName.toLowerCase().endsWith("typematch");
+		boolean partitioned = parsingThreads > 1 && ingredientMode != IngredientMode.Application && !typeMatched;
+		if (parsingThreads > 1 && !partitioned)
+			System.out.println("Parsing in a single batch, since ingredients are type-matched or taken from the"
+					+ " whole application (ingredient mode " + ingredientMode + ", screener " + ingredientScreenerName
+					+ ")");
+
+		boolean parsed = false;
+		if (partitioned) {
+			PartitionedASTParser partitionedParser = new PartitionedASTParser(classpathEntries,
+					new String[] { srcJavaDir }, options, parsingThreads, faultyLines, seedLines);
+			parsed = partitionedParser.parse(sourceFilePaths, modificationPoints, seedStatements, sourceASTs,
+					sourceContents, declaredClasses);
+		}
+		if (!parsed)
+			parser.createASTs(sourceFilePaths, null, new String[] { "UTF-8" }, requestor, null);
 
 		if (maxNumberOfModificationPoints != null && modificationPoints.size() > maxNumberOfModificationPoints) {
 			Collections.sort(modificationPoints, new Comparator<ModificationPoint>() {
@@ -436,8 +766,9 @@ public abstract class AbstractRepairProblem extends Problem {
 			List<ModificationPoint> temp = new ArrayList<ModificationPoint>();
 			int[] permutation = new int[maxNumberOfModificationPoints];
 			Utils.randomPermutation(permutation, maxNumberOfModificationPoints);
+			initRandomDraws = maxNumberOfModificationPoints;
 
-			for (i = 0; i < maxNumberOfModificationPoints; i++) {
+			for (int i = 0; i < maxNumberOfModificationPoints; i++) {
 				ModificationPoint mp = modificationPoints.get(permutation[i]);
 				temp.add(mp);
 			}
@@ -473,18 +804,13 @@ public abstract class AbstractRepairProblem extends Problem {
 		System.out.println("Ingredient screener starts...");
 		AbstractIngredientScreener ingredientScreener = IngredientScreenerFactory
 				.getIngredientScreener(ingredientScreenerName, modificationPoints, seedStatements, ingredientMode);
+		// the filter rule is applied to each point right after its screening, in the same task
+		ingredientScreener.setIngredientFilterRule(ingredientFilterRule);
+		ingredientScreener.setThreads(screeningThreads);
+		if (screeningThreads > 1)
+			System.out.println("Screening " + modificationPoints.size() + " modification points with "
+					+ screeningThreads + " threads");
 		ingredientScreener.screen();
-
-		if (ingredientFilterRule) {
-			for (ModificationPoint mp : modificationPoints) {
-				Iterator<Statement> iterator = mp.getIngredients().iterator();
-				while (iterator.hasNext()) {
-					Statement seed = iterator.next();
-					if (IngredientFilterRule.canFiltered(seed, mp))
-						iterator.remove();
-				}
-			}
-		}
 		System.out.println("Ingredient screener is finished!");
 	}
 
@@ -544,9 +870,29 @@ public abstract class AbstractRepairProblem extends Problem {
 			}
 
 			try {
-				TestFilterProcess tfp = new TestFilterProcess(fLines, faultyLinesInfoPath, positiveTests,
-						orgPosTestsInfoPath, binJavaDir, binTestDir, dependences, externalProjRoot, jvmPath);
-				Set<String> filteredTests = tfp.getFilteredPositiveTests();
+				Set<String> filteredTests;
+				if (spectrum != null) {
+					System.out.println("Filtering with the fault localization coverage");
+					filteredTests = spectrum.getExecutingTests(fLines, positiveTests);
+				} else {
+					File checkpointFile = null;
+					if (testFilterCheckpointDir != null) {
+						// keyed like the fault localization cache, plus the faulty lines
+						List<String> lineStrs = new ArrayList<String>();
+						for (LCNode node : fLines)
+							lineStrs.add(node.toString());
+						Collections.sort(lineStrs);
+						lineStrs.add(0, "TestFilter");
+						String key = new FaultLocalizationCache(testFilterCheckpointDir).getKey(binJavaDir, binTestDir,
+								dependences, positiveTests, lineStrs.toArray(new String[lineStrs.size()]));
+						checkpointFile = new File(testFilterCheckpointDir, key + ".tf");
+					}
+					System.out.println("Filtering with " + testFilterShards + " forked JVMs");
+					TestFilterProcess tfp = new TestFilterProcess(fLines, faultyLinesInfoPath, positiveTests,
+							binJavaDir, binTestDir, dependences, externalProjRoot, jvmPath, testFilterShards,
+							testFilterTimeout, checkpointFile);
+					filteredTests = tfp.getFilteredPositiveTests();
+				}
 				
 				// ✅ 关键修复：如果过滤后测试为空，保留原始测试
 				if (filteredTests == null || filteredTests.isEmpty()) {
@@ -565,16 +911,43 @@ public abstract class AbstractRepairProblem extends Problem {
 			}
 		}
 
+		writeFinalTestsInfo();
+		
+		System.out.println("DEBUG: After all operations, positiveTests = " + positiveTests.size());
+		System.out.println("Number of positive tests considered: " + positiveTests.size() );
+		System.out.println("Filtering of the tests is finished!");
+	}
+
+	void writeFinalTestsInfo() throws IOException {
 		if (finalTestsInfoPath != null) {
 			List<String> finalTests = new ArrayList<String>();
 			finalTests.addAll(positiveTests);
 			finalTests.addAll(negativeTests);
 			FileUtils.writeLines(new File(finalTestsInfoPath), finalTests);
 		}
-		
-		System.out.println("DEBUG: After all operations, positiveTests = " + positiveTests.size());
-		System.out.println("Number of positive tests considered: " + positiveTests.size() );
-		System.out.println("Filtering of the tests is finished!");
+	}
+
+	void invokeTestCoverageMatrixBuilder() {
+		if (!testImpactSelection)
+			return;
+
+		System.out.println("Measuring the coverage of " + positiveTests.size() + " positive tests");
+		try {
+			if (spectrum != null)
+				testCoverageMatrix = TestCoverageMatrix.fromSpectrum(modificationPoints, positiveTests, spectrum);
+			else
+				testCoverageMatrix = TestCoverageMatrix.build(modificationPoints, positiveTests, binJavaDir,
+						binTestDir, dependences, externalProjRoot, jvmPath, waitTime);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		// without coverage, every variant keeps running all the positive tests
+		if (testCoverageMatrix == null || testCoverageMatrix.size() == 0) {
+			testCoverageMatrix = null;
+			System.err.println("Coverage of the positive tests could not be measured, test impact selection is off");
+		} else
+			System.out.println("Coverage measured for " + testCoverageMatrix.size() + " tests");
 	}
 
 	void invokeCompilerOptionsInitializer() {
@@ -597,6 +970,47 @@ public abstract class AbstractRepairProblem extends Problem {
 		compilerOptions.add(cpStr);
 	}
 
+	void invokeCompilerServiceInitializer() throws IOException {
+		compilerService = new CompilerService(compilerOptions, evaluationThreads);
+	}
+
+	void invokeTestWorkerPoolInitializer() {
+		if (testExecutorName.equalsIgnoreCase("PooledTestExecutor"))
+			testWorkerPool = new TestWorkerPool(evaluationThreads, testWorkerMaxRuns, binJavaDir, binTestDir,
+					dependences, externalProjRoot, jvmPath);
+	}
+
+	void invokeTestSchedulerInitializer() {
+		// fail-fast only pays off if the tests likely to fail run first
+		if (prioritizeTests || failFast)
+			testScheduler = new TestScheduler(failFast);
+	}
+
+	void invokeTestDurationProfiler() throws IOException, InterruptedException {
+		if (perTestTimeoutFactor <= 0)
+			return;
+
+		List<String> tests = new ArrayList<String>(positiveTests);
+		tests.addAll(negativeTests);
+
+		System.out.println("Measuring the baseline duration of " + tests.size() + " tests");
+		TestWorkerPool workerPool = new TestWorkerPool(1, Integer.MAX_VALUE, binJavaDir, binTestDir, dependences,
+				externalProjRoot, jvmPath);
+		try {
+			testDurationProfile = TestDurationProfile.measure(workerPool, tests, perTestTimeoutFactor,
+					minTestTimeout, waitTime);
+		} finally {
+			workerPool.shutdown();
+		}
+		System.out.println("Baseline durations measured for " + testDurationProfile.size()
+				+ " tests, cold start margin " + testDurationProfile.getColdStartMargin() + "ms");
+	}
+
+	void invokeEditFragmentCacheInitializer() {
+		if (editFragments)
+			editFragmentCache = new EditFragmentCache(sourceASTs, sourceContents, astLock);
+	}
+
 	void invokeProgURLsInitializer() throws MalformedURLException {
 		List<String> tempList = new ArrayList<String>();
 		tempList.add(binJavaDir);
@@ -655,7 +1069,10 @@ public abstract class AbstractRepairProblem extends Problem {
 			String content = sourceContents.get(sourceFilePath);
 
 			Document doc = new Document(content);
-			TextEdit edits = entry.getValue().rewriteAST(doc, null);
+			TextEdit edits;
+			synchronized (astLock) {
+				edits = entry.getValue().rewriteAST(doc, null);
+			}
 
 			try {
 				edits.apply(doc);
@@ -669,25 +1086,75 @@ public abstract class AbstractRepairProblem extends Problem {
 		return javaSources;
 	}
 
+	/**
+	 * Builds the modified sources of a variant. With edit fragments, each file
+	 * is obtained by splicing the cached fragments of its edits into the
+	 * original source; a file whose edits overlap, or every file without edit
+	 * fragments, goes through a single ASTRewrite as before.
+	 */
+	protected Map<String, String> getModifiedJavaSources(List<SourceEdit> edits) throws JMException {
+		Map<String, List<SourceEdit>> editsPerFile = getEditsPerFile(edits);
+
+		Map<String, String> javaSources = new HashMap<String, String>();
+		Map<String, ASTRewrite> astRewriters = new HashMap<String, ASTRewrite>();
+		for (Entry<String, List<SourceEdit>> entry : editsPerFile.entrySet()) {
+			String source = null;
+			if (editFragmentCache != null)
+				source = editFragmentCache.splice(entry.getKey(), entry.getValue());
+
+			if (source != null)
+				javaSources.put(entry.getKey(), source);
+			else {
+				for (SourceEdit edit : entry.getValue())
+					manipulateOneModificationPoint(edit.getModificationPoint(), edit.getManipName(),
+							edit.getIngredStatement(), astRewriters);
+			}
+		}
+		javaSources.putAll(getModifiedJavaSources(astRewriters));
+		return javaSources;
+	}
+
+	protected Map<String, List<SourceEdit>> getEditsPerFile(List<SourceEdit> edits) {
+		Map<String, List<SourceEdit>> editsPerFile = new LinkedHashMap<String, List<SourceEdit>>();
+		for (SourceEdit edit : edits) {
+			String sourceFilePath = edit.getModificationPoint().getSourceFilePath();
+			if (!editsPerFile.containsKey(sourceFilePath))
+				editsPerFile.put(sourceFilePath, new ArrayList<SourceEdit>());
+			editsPerFile.get(sourceFilePath).add(edit);
+		}
+		return editsPerFile;
+	}
+
 	protected boolean manipulateOneModificationPoint(ModificationPoint mp, String manipName, Statement ingredStatement,
 			Map<String, ASTRewrite> astRewriters) throws JMException {
 		String sourceFilePath = mp.getSourceFilePath();
-		ASTRewrite rewriter;
-		if (astRewriters.containsKey(sourceFilePath))
-			rewriter = astRewriters.get(sourceFilePath);
-		else {
-			CompilationUnit unit = sourceASTs.get(sourceFilePath);
-			rewriter = ASTRewrite.create(unit.getAST());
-			astRewriters.put(sourceFilePath, rewriter);
-		}
+		synchronized (astLock) {
+			ASTRewrite rewriter;
+			if (astRewriters.containsKey(sourceFilePath))
+				rewriter = astRewriters.get(sourceFilePath);
+			else {
+				CompilationUnit unit = sourceASTs.get(sourceFilePath);
+				rewriter = ASTRewrite.create(unit.getAST());
+				astRewriters.put(sourceFilePath, rewriter);
+			}
 
-		AbstractManipulation manipulation = ManipulationFactory.getManipulation(manipName, mp, ingredStatement,
-				rewriter);
-		return manipulation.manipulate();
+			AbstractManipulation manipulation = ManipulationFactory.getManipulation(manipName, mp, ingredStatement,
+					rewriter);
+			return manipulation.manipulate();
+		}
 	}
 
 	protected Map<String, JavaFileObject> getCompiledClassesForTestExecution(Map<String, String> javaSources) {
-		JavaJDKCompiler compiler = new JavaJDKCompiler(ClassLoader.getSystemClassLoader(), compilerOptions);
+		return getCompiledClassesForTestExecution(javaSources, null);
+	}
+
+	/**
+	 * As above; if compilation fails and errorPositions is not null, it
+	 * receives the offsets of the errors per source file.
+	 */
+	protected Map<String, JavaFileObject> getCompiledClassesForTestExecution(Map<String, String> javaSources,
+			Map<String, List<Long>> errorPositions) {
+		JavaJDKCompiler compiler = compilerService.newCompiler(ClassLoader.getSystemClassLoader());
 		try {
 			boolean isCompiled = compiler.compile(javaSources);
 			if (isCompiled)
@@ -699,6 +1166,8 @@ public abstract class AbstractRepairProblem extends Problem {
 				for (String error : errors) {
 					System.err.println("  " + error);
 				}
+				if (errorPositions != null)
+					errorPositions.putAll(compiler.getErrorPositions());
 				return null;
 			}
 		} catch (Exception e) {
@@ -712,16 +1181,27 @@ public abstract class AbstractRepairProblem extends Problem {
 	protected ITestExecutor getTestExecutor(Map<String, JavaFileObject> compiledClasses, Set<String> executePosTests)
 			throws JMException, IOException {
 		if (testExecutorName.equalsIgnoreCase("ExternalTestExecutor")) {
-			File binWorkingDirFile = new File(binWorkingRoot, "bin_" + (globalID++));
+			String tempPath = (executePosTests == positiveTests) ? finalTestsInfoPath : null;
+			if (inMemoryVariants) {
+				return new ExternalTestExecutor(executePosTests, negativeTests, tempPath, binJavaDir, binTestDir,
+						dependences, null, compiledClasses, externalProjRoot, jvmPath, waitTime, testScheduler,
+						testDurationProfile);
+			}
+
+			File binWorkingDirFile = new File(binWorkingRoot, "bin_" + binWorkingID.getAndIncrement());
 			IO.saveCompiledClasses(compiledClasses, binWorkingDirFile);
 			String binWorkingDir = binWorkingDirFile.getCanonicalPath();
-			String tempPath = (executePosTests == positiveTests) ? finalTestsInfoPath : null;
 			return new ExternalTestExecutor(executePosTests, negativeTests, tempPath, binJavaDir, binTestDir,
-					dependences, binWorkingDir, externalProjRoot, jvmPath, waitTime);
+					dependences, binWorkingDir, null, externalProjRoot, jvmPath, waitTime, testScheduler,
+					testDurationProfile);
 
 		} else if (testExecutorName.equalsIgnoreCase("InternalTestExecutor")) {
 			CustomURLClassLoader urlClassLoader = new CustomURLClassLoader(progURLs, compiledClasses);
-			return new InternalTestExecutor(executePosTests, negativeTests, urlClassLoader, waitTime);
+			return new InternalTestExecutor(executePosTests, negativeTests, urlClassLoader, waitTime, testScheduler,
+					testDurationProfile);
+		} else if (testExecutorName.equalsIgnoreCase("PooledTestExecutor")) {
+			return new PooledTestExecutor(executePosTests, negativeTests, compiledClasses, testWorkerPool, waitTime,
+					testScheduler, testDurationProfile);
 		} else {
 			Configuration.logger_.severe("test executor name '" + testExecutorName + "' not found ");
 			throw new JMException("Exception in getTestExecutor()");
@@ -785,6 +1265,10 @@ public abstract class AbstractRepairProblem extends Problem {
 		return this.sourceContents;
 	}
 
+	public TestScheduler getTestScheduler() {
+		return testScheduler;
+	}
+
 	public Set<String> getNegativeTests() {
 		return this.negativeTests;
 	}
@@ -802,7 +1286,7 @@ public abstract class AbstractRepairProblem extends Problem {
 		long estimatedTime = System.currentTimeMillis() - launchTime;
 		if (patchOutputRoot != null)
 			IO.savePatch(opList, locList, ingredList, modificationPoints, availableManipulations, patchOutputRoot,
-					globalID, evaluations, estimatedTime);
+					globalID.get(), evaluations.get(), estimatedTime);
 	}
 
 	public boolean addTestAdequatePatch(List<Integer> opList, List<Integer> locList, List<Integer> ingredList) {
@@ -848,11 +1332,11 @@ public abstract class AbstractRepairProblem extends Problem {
 	}
 
 	public static void resetGlobalID(int id) {
-		globalID = id;
+		globalID.set(id);
 	}
 
 	public static void increaseGlobalID() {
-		globalID++;
+		globalID.incrementAndGet();
 	}
 
 	public static void resetLaunchTime(long time) {
@@ -864,11 +1348,27 @@ public abstract class AbstractRepairProblem extends Problem {
 	}
 
 	public static void resetEvaluations(int evals) {
-		evaluations = evals;
+		evaluations.set(evals);
 	}
 
 	public static int getEvaluations() {
-		return evaluations;
+		return evaluations.get();
+	}
+
+	/**
+	 * Runs the part of an evaluation that consumes random numbers or repairs
+	 * the genome. Parallel evaluators call it sequentially, in submission
+	 * order, before the solutions are evaluated concurrently, so a run stays
+	 * reproducible for a fixed seed.
+	 */
+	public void prepareEvaluation(Solution solution) throws JMException {
+	}
+
+	/**
+	 * Counterpart of prepareEvaluation: called sequentially, in submission
+	 * order, once all the prepared solutions have been evaluated.
+	 */
+	public void completeEvaluation(Solution solution) throws JMException {
 	}
 	
 	public String getBinWorkingRoot() {
@@ -883,4 +1383,19 @@ public abstract class AbstractRepairProblem extends Problem {
 		return finalTestsInfoPath;
 	}
 
+	public EditFragmentCache getEditFragmentCache() {
+		return this.editFragmentCache;
+	}
+
+	public TestCoverageMatrix getTestCoverageMatrix() {
+		return this.testCoverageMatrix;
+	}
+
+	public void releaseResources() throws IOException {
+		if (compilerService != null)
+			compilerService.close();
+		if (testWorkerPool != null)
+			testWorkerPool.shutdown();
+	}
+
 }
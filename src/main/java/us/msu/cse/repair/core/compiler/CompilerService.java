@@ -0,0 +1,90 @@
+package us.msu.cse.repair.core.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Long-lived compiler front end shared by all fitness evaluations. The system
+ * compiler and its standard file manager are created once, and the class path
+ * (binJavaDir and the dependences) is resolved once, so the jar and directory
+ * indexes stay warm between variants. Every call still gets its own output map
+ * and diagnostics, so compilations do not see each other's classes. With a
+ * pool size above one, several variants can be compiled concurrently, each on
+ * its own file manager.
+ */
+public class CompilerService {
+	private final JavaCompiler compiler;
+	private final List<StandardJavaFileManager> standardFileManagers;
+	private final BlockingQueue<JavaFileManager> sharedFileManagers;
+	private final List<String> options;
+
+	public CompilerService(List<String> compilerOptions) throws IOException {
+		this(compilerOptions, 1);
+	}
+
+	public CompilerService(List<String> compilerOptions, int poolSize) throws IOException {
+		compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IllegalStateException(
+					"Cannot find the system Java compiler. " + "Check that your class path includes tools.jar");
+		}
+
+		options = new ArrayList<String>();
+		String classPath = null;
+		for (int i = 0; i < compilerOptions.size(); i++) {
+			String option = compilerOptions.get(i);
+			if ((option.equals("-cp") || option.equals("-classpath")) && i + 1 < compilerOptions.size())
+				classPath = compilerOptions.get(++i);
+			else
+				options.add(option);
+		}
+
+		List<File> files = new ArrayList<File>();
+		if (classPath != null) {
+			for (String path : classPath.split(File.pathSeparator)) {
+				if (!path.isEmpty())
+					files.add(new File(path));
+			}
+		}
+
+		standardFileManagers = new ArrayList<StandardJavaFileManager>();
+		sharedFileManagers = new ArrayBlockingQueue<JavaFileManager>(Math.max(1, poolSize));
+		for (int i = 0; i < Math.max(1, poolSize); i++) {
+			StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null);
+			if (classPath != null)
+				standardFileManager.setLocation(StandardLocation.CLASS_PATH, files);
+			standardFileManagers.add(standardFileManager);
+
+			// javac must never close a shared file manager at the end of a task
+			sharedFileManagers.add(new ForwardingJavaFileManager<JavaFileManager>(standardFileManager) {
+				@Override
+				public void close() {
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns a compiler bound to the warm file manager. Its output classes
+	 * and diagnostics belong to the returned instance only.
+	 */
+	public JavaJDKCompiler newCompiler(ClassLoader parentLoader) {
+		return new JavaJDKCompiler(parentLoader, options, compiler, sharedFileManagers);
+	}
+
+	public void close() throws IOException {
+		for (StandardJavaFileManager standardFileManager : standardFileManagers)
+			standardFileManager.close();
+	}
+}
@@ -14,14 +14,19 @@ public class JavaFileObjectImpl extends SimpleJavaFileObject {
 
 	private final CharSequence source;
 
+	// the key of the source in the map given to the compiler
+	private final String sourceFilePath;
+
 	JavaFileObjectImpl(final String name, final CharSequence source) {
 		super(URI.create("memo:/" + name), Kind.SOURCE);
 		this.source = source;
+		this.sourceFilePath = name;
 	}
 
 	JavaFileObjectImpl(final String name, final Kind kind) {
 		super(URI.create("memo:/" + name.replace('.', '/') + kind.extension), kind);
 		source = null;
+		sourceFilePath = null;
 	}
 
 	/**
@@ -57,6 +62,10 @@ public class JavaFileObjectImpl extends SimpleJavaFileObject {
 		return byteCode;
 	}
 
+	public String getSourceFilePath() {
+		return sourceFilePath;
+	}
+
 	/**
 	 * @return the byte code generated by the compiler
 	 */
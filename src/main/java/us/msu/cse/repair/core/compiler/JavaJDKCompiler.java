@@ -5,6 +5,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.BlockingQueue;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
@@ -21,6 +22,8 @@ public class JavaJDKCompiler {
 	private final FileManagerImpl javaFileManager;
 	private final List<String> options;
 	private DiagnosticCollector<JavaFileObject> diagnostics;
+	// warm file managers shared with other compilers, null if this compiler owns one
+	private final BlockingQueue<JavaFileManager> fileManagers;
 
 	public JavaJDKCompiler(ClassLoader parentLoader, List<String> options) {
 		compiler = ToolProvider.getSystemJavaCompiler();
@@ -36,6 +39,23 @@ public class JavaJDKCompiler {
 		javaFileManager = new FileManagerImpl(fileManager, classLoader);
 
 		this.options = options;
+		fileManagers = null;
+	}
+
+	/**
+	 * Creates a compiler that borrows an already opened file manager from the
+	 * given pool for each compilation, so that the class path it resolves
+	 * stays warm. Output classes still go to a fresh class loader owned by
+	 * this instance.
+	 */
+	JavaJDKCompiler(ClassLoader parentLoader, List<String> options, JavaCompiler compiler,
+			BlockingQueue<JavaFileManager> fileManagers) {
+		this.compiler = compiler;
+		classLoader = new ClassLoaderImpl(parentLoader);
+		diagnostics = new DiagnosticCollector<JavaFileObject>();
+		javaFileManager = null;
+		this.options = options;
+		this.fileManagers = fileManagers;
 	}
 
 	public synchronized boolean compile(final Map<String, String> classes) throws Exception {
@@ -48,8 +68,20 @@ public class JavaJDKCompiler {
 			sources.add(javaFileObject);
 		}
 		// Get a CompliationTask from the compiler and compile the sources
-		final CompilationTask task = compiler.getTask(null, javaFileManager, diagnostics, options, null, sources);
-		return task.call();
+		if (fileManagers == null) {
+			final CompilationTask task = compiler.getTask(null, javaFileManager, diagnostics, options, null, sources);
+			return task.call();
+		}
+
+		// a file manager is not thread-safe, so it serves one task at a time
+		JavaFileManager fileManager = fileManagers.take();
+		try {
+			FileManagerImpl outputManager = new FileManagerImpl(fileManager, classLoader);
+			final CompilationTask task = compiler.getTask(null, outputManager, diagnostics, options, null, sources);
+			return task.call();
+		} finally {
+			fileManagers.put(fileManager);
+		}
 	}
 
 	public synchronized boolean compile(String sourceFilePath, String sourceCode) throws Exception {
@@ -70,4 +102,22 @@ public class JavaJDKCompiler {
 		}
 		return errors;
 	}
+
+	/**
+	 * Character offsets of the errors, per source file path as given to
+	 * compile. Errors without a position are left out.
+	 */
+	public Map<String, List<Long>> getErrorPositions() {
+		Map<String, List<Long>> positions = new HashMap<String, List<Long>>();
+		for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+			if (d.getKind() != Kind.ERROR || d.getPosition() == Diagnostic.NOPOS
+					|| !(d.getSource() instanceof JavaFileObjectImpl))
+				continue;
+			String sourceFilePath = ((JavaFileObjectImpl) d.getSource()).getSourceFilePath();
+			if (!positions.containsKey(sourceFilePath))
+				positions.put(sourceFilePath, new ArrayList<Long>());
+			positions.get(sourceFilePath).add(d.getPosition());
+		}
+		return positions;
+	}
 }
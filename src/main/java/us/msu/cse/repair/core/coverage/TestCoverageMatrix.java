@@ -0,0 +1,150 @@
+package us.msu.cse.repair.core.coverage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Statement;
+
+import us.msu.cse.repair.core.faultlocalizer.SpectrumMatrix;
+import us.msu.cse.repair.core.parser.LCNode;
+import us.msu.cse.repair.core.parser.ModificationPoint;
+
+/**
+ * For every positive test, the modification points it executes, as a bitset
+ * over the indices of the modification points. A variant only changes the
+ * behavior of the tests that reach one of its modification points, so the
+ * other positive tests, which pass on the original program, do not need to
+ * run.
+ *
+ * A modification point counts as executed if any line of its statement is
+ * covered, since the first line of a statement does not always carry byte
+ * code. Tests that could not be measured are always run.
+ */
+public class TestCoverageMatrix {
+	private final Map<String, BitSet> coverage;
+
+	private final AtomicLong selections = new AtomicLong();
+	private final AtomicLong selectedTests = new AtomicLong();
+	private final AtomicLong consideredTests = new AtomicLong();
+
+	public TestCoverageMatrix(Map<String, BitSet> coverage) {
+		this.coverage = coverage;
+	}
+
+	/**
+	 * Measures the coverage of the tests with the external
+	 * TestCoverageCollector; timeout is the limit (ms) for a single test.
+	 */
+	public static TestCoverageMatrix build(List<ModificationPoint> modificationPoints, Set<String> tests,
+			String binJavaDir, String binTestDir, Set<String> dependences, String externalProjRoot, String jvmPath,
+			long timeout) throws IOException, InterruptedException {
+		Map<LCNode, BitSet> linePoints = getLinePoints(modificationPoints);
+
+		List<LCNode> lines = new ArrayList<LCNode>(linePoints.keySet());
+		TestCoverageProcess tcp = new TestCoverageProcess(lines, tests, binJavaDir, binTestDir, dependences,
+				externalProjRoot, jvmPath, timeout);
+		Map<String, BitSet> coveredLines = tcp.getCoveredLines();
+
+		Map<String, BitSet> coverage = new HashMap<String, BitSet>();
+		for (Map.Entry<String, BitSet> entry : coveredLines.entrySet()) {
+			BitSet points = new BitSet(modificationPoints.size());
+			BitSet covered = entry.getValue();
+			for (int i = covered.nextSetBit(0); i >= 0; i = covered.nextSetBit(i + 1))
+				points.or(linePoints.get(lines.get(i)));
+			coverage.put(entry.getKey(), points);
+		}
+		return new TestCoverageMatrix(coverage);
+	}
+
+	/**
+	 * Reads the coverage of the tests from the spectrum of the fault
+	 * localization run, which must have a row for every test.
+	 */
+	public static TestCoverageMatrix fromSpectrum(List<ModificationPoint> modificationPoints, Set<String> tests,
+			SpectrumMatrix spectrum) {
+		// spectrum line id -> modification points on that line
+		Map<Integer, BitSet> idPoints = new HashMap<Integer, BitSet>();
+		for (Map.Entry<LCNode, BitSet> entry : getLinePoints(modificationPoints).entrySet()) {
+			int id = spectrum.findLineId(entry.getKey());
+			if (id >= 0)
+				idPoints.put(id, entry.getValue());
+		}
+
+		Map<String, BitSet> coverage = new HashMap<String, BitSet>();
+		for (String test : tests) {
+			BitSet row = spectrum.getRow(test);
+			if (row == null)
+				continue;
+			BitSet points = new BitSet(modificationPoints.size());
+			for (Map.Entry<Integer, BitSet> entry : idPoints.entrySet()) {
+				if (row.get(entry.getKey()))
+					points.or(entry.getValue());
+			}
+			coverage.put(test, points);
+		}
+		return new TestCoverageMatrix(coverage);
+	}
+
+	/**
+	 * Every line of the statements of the modification points, with the
+	 * modification points it belongs to.
+	 */
+	private static Map<LCNode, BitSet> getLinePoints(List<ModificationPoint> modificationPoints) {
+		Map<LCNode, BitSet> linePoints = new LinkedHashMap<LCNode, BitSet>();
+		for (int i = 0; i < modificationPoints.size(); i++) {
+			ModificationPoint mp = modificationPoints.get(i);
+			LCNode lcNode = mp.getLCNode();
+			int lastLine = getLastLine(mp);
+			for (int line = lcNode.getLineNumber(); line <= lastLine; line++) {
+				LCNode node = new LCNode(lcNode.getClassName(), line);
+				if (!linePoints.containsKey(node))
+					linePoints.put(node, new BitSet(modificationPoints.size()));
+				linePoints.get(node).set(i);
+			}
+		}
+		return linePoints;
+	}
+
+	private static int getLastLine(ModificationPoint mp) {
+		Statement statement = mp.getStatement();
+		CompilationUnit cu = (CompilationUnit) statement.getRoot();
+		int lastLine = cu.getLineNumber(statement.getStartPosition() + statement.getLength() - 1);
+		return Math.max(lastLine, mp.getLCNode().getLineNumber());
+	}
+
+	/**
+	 * The tests, in the order given, that execute at least one of the
+	 * modification points, plus the tests that could not be measured.
+	 */
+	public Set<String> getCoveringTests(BitSet modificationPoints, Set<String> tests) {
+		Set<String> coveringTests = new LinkedHashSet<String>();
+		for (String test : tests) {
+			BitSet points = coverage.get(test);
+			if (points == null || points.intersects(modificationPoints))
+				coveringTests.add(test);
+		}
+		selections.incrementAndGet();
+		selectedTests.addAndGet(coveringTests.size());
+		consideredTests.addAndGet(tests.size());
+		return coveringTests;
+	}
+
+	public int size() {
+		return coverage.size();
+	}
+
+	@Override
+	public String toString() {
+		return "Test coverage matrix: " + coverage.size() + " tests, " + selections.get() + " selections, "
+				+ selectedTests.get() + " of " + consideredTests.get() + " positive tests run";
+	}
+}
@@ -0,0 +1,154 @@
+package us.msu.cse.repair.core.coverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+import us.msu.cse.repair.core.parser.LCNode;
+import us.msu.cse.repair.core.util.ProcessWithTimeout;
+import us.msu.cse.repair.core.util.StreamReaderThread;
+
+public class TestCoverageProcess {
+	List<LCNode> lines;
+	Set<String> tests;
+
+	String binJavaDir;
+	String binTestDir;
+	Set<String> dependences;
+
+	String externalProjRoot;
+
+	String jvmPath;
+
+	long timeout;
+
+	public TestCoverageProcess(List<LCNode> lines, Set<String> tests, String binJavaDir, String binTestDir,
+			Set<String> dependences, String externalProjRoot, String jvmPath, long timeout) {
+		this.lines = lines;
+		this.tests = tests;
+
+		this.binJavaDir = binJavaDir;
+		this.binTestDir = binTestDir;
+
+		this.dependences = dependences;
+		this.externalProjRoot = externalProjRoot;
+
+		this.jvmPath = jvmPath;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns, for every test the collector reported, the indices of the lines
+	 * it covers. Tests missing from the result could not be measured. A test
+	 * that times out ends its collector, and the tests after it are measured
+	 * by a new one.
+	 */
+	public Map<String, BitSet> getCoveredLines() throws IOException, InterruptedException {
+		File linesFile = File.createTempFile("coverageLines", ".txt");
+		try {
+			List<String> lineStrs = new ArrayList<String>();
+			for (LCNode node : lines)
+				lineStrs.add(node.toString());
+			FileUtils.writeLines(linesFile, lineStrs);
+
+			Map<String, BitSet> coveredLines = new HashMap<String, BitSet>();
+			List<String> pendingTests = new ArrayList<String>(tests);
+			while (!pendingTests.isEmpty()) {
+				String timedOutTest = collect(linesFile, pendingTests, coveredLines);
+				int index = (timedOutTest == null) ? -1 : pendingTests.indexOf(timedOutTest);
+				if (index < 0)
+					break;
+				System.out.println("Test timed out while measuring its coverage: " + timedOutTest);
+				pendingTests = new ArrayList<String>(pendingTests.subList(index + 1, pendingTests.size()));
+			}
+			return coveredLines;
+		} finally {
+			linesFile.delete();
+		}
+	}
+
+	/**
+	 * Runs one collector on the tests and adds what it reports to
+	 * coveredLines. Returns the test that timed out, or null. The collector is
+	 * given timeout ms for every test and once more for starting up.
+	 */
+	String collect(File linesFile, List<String> tests, Map<String, BitSet> coveredLines)
+			throws IOException, InterruptedException {
+		File testsFile = File.createTempFile("coverageTests", ".txt");
+		try {
+			FileUtils.writeLines(testsFile, tests);
+
+			List<String> params = new ArrayList<String>();
+			params.add(jvmPath);
+			params.add("-cp");
+
+			// the class path of ARJA brings JaCoCo 0.8.x, which, unlike the
+			// 0.7.9 in external/lib, can instrument Java 11 classes
+			File binExternalDir = new File(externalProjRoot, "bin");
+
+			String cpStr = "";
+			cpStr += System.getProperty("java.class.path") + File.pathSeparator;
+			cpStr += binExternalDir.getCanonicalPath();
+			params.add(cpStr);
+
+			params.add("us.msu.cse.repair.external.coverage.TestCoverageCollector");
+
+			params.add(binJavaDir);
+			params.add(binTestDir);
+
+			if (dependences == null || dependences.isEmpty())
+				params.add(File.pathSeparator);
+			else {
+				String dps = "";
+				for (String cls : dependences)
+					dps += (cls + File.pathSeparator);
+				params.add(dps);
+			}
+
+			params.add("@" + linesFile.getCanonicalPath());
+			params.add("@" + testsFile.getCanonicalPath());
+			params.add(String.valueOf(timeout));
+
+			ProcessBuilder builder = new ProcessBuilder(params);
+			builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+			builder.environment().put("TZ", "America/Los_Angeles");
+
+			Process process = builder.start();
+
+			StreamReaderThread streamReaderThread = new StreamReaderThread(process.getInputStream());
+			streamReaderThread.start();
+
+			int waitTime = (int) Math.min(Integer.MAX_VALUE, timeout * (tests.size() + 1));
+			ProcessWithTimeout processWithTimeout = new ProcessWithTimeout(process);
+			int exitCode = processWithTimeout.waitForProcess(waitTime);
+			if (exitCode == Integer.MIN_VALUE)
+				System.err.println("TestCoverageCollector did not finish within " + waitTime + " ms");
+
+			streamReaderThread.join();
+			List<String> output = streamReaderThread.getOutput();
+
+			String timedOutTest = null;
+			for (String str : output) {
+				if (str.startsWith("TestTimeout:"))
+					timedOutTest = str.substring("TestTimeout:".length()).trim();
+				if (!str.startsWith("TestCoverage:"))
+					continue;
+				String strs[] = str.substring("TestCoverage:".length()).trim().split(" ");
+				BitSet covered = new BitSet(lines.size());
+				for (int i = 1; i < strs.length; i++)
+					covered.set(Integer.parseInt(strs[i]));
+				coveredLines.put(strs[0], covered);
+			}
+			return timedOutTest;
+		} finally {
+			testsFile.delete();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package us.msu.cse.repair.core.coverage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Results of the test filter appended to a file as they arrive, one line per
+ * test: "+ test" if it is kept, "- test" if it is discarded. A run that is
+ * restarted with the same file only filters the tests it does not list.
+ * Every record ends with a line break, so a last line cut off by a crash,
+ * which could name another test, is recognized: it is ignored when the file
+ * is read and removed before new records are appended.
+ */
+public class TestFilterCheckpoint {
+	private final File file;
+	private Writer writer;
+
+	public TestFilterCheckpoint(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * The recorded tests among the given ones, mapped to whether they are kept.
+	 */
+	public Map<String, Boolean> load(Set<String> tests) throws IOException {
+		Map<String, Boolean> results = new HashMap<String, Boolean>();
+		if (!file.isFile())
+			return results;
+
+		String content = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+		content = content.substring(0, content.lastIndexOf('\n') + 1);
+		for (String line : content.split("\n")) {
+			if (line.length() < 3 || line.charAt(1) != ' ')
+				continue;
+			String test = line.substring(2);
+			if (!tests.contains(test))
+				continue;
+			if (line.charAt(0) == '+')
+				results.put(test, true);
+			else if (line.charAt(0) == '-')
+				results.put(test, false);
+		}
+		return results;
+	}
+
+	public synchronized void record(String test, boolean kept) throws IOException {
+		if (writer == null) {
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null)
+				FileUtils.forceMkdir(parent);
+			dropIncompleteLine();
+			writer = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+		}
+		writer.write((kept ? "+ " : "- ") + test + "\n");
+		writer.flush();
+	}
+
+	/**
+	 * Cuts the file after its last line break.
+	 */
+	void dropIncompleteLine() throws IOException {
+		if (!file.isFile())
+			return;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			long length = raf.length();
+			while (length > 0) {
+				raf.seek(length - 1);
+				if (raf.read() == '\n')
+					break;
+				length--;
+			}
+			raf.setLength(length);
+		}
+	}
+
+	public synchronized void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+}
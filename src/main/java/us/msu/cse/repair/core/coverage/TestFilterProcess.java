@@ -1,22 +1,47 @@
 package us.msu.cse.repair.core.coverage;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
 
 import us.msu.cse.repair.core.parser.LCNode;
-import us.msu.cse.repair.core.util.ProcessWithTimeout;
-import us.msu.cse.repair.core.util.StreamReaderThread;
 
+/**
+ * Runs the external TestFilter on the positive tests, split into shards that
+ * are filtered by parallel JVMs. TestFilter prints the result of each test as
+ * soon as it is known; the results are read as they arrive and appended to
+ * the checkpoint, if any, so a restarted run only filters the tests left.
+ *
+ * A JVM that reports no result for testTimeout ms is killed. The first test
+ * of its shard without a result is the one that hung (or ended the JVM); it
+ * is kept, since nothing is known about it, and the rest of the shard is
+ * filtered by a new JVM.
+ */
 public class TestFilterProcess {
+	// a shard whose JVM reports nothing this many times in a row is given up
+	static final int MAX_SILENT_LAUNCHES = 3;
+
 	Set<LCNode> faultyLines;
 	String faultyLinesInfoPath;
 
 	Set<String> orgPositiveTests;
-	String orgPosTestsInfoPath;
 
 	String binJavaDir;
 	String binTestDir;
@@ -25,16 +50,18 @@ public class TestFilterProcess {
 	String externalProjRoot;
 
 	String jvmPath;
-	
+
+	int shards;
+	long testTimeout;
+	TestFilterCheckpoint checkpoint;
 
 	public TestFilterProcess(Set<LCNode> faultyLines, String faultyLinesInfoPath, Set<String> orgPositiveTests,
-			String orgPosTestsInfoPath, String binJavaDir, String binTestDir, Set<String> dependences,
-			String externalProjRoot, String jvmPath) {
+			String binJavaDir, String binTestDir, Set<String> dependences, String externalProjRoot, String jvmPath,
+			int shards, long testTimeout, File checkpointFile) {
 		this.faultyLines = faultyLines;
 		this.faultyLinesInfoPath = faultyLinesInfoPath;
 
 		this.orgPositiveTests = orgPositiveTests;
-		this.orgPosTestsInfoPath = orgPosTestsInfoPath;
 
 		this.binJavaDir = binJavaDir;
 		this.binTestDir = binTestDir;
@@ -43,80 +70,198 @@ public class TestFilterProcess {
 		this.externalProjRoot = externalProjRoot;
 
 		this.jvmPath = jvmPath;
+
+		this.shards = shards;
+		this.testTimeout = testTimeout;
+		this.checkpoint = checkpointFile == null ? null : new TestFilterCheckpoint(checkpointFile);
 	}
 
 	public Set<String> getFilteredPositiveTests() throws IOException, InterruptedException {
-		List<String> params = new ArrayList<String>();
-		params.add(jvmPath);
-		params.add("-cp");
-
-		File jarDir = new File(externalProjRoot, "lib/*");
-		File binExternalDir = new File(externalProjRoot, "bin");
-
-		String cpStr = "";
-		cpStr += jarDir.getCanonicalPath() + File.pathSeparator;
-		cpStr += binExternalDir.getCanonicalPath();
-		params.add(cpStr);
-
-		params.add("us.msu.cse.repair.external.coverage.TestFilter");
-
-		params.add(binJavaDir);
-		params.add(binTestDir);
-
-		if (dependences == null || dependences.isEmpty())
-			params.add(File.pathSeparator);
-		else {
-			String dps = "";
-			for (String cls : dependences)
-				dps += (cls + File.pathSeparator);
-			params.add(dps);
+		final Set<String> filteredPositiveTests = Collections.synchronizedSet(new HashSet<String>());
+
+		List<String> remainingTests = new ArrayList<String>();
+		if (checkpoint != null) {
+			Map<String, Boolean> recorded = checkpoint.load(orgPositiveTests);
+			if (!recorded.isEmpty())
+				System.out.println("Resuming test filtering, " + recorded.size() + " tests already filtered");
+			for (String test : new TreeSet<String>(orgPositiveTests)) {
+				Boolean kept = recorded.get(test);
+				if (kept == null)
+					remainingTests.add(test);
+				else if (kept)
+					filteredPositiveTests.add(test);
+			}
+		} else
+			remainingTests.addAll(new TreeSet<String>(orgPositiveTests));
+
+		if (remainingTests.isEmpty())
+			return new HashSet<String>(filteredPositiveTests);
+
+		File linesFile = null;
+		if (faultyLinesInfoPath == null) {
+			linesFile = File.createTempFile("filterLines", ".txt");
+			List<String> lineStrs = new ArrayList<String>();
+			for (LCNode node : faultyLines)
+				lineStrs.add(node.toString());
+			FileUtils.writeLines(linesFile, lineStrs);
 		}
+		final String linesPath = linesFile == null ? faultyLinesInfoPath : linesFile.getCanonicalPath();
+
+		int shardCount = Math.max(1, Math.min(shards, remainingTests.size()));
+		List<List<String>> shardTests = new ArrayList<List<String>>();
+		for (int i = 0; i < shardCount; i++)
+			shardTests.add(new ArrayList<String>());
+		for (int i = 0; i < remainingTests.size(); i++)
+			shardTests.get(i % shardCount).add(remainingTests.get(i));
 
-		if (faultyLinesInfoPath != null)
-			params.add("@" + faultyLinesInfoPath);
-		else {
-			String fls = "";
-			for (LCNode node : faultyLines) {
-				String className = node.getClassName();
-				int lineNumber = node.getLineNumber();
-				fls += (className + "#" + lineNumber + File.pathSeparator);
+		ExecutorService executor = Executors.newFixedThreadPool(shardCount);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (final List<String> tests : shardTests) {
+				futures.add(executor.submit(() -> {
+					filterShard(tests, linesPath, filteredPositiveTests);
+					return null;
+				}));
 			}
-			params.add(fls);
+			for (Future<Void> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			if (checkpoint != null)
+				checkpoint.close();
+			if (linesFile != null)
+				linesFile.delete();
 		}
 
-		if (orgPosTestsInfoPath != null)
-			params.add("@" + orgPosTestsInfoPath);
-		else {
-			String opts = "";
-			for (String test : orgPositiveTests)
-				opts += (test + File.pathSeparator);
-			params.add(opts);
+		return new HashSet<String>(filteredPositiveTests);
+	}
+
+	void filterShard(List<String> tests, String linesPath, Set<String> filteredPositiveTests)
+			throws IOException, InterruptedException {
+		List<String> pendingTests = tests;
+		int silentLaunches = 0;
+		while (!pendingTests.isEmpty()) {
+			Set<String> reported = runFilter(pendingTests, linesPath, filteredPositiveTests);
+
+			List<String> unreported = new ArrayList<String>();
+			for (String test : pendingTests) {
+				if (!reported.contains(test))
+					unreported.add(test);
+			}
+			pendingTests = unreported;
+			if (pendingTests.isEmpty())
+				break;
+
+			silentLaunches = reported.isEmpty() ? silentLaunches + 1 : 0;
+			if (silentLaunches >= MAX_SILENT_LAUNCHES) {
+				// the JVM itself fails, keep the rest unrecorded so a restart tries them again
+				System.err.println("Test filter JVM keeps failing, keeping " + pendingTests.size() + " tests unfiltered");
+				filteredPositiveTests.addAll(pendingTests);
+				return;
+			}
+
+			String test = pendingTests.remove(0);
+			System.err.println("Test filtering hung or crashed on " + test + ", keeping it");
+			record(test, true, filteredPositiveTests);
 		}
+	}
 
-		ProcessBuilder builder = new ProcessBuilder(params);
-		builder.redirectOutput();
-		builder.redirectErrorStream(true);
-		builder.directory();
-		builder.environment().put("TZ", "America/Los_Angeles");
+	/**
+	 * Filters the tests in one JVM and returns those it reported before it
+	 * exited or was killed.
+	 */
+	Set<String> runFilter(List<String> tests, String linesPath, final Set<String> filteredPositiveTests)
+			throws IOException, InterruptedException {
+		File testsFile = File.createTempFile("filterTests", ".txt");
+		Process process = null;
+		try {
+			FileUtils.writeLines(testsFile, tests);
 
-		Process process = builder.start();
+			List<String> params = new ArrayList<String>();
+			params.add(jvmPath);
+			params.add("-cp");
 
-		StreamReaderThread streamReaderThread = new StreamReaderThread(process.getInputStream());
-		streamReaderThread.start();
+			// the JaCoCo of ARJA, as for TestCoverageProcess: the 0.7.9 in
+			// external/lib cannot instrument Java 11 classes
+			File binExternalDir = new File(externalProjRoot, "bin");
 
-		ProcessWithTimeout processWithTimeout = new ProcessWithTimeout(process);
-		processWithTimeout.waitForProcess(0);
+			String cpStr = "";
+			cpStr += System.getProperty("java.class.path") + File.pathSeparator;
+			cpStr += binExternalDir.getCanonicalPath();
+			params.add(cpStr);
 
-		streamReaderThread.join();
-		List<String> output = streamReaderThread.getOutput();
+			params.add("us.msu.cse.repair.external.coverage.TestFilter");
 
-		Set<String> filteredPositiveTests = new HashSet<String>();
-		for (String str : output) {
-			if (str.startsWith("FilteredTest"))
-				filteredPositiveTests.add(str.split(":")[1].trim());
-		}
+			params.add(binJavaDir);
+			params.add(binTestDir);
+
+			if (dependences == null || dependences.isEmpty())
+				params.add(File.pathSeparator);
+			else {
+				String dps = "";
+				for (String cls : dependences)
+					dps += (cls + File.pathSeparator);
+				params.add(dps);
+			}
+
+			params.add("@" + linesPath);
+			params.add("@" + testsFile.getCanonicalPath());
 
-		return filteredPositiveTests;
+			ProcessBuilder builder = new ProcessBuilder(params);
+			builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+			builder.environment().put("TZ", "America/Los_Angeles");
+
+			process = builder.start();
+
+			final Set<String> pending = new HashSet<String>(tests);
+			final Set<String> reported = ConcurrentHashMap.newKeySet();
+			final AtomicLong lastResult = new AtomicLong(System.currentTimeMillis());
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			Thread readerThread = new Thread(() -> {
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						boolean kept = line.startsWith("FilteredTest:");
+						if (!kept && !line.startsWith("DiscardedTest:"))
+							continue;
+						String test = line.substring(line.indexOf(':') + 1).trim();
+						if (!pending.contains(test))
+							continue;
+						record(test, kept, filteredPositiveTests);
+						reported.add(test);
+						lastResult.set(System.currentTimeMillis());
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+			readerThread.start();
+
+			long poll = testTimeout > 0 ? Math.min(testTimeout, 1000) : 1000;
+			while (!process.waitFor(poll, TimeUnit.MILLISECONDS)) {
+				if (testTimeout > 0 && System.currentTimeMillis() - lastResult.get() > testTimeout) {
+					process.destroyForcibly();
+					break;
+				}
+			}
+
+			readerThread.join();
+			return reported;
+		} finally {
+			if (process != null)
+				process.destroyForcibly();
+			testsFile.delete();
+		}
 	}
 
+	void record(String test, boolean kept, Set<String> filteredPositiveTests) throws IOException {
+		if (kept)
+			filteredPositiveTests.add(test);
+		if (checkpoint != null)
+			checkpoint.record(test, kept);
+	}
 }
@@ -1,25 +1,36 @@
 package us.msu.cse.repair.core.faultlocalizer;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Parser for Cobertura coverage XML files
  * Used by Defects4JFaultLocalizer to extract line coverage information
+ *
+ * The report is read with StAX, one element at a time, so memory does not
+ * depend on the size of the XML. Only the <line> elements of a class's own
+ * <lines> are read; the copies listed under its <methods> are skipped.
  */
 public class CoberturaParser {
-    
+
     /**
      * Represents coverage information for a single line
      */
@@ -27,104 +38,216 @@ public class CoberturaParser {
         public final String className;
         public final int lineNumber;
         public final int hits;
-        
+
         public LineCoverage(String className, int lineNumber, int hits) {
             this.className = className;
             this.lineNumber = lineNumber;
             this.hits = hits;
         }
-        
+
         @Override
         public String toString() {
             return className + "#" + lineNumber + " (hits: " + hits + ")";
         }
     }
-    
+
+    /**
+     * Receives the lines of a report as they are read
+     */
+    public interface LineVisitor {
+        void visitLine(String className, int lineNumber, int hits);
+    }
+
+    /**
+     * Line hits of a report: every class gets an id, and the line numbers
+     * and hits of a class are kept in two parallel int arrays
+     */
+    public static class CoverageData implements LineVisitor {
+        private final List<String> classNames = new ArrayList<>();
+        private final Map<String, Integer> classIds = new HashMap<>();
+        private final List<int[]> lineNumbers = new ArrayList<>();
+        private final List<int[]> hits = new ArrayList<>();
+        private final List<Integer> sizes = new ArrayList<>();
+
+        @Override
+        public void visitLine(String className, int lineNumber, int lineHits) {
+            Integer id = classIds.get(className);
+            if (id == null) {
+                id = classNames.size();
+                classIds.put(className, id);
+                classNames.add(className);
+                lineNumbers.add(new int[16]);
+                hits.add(new int[16]);
+                sizes.add(0);
+            }
+
+            int size = sizes.get(id);
+            if (size == lineNumbers.get(id).length) {
+                lineNumbers.set(id, Arrays.copyOf(lineNumbers.get(id), size * 2));
+                hits.set(id, Arrays.copyOf(hits.get(id), size * 2));
+            }
+            lineNumbers.get(id)[size] = lineNumber;
+            hits.get(id)[size] = lineHits;
+            sizes.set(id, size + 1);
+        }
+
+        public int getClassCount() {
+            return classNames.size();
+        }
+
+        public String getClassName(int classId) {
+            return classNames.get(classId);
+        }
+
+        public int getLineCount(int classId) {
+            return sizes.get(classId);
+        }
+
+        public int getLineNumber(int classId, int index) {
+            return lineNumbers.get(classId)[index];
+        }
+
+        public int getHits(int classId, int index) {
+            return hits.get(classId)[index];
+        }
+
+        public int size() {
+            int size = 0;
+            for (int s : sizes)
+                size += s;
+            return size;
+        }
+    }
+
+    /**
+     * Streams every line of the report to the visitor
+     */
+    public void parse(File coverageXml, LineVisitor visitor) throws Exception {
+        LineReader reader = new LineReader(coverageXml);
+        try {
+            while (reader.nextLine())
+                visitor.visitLine(reader.className, reader.lineNumber, reader.hits);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parse a report into the compact representation, keeping only the
+     * classes of the project (see filterProjectCode); a null prefix keeps all
+     */
+    public CoverageData parse(File coverageXml, final String projectPackagePrefix) throws Exception {
+        final CoverageData data = new CoverageData();
+        parse(coverageXml, new LineVisitor() {
+            @Override
+            public void visitLine(String className, int lineNumber, int hits) {
+                if (projectPackagePrefix == null || isProjectCode(className, projectPackagePrefix))
+                    data.visitLine(className, lineNumber, hits);
+            }
+        });
+        return data;
+    }
+
+    /**
+     * The executed lines (hits > 0) of a report, as a bitset of line numbers
+     * per class
+     */
+    public Map<String, BitSet> parseExecutedLines(File coverageXml) throws Exception {
+        final Map<String, BitSet> executedLines = new HashMap<>();
+        parse(coverageXml, new LineVisitor() {
+            @Override
+            public void visitLine(String className, int lineNumber, int hits) {
+                if (hits > 0)
+                    executedLines.computeIfAbsent(className, k -> new BitSet()).set(lineNumber);
+            }
+        });
+        return executedLines;
+    }
+
+    /**
+     * Iterates lazily over the lines of a report; the file stays open until
+     * the iteration is finished
+     */
+    public Iterable<LineCoverage> iterate(final File coverageXml) {
+        return new Iterable<LineCoverage>() {
+            @Override
+            public Iterator<LineCoverage> iterator() {
+                try {
+                    return new LineIterator(coverageXml);
+                } catch (Exception e) {
+                    throw new RuntimeException("Cannot read " + coverageXml, e);
+                }
+            }
+        };
+    }
+
     /**
      * Parse Cobertura coverage.xml file
-     * 
+     *
      * @param coverageXml The coverage.xml file
      * @return Map of (className#lineNumber) -> LineCoverage
      * @throws Exception if parsing fails
      */
     public Map<String, LineCoverage> parse(File coverageXml) throws Exception {
-        Map<String, LineCoverage> coverageMap = new HashMap<>();
-        
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        
-        // Disable DTD validation and external entity resolution
-        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        factory.setFeature("http://xml.org/sax/features/validation", false);
-        factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
-        factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-        
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(coverageXml);
-        doc.getDocumentElement().normalize();
-        
-        // Get all <class> elements
-        NodeList classList = doc.getElementsByTagName("class");
-        
-        for (int i = 0; i < classList.getLength(); i++) {
-            Element classElement = (Element) classList.item(i);
-            String className = classElement.getAttribute("name");
-            
-            // Get all <line> elements within this class
-            NodeList lineList = classElement.getElementsByTagName("line");
-            
-            for (int j = 0; j < lineList.getLength(); j++) {
-                Element lineElement = (Element) lineList.item(j);
-                
-                try {
-                    int lineNumber = Integer.parseInt(lineElement.getAttribute("number"));
-                    int hits = Integer.parseInt(lineElement.getAttribute("hits"));
-                    
-                    String key = className + "#" + lineNumber;
-                    LineCoverage coverage = new LineCoverage(className, lineNumber, hits);
-                    coverageMap.put(key, coverage);
-                    
-                } catch (NumberFormatException e) {
-                    // Skip malformed lines
-                    continue;
-                }
+        final Map<String, LineCoverage> coverageMap = new HashMap<>();
+        parse(coverageXml, new LineVisitor() {
+            @Override
+            public void visitLine(String className, int lineNumber, int hits) {
+                coverageMap.put(className + "#" + lineNumber, new LineCoverage(className, lineNumber, hits));
             }
-        }
-        
+        });
         return coverageMap;
     }
-    
+
+    /**
+     * Whether a class belongs to the project code: it starts with the package
+     * prefix and is not a test class
+     */
+    public static boolean isProjectCode(String className, String projectPackagePrefix) {
+        return className.startsWith(projectPackagePrefix) && !className.contains("Test")
+                && !className.contains("test");
+    }
+
     /**
      * Filter coverage map to only include project source code
      * Excludes test classes and framework code
-     * 
+     *
      * @param coverageMap The full coverage map
      * @param projectPackagePrefix Package prefix for project code (e.g., "org.apache.commons")
      * @return Filtered coverage map
      */
     public Map<String, LineCoverage> filterProjectCode(
-            Map<String, LineCoverage> coverageMap, 
+            Map<String, LineCoverage> coverageMap,
             String projectPackagePrefix) {
-        
+
         Map<String, LineCoverage> filtered = new HashMap<>();
-        
+
         for (Map.Entry<String, LineCoverage> entry : coverageMap.entrySet()) {
-            String className = entry.getValue().className;
-            
-            // Include only project code
-            if (className.startsWith(projectPackagePrefix)) {
-                // Exclude test classes
-                if (!className.contains("Test") && !className.contains("test")) {
-                    filtered.put(entry.getKey(), entry.getValue());
-                }
-            }
+            if (isProjectCode(entry.getValue().className, projectPackagePrefix))
+                filtered.put(entry.getKey(), entry.getValue());
         }
-        
+
         return filtered;
     }
-    
+
+    /**
+     * Filter compact coverage data to only include project source code
+     */
+    public CoverageData filterProjectCode(CoverageData data, String projectPackagePrefix) {
+        CoverageData filtered = new CoverageData();
+        for (int id = 0; id < data.getClassCount(); id++) {
+            String className = data.getClassName(id);
+            if (!isProjectCode(className, projectPackagePrefix))
+                continue;
+            for (int i = 0; i < data.getLineCount(id); i++)
+                filtered.visitLine(className, data.getLineNumber(id, i), data.getHits(id, i));
+        }
+        return filtered;
+    }
+
     /**
      * Get all classes covered in the coverage map
-     * 
+     *
      * @param coverageMap The coverage map
      * @return Set of class names
      */
@@ -135,10 +258,10 @@ public class CoberturaParser {
         }
         return classes;
     }
-    
+
     /**
      * Get all lines with non-zero hits (executed lines)
-     * 
+     *
      * @param coverageMap The coverage map
      * @return Set of keys (className#lineNumber) for executed lines
      */
@@ -151,4 +274,107 @@ public class CoberturaParser {
         }
         return executedLines;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads the lines of a report one by one; the current line is held in
+     * primitive fields
+     */
+    private static class LineReader {
+        private final InputStream in;
+        private final XMLStreamReader reader;
+
+        private int methodDepth;
+
+        String className;
+        int lineNumber;
+        int hits;
+
+        LineReader(File coverageXml) throws IOException, XMLStreamException {
+            in = new BufferedInputStream(new FileInputStream(coverageXml));
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+
+            // Do not load the DTD or resolve external entities
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+            reader = factory.createXMLStreamReader(in);
+        }
+
+        /**
+         * Moves to the next line of the report, false at the end
+         */
+        boolean nextLine() throws XMLStreamException {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("class"))
+                        className = reader.getAttributeValue(null, "name");
+                    else if (name.equals("method"))
+                        methodDepth++;
+                    else if (name.equals("line") && className != null && methodDepth == 0) {
+                        try {
+                            lineNumber = Integer.parseInt(reader.getAttributeValue(null, "number"));
+                            hits = Integer.parseInt(reader.getAttributeValue(null, "hits"));
+                            return true;
+                        } catch (NumberFormatException e) {
+                            // Skip malformed lines
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("class"))
+                        className = null;
+                    else if (name.equals("method"))
+                        methodDepth--;
+                }
+            }
+            return false;
+        }
+
+        void close() throws IOException, XMLStreamException {
+            reader.close();
+            in.close();
+        }
+    }
+
+    /**
+     * Pulls the next line from the XML only when asked
+     */
+    private static class LineIterator implements Iterator<LineCoverage> {
+        private final LineReader reader;
+        private LineCoverage next;
+
+        LineIterator(File coverageXml) throws IOException, XMLStreamException {
+            reader = new LineReader(coverageXml);
+            advance();
+        }
+
+        private void advance() throws IOException, XMLStreamException {
+            if (reader.nextLine())
+                next = new LineCoverage(reader.className, reader.lineNumber, reader.hits);
+            else {
+                next = null;
+                reader.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public LineCoverage next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            LineCoverage current = next;
+            try {
+                advance();
+            } catch (Exception e) {
+                throw new RuntimeException("Cannot read the coverage report", e);
+            }
+            return current;
+        }
+    }
+}
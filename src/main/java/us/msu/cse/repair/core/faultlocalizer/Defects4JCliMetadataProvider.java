@@ -0,0 +1,194 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Runs the Defects4J CLI on a checkout and keeps its output in a cache
+ * directory with the layout of Defects4JDirectoryMetadataProvider, so each
+ * command runs once per checkout; the cache directory can later be read
+ * offline. The cache is tied to a hash of the compiled classes of the
+ * checkout and is cleared when they change.
+ */
+public class Defects4JCliMetadataProvider extends Defects4JDirectoryMetadataProvider {
+
+    static final String KEY_FILE = "checkout.key";
+
+    private final File projectDir;
+    private final String binJavaDir;
+    private final String binTestDir;
+
+    private boolean prepared;
+
+    public Defects4JCliMetadataProvider(File projectDir, File cacheDir, String binJavaDir, String binTestDir) {
+        super(cacheDir);
+        this.projectDir = projectDir;
+        this.binJavaDir = binJavaDir;
+        this.binTestDir = binTestDir;
+    }
+
+    @Override
+    public Set<String> getAllTests() throws Exception {
+        prepareCache();
+        File testsFile = new File(dataDir, TESTS_FILE);
+        if (!testsFile.isFile()) {
+            List<String> output = runDefects4J(false, "export", "-p", "tests.all", "-w", projectDir.getPath());
+            List<String> tests = new ArrayList<>();
+            for (String line : output) {
+                if (!line.trim().isEmpty()) {
+                    tests.add(line.trim());
+                }
+            }
+            File tmp = File.createTempFile(TESTS_FILE, ".tmp", dataDir);
+            FileUtils.writeLines(tmp, "UTF-8", tests, "\n");
+            moveToCache(tmp, testsFile);
+        }
+        return super.getAllTests();
+    }
+
+    @Override
+    public Set<String> getFailingTests() throws Exception {
+        runCoverage();
+        return super.getFailingTests();
+    }
+
+    @Override
+    public File getCoverage() throws Exception {
+        runCoverage();
+        return super.getCoverage();
+    }
+
+    @Override
+    public File getTestCoverage(String test) throws Exception {
+        prepareCache();
+        File cached = super.getTestCoverage(test);
+        if (cached != null) {
+            return cached;
+        }
+        
+        // the run overwrites the coverage.xml of the checkout, the full one is cached already
+        runCoverage();
+        File coverageXml = new File(projectDir, COVERAGE_FILE);
+        coverageXml.delete();
+        runDefects4J(false, "coverage", "-t", test.replace("#", "::"));
+        if (!coverageXml.isFile()) {
+            return null;
+        }
+        File target = getTestCoverageFile(test);
+        FileUtils.forceMkdir(target.getParentFile());
+        copyToCache(coverageXml, target);
+        return target;
+    }
+
+    /**
+     * Runs "defects4j coverage" on all the tests unless its output is cached
+     */
+    private synchronized void runCoverage() throws Exception {
+        prepareCache();
+        if (new File(dataDir, COVERAGE_FILE).isFile()) {
+            return;
+        }
+        
+        System.out.println("Running Defects4J coverage analysis...");
+        System.out.println("  Project directory: " + projectDir);
+        runDefects4J(true, "coverage");
+        System.out.println("Defects4J coverage completed successfully");
+        
+        // failing_tests first, a cached coverage.xml means both are there
+        File failingTests = new File(projectDir, FAILING_TESTS_FILE);
+        if (failingTests.isFile()) {
+            copyToCache(failingTests, new File(dataDir, FAILING_TESTS_FILE));
+        }
+        File coverageXml = new File(projectDir, COVERAGE_FILE);
+        if (!coverageXml.isFile()) {
+            throw new Exception("coverage.xml not found in " + projectDir);
+        }
+        copyToCache(coverageXml, new File(dataDir, COVERAGE_FILE));
+    }
+
+    /**
+     * Clears the cache if it was written for other compiled classes
+     */
+    private synchronized void prepareCache() throws IOException {
+        if (prepared) {
+            return;
+        }
+        
+        String key = new FaultLocalizationCache(dataDir.getPath()).getKey(binJavaDir, binTestDir, null, null,
+                "Defects4J", projectDir.getCanonicalPath());
+        File keyFile = new File(dataDir, KEY_FILE);
+        if (!keyFile.isFile() || !FileUtils.readFileToString(keyFile, "UTF-8").trim().equals(key)) {
+            if (dataDir.exists()) {
+                System.out.println("Defects4J cache is out of date, clearing " + dataDir);
+                FileUtils.deleteDirectory(dataDir);
+            }
+            FileUtils.forceMkdir(dataDir);
+            FileUtils.writeStringToFile(keyFile, key + "\n", "UTF-8");
+        } else {
+            System.out.println("Using cached Defects4J output in " + dataDir);
+        }
+        prepared = true;
+    }
+
+    /**
+     * Runs a Defects4J command in the checkout. With failOnError, its output
+     * is printed and a non-zero exit code is an error.
+     */
+    private List<String> runDefects4J(boolean failOnError, String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add("defects4j");
+        for (String arg : args) {
+            command.add(arg);
+        }
+        
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(projectDir);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        
+        List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                if (failOnError) {
+                    System.out.println("  [defects4j] " + line);
+                }
+            }
+        }
+        
+        int exitCode = process.waitFor();
+        if (exitCode != 0 && failOnError) {
+            System.err.println("Defects4J " + args[0] + " failed with exit code: " + exitCode);
+            System.err.println("Project directory: " + projectDir);
+            System.err.println("Make sure the project is properly checked out and compiled.");
+            throw new Exception("Defects4J " + args[0] + " command failed with exit code: " + exitCode);
+        }
+        return output;
+    }
+
+    private void copyToCache(File source, File target) throws IOException {
+        File tmp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        FileUtils.copyFile(source, tmp);
+        moveToCache(tmp, target);
+    }
+
+    private void moveToCache(File tmp, File target) throws IOException {
+        // moved in place, an interrupted run never leaves a partial file in the cache
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+}
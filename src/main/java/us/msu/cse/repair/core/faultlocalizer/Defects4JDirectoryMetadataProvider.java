@@ -0,0 +1,96 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the Defects4J data from a plain directory, so fault localization runs
+ * without a Defects4J installation:
+ *
+ * <pre>
+ * tests.all          all tests, one per line ("Class::method" or "Class#method")
+ * failing_tests      the failing_tests file of the checkout ("--- Class::method" lines)
+ * coverage.xml       Cobertura coverage of the run of all the tests
+ * tests/TEST.xml     Cobertura coverage of a failing test run alone, TEST is "Class#method"
+ * </pre>
+ *
+ * A missing tests/TEST.xml only makes the localizer estimate that test.
+ */
+public class Defects4JDirectoryMetadataProvider implements Defects4JMetadataProvider {
+
+    static final String TESTS_FILE = "tests.all";
+    static final String FAILING_TESTS_FILE = "failing_tests";
+    static final String COVERAGE_FILE = "coverage.xml";
+    static final String TEST_COVERAGE_DIR = "tests";
+
+    protected final File dataDir;
+
+    public Defects4JDirectoryMetadataProvider(File dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    @Override
+    public Set<String> getAllTests() throws Exception {
+        File testsFile = getRequiredFile(TESTS_FILE);
+        Set<String> allTests = new HashSet<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(testsFile))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    allTests.add(line.replace("::", "#"));
+                }
+            }
+        }
+        return allTests;
+    }
+
+    @Override
+    public Set<String> getFailingTests() throws Exception {
+        Set<String> failingTests = new HashSet<>();
+        File failingTestsFile = new File(dataDir, FAILING_TESTS_FILE);
+        if (!failingTestsFile.exists()) {
+            System.out.println("WARNING: failing_tests file not found in " + dataDir);
+            return failingTests;
+        }
+        
+        try (BufferedReader br = new BufferedReader(new FileReader(failingTestsFile))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                // "--- Class::method", the following lines are the stack trace
+                if (line.startsWith("--- ")) {
+                    failingTests.add(line.substring(4).trim().replace("::", "#"));
+                }
+            }
+        }
+        return failingTests;
+    }
+
+    @Override
+    public File getCoverage() throws Exception {
+        return getRequiredFile(COVERAGE_FILE);
+    }
+
+    @Override
+    public File getTestCoverage(String test) throws Exception {
+        File coverageXml = getTestCoverageFile(test);
+        return coverageXml.isFile() ? coverageXml : null;
+    }
+
+    File getTestCoverageFile(String test) {
+        return new File(new File(dataDir, TEST_COVERAGE_DIR), test.replace("::", "#") + ".xml");
+    }
+
+    private File getRequiredFile(String name) throws IOException {
+        File file = new File(dataDir, name);
+        if (!file.isFile()) {
+            throw new IOException(name + " not found in " + dataDir);
+        }
+        return file;
+    }
+}
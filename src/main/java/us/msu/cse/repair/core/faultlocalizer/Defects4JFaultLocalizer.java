@@ -1,10 +1,8 @@
 package us.msu.cse.repair.core.faultlocalizer;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,11 +15,19 @@ import us.msu.cse.repair.core.parser.LCNode;
 /**
  * Fault localizer that uses Defects4J's coverage data
  * Compatible with Java 11 and Defects4J v3.0+
+ *
+ * The tests and the coverage come from a Defects4JMetadataProvider: by
+ * default the Defects4J CLI, cached in .arja-defects4j under the checkout,
+ * or a directory of pre-collected data for offline runs.
  */
 public class Defects4JFaultLocalizer implements IFaultLocalizer {
     
+    static final String CACHE_DIR = ".arja-defects4j";
+    
     private String projectDir;
+    private Defects4JMetadataProvider metadata;
     private Map<LCNode, Double> faultyLines;
+    private SpectrumMatrix spectrum;
     private Set<String> positiveTestMethods;
     private Set<String> negativeTestMethods;
     
@@ -41,6 +47,8 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
                                    String binJavaDir, String binTestDir, Set<String> dependences,
                                    String externalProjRoot) {
         this.projectDir = externalProjRoot;
+        this.metadata = new Defects4JCliMetadataProvider(new File(projectDir), new File(projectDir, CACHE_DIR),
+                binJavaDir, binTestDir);
         this.faultyLines = new HashMap<>();
         this.positiveTestMethods = new HashSet<>();
         this.negativeTestMethods = new HashSet<>();
@@ -62,6 +70,8 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
         File binDir = new File(binJavaDir);
         File targetDir = binDir.getParentFile(); // target or build
         this.projectDir = targetDir.getParent(); // project root
+        this.metadata = new Defects4JCliMetadataProvider(new File(projectDir), new File(projectDir, CACHE_DIR),
+                binJavaDir, binTestDir);
         
         this.faultyLines = new HashMap<>();
         this.positiveTestMethods = new HashSet<>();
@@ -72,33 +82,43 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
         System.out.println("  Derived projectDir: " + projectDir);
     }
     
+    /**
+     * Constructor with pre-collected data, Defects4J is not run
+     */
+    public Defects4JFaultLocalizer(Defects4JMetadataProvider metadata) {
+        this.metadata = metadata;
+        this.faultyLines = new HashMap<>();
+        this.positiveTestMethods = new HashSet<>();
+        this.negativeTestMethods = new HashSet<>();
+        
+        System.out.println("Defects4JFaultLocalizer initialized (" + metadata.getClass().getSimpleName() + ")");
+    }
+    
     @Override
     public Map<LCNode, Double> searchSuspicious(double thr) {
+        return searchSuspicious(thr, SuspiciousnessFormula.OCHIAI);
+    }
+    
+    /**
+     * Coverage is collected on the first call only, later calls score the
+     * same spectrum with the given formula
+     */
+    @Override
+    public Map<LCNode, Double> searchSuspicious(double thr, SuspiciousnessFormula formula) {
         try {
             System.out.println("=== Defects4J Fault Localizer (Java 11+) ===");
-            System.out.println("Project directory: " + projectDir);
+            if (projectDir != null) {
+                System.out.println("Project directory: " + projectDir);
+            }
             System.out.println("Suspiciousness threshold: " + thr);
+            System.out.println("Suspiciousness formula: " + formula);
             
-            // Step 1: Run Defects4J coverage analysis
-            runDefects4JCoverage();
-            
-            // Step 2: Get all tests
-            Set<String> allTests = getAllTests();
-            System.out.println("Total tests: " + allTests.size());
-            
-            // Step 3: Parse failing tests
-            parseFailingTests();
-            System.out.println("Failing tests: " + negativeTestMethods.size());
-            
-            // Step 4: Calculate passing tests
-            positiveTestMethods.addAll(allTests);
-            positiveTestMethods.removeAll(negativeTestMethods);
-            System.out.println("Passing tests: " + positiveTestMethods.size());
-            
-            // Step 5: Parse coverage and calculate suspiciousness
-            parseCoverageAndCalculateSuspiciousness();
+            if (spectrum == null) {
+                collectSpectrum();
+            }
+            faultyLines = spectrum.getSuspiciousLines(formula, 0);
             
-            // Step 6: Filter by threshold
+            // Filter by threshold
             Map<LCNode, Double> filtered = new HashMap<>();
             for (Map.Entry<LCNode, Double> entry : faultyLines.entrySet()) {
                 if (entry.getValue() >= thr) {
@@ -126,144 +146,64 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
     }
     
     /**
-     * Run Defects4J coverage command
-     */
-    private void runDefects4JCoverage() throws Exception {
-        System.out.println("Running Defects4J coverage analysis...");
-        System.out.println("  Project directory: " + projectDir);
-        
-        ProcessBuilder pb = new ProcessBuilder("defects4j", "coverage");
-        pb.directory(new File(projectDir));
-        pb.redirectErrorStream(true);
-        
-        Process process = pb.start();
-        
-        // Read output and error
-        BufferedReader reader = new BufferedReader(
-            new java.io.InputStreamReader(process.getInputStream())
-        );
-        BufferedReader errorReader = new BufferedReader(
-            new java.io.InputStreamReader(process.getErrorStream())
-        );
-        
-        String line;
-        while ((line = reader.readLine()) != null) {
-            System.out.println("  [defects4j] " + line);
-        }
-        
-        // Read error stream
-        while ((line = errorReader.readLine()) != null) {
-            System.err.println("  [defects4j ERROR] " + line);
-        }
-        
-        int exitCode = process.waitFor();
-        if (exitCode != 0) {
-            System.err.println("Defects4J coverage failed with exit code: " + exitCode);
-            System.err.println("Project directory: " + projectDir);
-            System.err.println("Make sure the project is properly checked out and compiled.");
-            throw new Exception("Defects4J coverage command failed with exit code: " + exitCode);
-        }
-        
-        System.out.println("Defects4J coverage completed successfully");
-    }
-    
-    /**
-     * Get all tests using defects4j export
+     * Run the tests with coverage and build the spectrum
      */
-    private Set<String> getAllTests() throws Exception {
-        Set<String> allTests = new HashSet<>();
+    private void collectSpectrum() throws Exception {
+        // Step 1: Run Defects4J coverage analysis
+        File coverageXml = metadata.getCoverage();
         
-        ProcessBuilder pb = new ProcessBuilder(
-            "defects4j", "export", "-p", "tests.all", "-w", projectDir
-        );
-        pb.redirectErrorStream(true);
+        // Step 2: Get all tests
+        Set<String> allTests = metadata.getAllTests();
+        System.out.println("Total tests: " + allTests.size());
         
-        Process process = pb.start();
-        BufferedReader reader = new BufferedReader(
-            new java.io.InputStreamReader(process.getInputStream())
-        );
+        // Step 3: Parse failing tests
+        negativeTestMethods.addAll(metadata.getFailingTests());
+        System.out.println("Failing tests: " + negativeTestMethods.size());
         
-        String line;
-        while ((line = reader.readLine()) != null) {
-            line = line.trim();
-            if (!line.isEmpty()) {
-                // Convert :: to # for consistency
-                allTests.add(line.replace("::", "#"));
-            }
-        }
+        // Step 4: Calculate passing tests
+        positiveTestMethods.addAll(allTests);
+        positiveTestMethods.removeAll(negativeTestMethods);
+        System.out.println("Passing tests: " + positiveTestMethods.size());
         
-        process.waitFor();
-        return allTests;
+        // Step 5: Parse coverage and build the spectrum
+        SpectrumMatrix collected = new SpectrumMatrix();
+        parseCoverageAndBuildSpectrum(coverageXml, collected);
+        spectrum = collected;
     }
     
     /**
-     * Parse failing tests from failing_tests file
+     * Parse coverage.xml and fill the spectrum
      */
-    private void parseFailingTests() throws IOException {
-        File failingTestsFile = new File(projectDir, "failing_tests");
-        
-        if (!failingTestsFile.exists()) {
-            System.out.println("WARNING: failing_tests file not found");
-            return;
-        }
-        
-        try (BufferedReader br = new BufferedReader(new FileReader(failingTestsFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                // ✅ 修复：Defects4J 的 failing_tests 文件格式为 "--- Class::Method"
-                // 后续行是堆栈信息，应该忽略
-                if (line.startsWith("--- ")) {
-                    String testName = line.substring(4).trim();
-                    // Convert :: to # for consistency
-                    negativeTestMethods.add(testName.replace("::", "#"));
-                }
-            }
-        }
-    }
-    
-    /**
-     * Parse coverage.xml and calculate Ochiai suspiciousness scores
-     */
-    private void parseCoverageAndCalculateSuspiciousness() throws Exception {
-        File coverageXml = new File(projectDir, "coverage.xml");
-        
-        if (!coverageXml.exists()) {
-            System.out.println("ERROR: coverage.xml not found");
-            throw new Exception("coverage.xml not found in " + projectDir);
-        }
-        
+    private void parseCoverageAndBuildSpectrum(File coverageXml, SpectrumMatrix spectrum) throws Exception {
         System.out.println("Parsing coverage.xml...");
         
         // Parse Cobertura XML
         CoberturaParser parser = new CoberturaParser();
-        Map<String, CoberturaParser.LineCoverage> coverageMap = parser.parse(coverageXml);
+        CoberturaParser.CoverageData coverageData = parser.parse(coverageXml, (String) null);
         
-        System.out.println("Total lines in coverage: " + coverageMap.size());
+        System.out.println("Total lines in coverage: " + coverageData.size());
         
         // Detect project package prefix from coverage data
-        String projectPackage = detectProjectPackage(coverageMap);
+        String projectPackage = detectProjectPackage(coverageData);
         System.out.println("Detected project package: " + projectPackage);
         
         // Filter to only project code
-        Map<String, CoberturaParser.LineCoverage> projectCoverage = 
-            parser.filterProjectCode(coverageMap, projectPackage);
+        CoberturaParser.CoverageData projectCoverage = parser.filterProjectCode(coverageData, projectPackage);
         
         System.out.println("Project code lines: " + projectCoverage.size());
         
-        // Calculate Ochiai scores
-        calculateOchiaiScores(projectCoverage);
+        buildSpectrum(projectCoverage, spectrum);
     }
     
     /**
      * Detect project package prefix from coverage data
      */
-    private String detectProjectPackage(Map<String, CoberturaParser.LineCoverage> coverageMap) {
-        // Find the most common package prefix
+    private String detectProjectPackage(CoberturaParser.CoverageData coverageData) {
+        // Find the most common package prefix (weighted by the number of lines)
         Map<String, Integer> packageCounts = new HashMap<>();
         
-        for (CoberturaParser.LineCoverage coverage : coverageMap.values()) {
-            String className = coverage.className;
+        for (int classId = 0; classId < coverageData.getClassCount(); classId++) {
+            String className = coverageData.getClassName(classId);
             
             // Skip test classes
             if (className.contains("Test") || className.contains("test")) {
@@ -274,7 +214,8 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
             String[] parts = className.split("\\.");
             if (parts.length >= 3) {
                 String packagePrefix = parts[0] + "." + parts[1] + "." + parts[2];
-                packageCounts.put(packagePrefix, packageCounts.getOrDefault(packagePrefix, 0) + 1);
+                packageCounts.put(packagePrefix,
+                    packageCounts.getOrDefault(packagePrefix, 0) + coverageData.getLineCount(classId));
             }
         }
         
@@ -286,20 +227,18 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
     }
     
     /**
-     * Calculate Ochiai suspiciousness scores
+     * Fill the spectrum with the executed project lines
      * 
-     * Ochiai formula: ef / sqrt((ef + ep) * (ef + nf))
-     * where:
-     *   ef = number of failing tests that execute the line
-     *   ep = number of passing tests that execute the line
-     *   nf = number of failing tests that do not execute the line
-     *   np = number of passing tests that do not execute the line
+     * Failing tests are run one by one, so they get exact rows. Passing tests
+     * only have the aggregated hits of the full run, so their executions are
+     * approximated per line as ep = hits - ef, capped at the number of
+     * passing tests.
      */
-    private void calculateOchiaiScores(Map<String, CoberturaParser.LineCoverage> projectCoverage) {
+    private void buildSpectrum(CoberturaParser.CoverageData projectCoverage, SpectrumMatrix spectrum) {
         int totalFailingTests = negativeTestMethods.size();
         int totalPassingTests = positiveTestMethods.size();
         
-        System.out.println("Calculating Ochiai scores...");
+        System.out.println("Building the spectrum...");
         System.out.println("  Total failing tests: " + totalFailingTests);
         System.out.println("  Total passing tests: " + totalPassingTests);
         
@@ -310,7 +249,7 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
 
         // ✅ 关键修复：获取每个失败测试的覆盖率
         // 这样我们才能准确知道某行是否被失败测试执行了 (ef)
-        Map<String, Set<String>> failingTestCoverage = new HashMap<>();
+        Map<String, Map<String, BitSet>> failingTestCoverage = new HashMap<>();
         try {
             failingTestCoverage = getPerTestCoverage(negativeTestMethods);
         } catch (Exception e) {
@@ -318,59 +257,62 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
             e.printStackTrace();
         }
         
-        for (Map.Entry<String, CoberturaParser.LineCoverage> entry : projectCoverage.entrySet()) {
-            CoberturaParser.LineCoverage coverage = entry.getValue();
-            String lineKey = coverage.className + "#" + coverage.lineNumber;
-            
-            if (coverage.hits > 0) {
-                // 1. 计算 ef (executing failing tests)
-                // 遍历所有失败测试，看它们是否覆盖了当前行
-                int ef = 0;
-                for (String test : negativeTestMethods) {
-                    Set<String> coveredLines = failingTestCoverage.get(test);
-                    if (coveredLines != null && coveredLines.contains(lineKey)) {
-                        ef++;
-                    }
-                }
-                
-                // 如果没有 per-test coverage 数据（例如获取失败），回退到启发式
-                if (failingTestCoverage.isEmpty()) {
-                     // Fallback heuristic
-                     ef = Math.min(coverage.hits, totalFailingTests);
-                }
-
-                // 2. 计算 ep (executing passing tests)
-                // ep = total_hits - ef (近似值，假设每次 hit 对应一个测试)
-                // 注意：这仍然是一个近似值，因为一个测试可能多次命中同一行
-                // 但比之前的纯猜测要好得多
-                int ep = Math.max(0, coverage.hits - ef);
-                
-                // 修正 ep：不能超过总通过测试数
-                ep = Math.min(ep, totalPassingTests);
-
-                // 3. 计算 nf (not executing failing tests)
-                int nf = totalFailingTests - ef;
-                
-                // 4. 计算 Ochiai
-                double suspiciousness = 0.0;
-                if (ef > 0) {
-                    suspiciousness = ef / Math.sqrt((ef + ep) * (ef + nf));
+        // Executed lines of the full run, by spectrum line id
+        List<Integer> lineIds = new ArrayList<>();
+        List<Integer> lineHits = new ArrayList<>();
+        for (int classId = 0; classId < projectCoverage.getClassCount(); classId++) {
+            String className = projectCoverage.getClassName(classId);
+            for (int index = 0; index < projectCoverage.getLineCount(classId); index++) {
+                int hits = projectCoverage.getHits(classId, index);
+                if (hits > 0) {
+                    int lineNumber = projectCoverage.getLineNumber(classId, index);
+                    lineIds.add(spectrum.getLineId(new LCNode(className, lineNumber)));
+                    lineHits.add(hits);
                 }
-                
-                if (suspiciousness > 0) {
-                    LCNode lcNode = new LCNode(coverage.className, coverage.lineNumber);
-                    faultyLines.put(lcNode, suspiciousness);
+            }
+        }
+        
+        // 1. ef (executing failing tests)
+        if (!failingTestCoverage.isEmpty()) {
+            for (String test : negativeTestMethods) {
+                BitSet row = new BitSet();
+                Map<String, BitSet> coveredLines = failingTestCoverage.get(test);
+                if (coveredLines != null) {
+                    for (int lineId : lineIds) {
+                        LCNode lcNode = spectrum.getLine(lineId);
+                        BitSet coveredClassLines = coveredLines.get(lcNode.getClassName());
+                        if (coveredClassLines != null && coveredClassLines.get(lcNode.getLineNumber())) {
+                            row.set(lineId);
+                        }
+                    }
                 }
+                spectrum.addTest(test, true, row);
             }
+        } else {
+            // 如果没有 per-test coverage 数据（例如获取失败），回退到启发式
+            spectrum.addTests(true, totalFailingTests);
+            for (int i = 0; i < lineIds.size(); i++) {
+                spectrum.addExecutions(lineIds.get(i), true, Math.min(lineHits.get(i), totalFailingTests));
+            }
+        }
+        
+        // 2. ep (executing passing tests)
+        // ep = total_hits - ef (近似值，假设每次 hit 对应一个测试)
+        // 注意：这仍然是一个近似值，因为一个测试可能多次命中同一行
+        spectrum.addTests(false, totalPassingTests);
+        for (int i = 0; i < lineIds.size(); i++) {
+            int ef = spectrum.getExecutedFailed(lineIds.get(i));
+            int ep = Math.min(Math.max(0, lineHits.get(i) - ef), totalPassingTests);
+            spectrum.addExecutions(lineIds.get(i), false, ep);
         }
     }
 
     /**
      * 获取每个失败测试的覆盖率
-     * 返回 Map: TestName -> Set<LineKey> (ClassName#LineNumber)
+     * 返回 Map: TestName -> (ClassName -> executed line numbers)
      */
-    private Map<String, Set<String>> getPerTestCoverage(Set<String> tests) throws Exception {
-        Map<String, Set<String>> coverageMap = new HashMap<>();
+    private Map<String, Map<String, BitSet>> getPerTestCoverage(Set<String> tests) throws Exception {
+        Map<String, Map<String, BitSet>> coverageMap = new HashMap<>();
         System.out.println("Collecting per-test coverage for " + tests.size() + " failing tests...");
         
         int count = 0;
@@ -380,33 +322,23 @@ public class Defects4JFaultLocalizer implements IFaultLocalizer {
             
             // 运行单个测试的覆盖率
             // defects4j coverage -t <test_class>::<test_method>
-            ProcessBuilder pb = new ProcessBuilder(
-                "defects4j", "coverage", "-t", test.replace("#", "::")
-            );
-            pb.directory(new File(projectDir));
-            pb.redirectErrorStream(true);
-            Process p = pb.start();
-            p.waitFor();
+            File coverageXml = metadata.getTestCoverage(test);
             
             // 解析 coverage.xml
-            File coverageXml = new File(projectDir, "coverage.xml");
-            if (coverageXml.exists()) {
+            if (coverageXml != null) {
                 CoberturaParser parser = new CoberturaParser();
-                Map<String, CoberturaParser.LineCoverage> lines = parser.parse(coverageXml);
-                
-                Set<String> coveredLines = new HashSet<>();
-                for (CoberturaParser.LineCoverage line : lines.values()) {
-                    if (line.hits > 0) {
-                        coveredLines.add(line.className + "#" + line.lineNumber);
-                    }
-                }
-                coverageMap.put(test, coveredLines);
+                coverageMap.put(test, parser.parseExecutedLines(coverageXml));
             }
         }
         
         return coverageMap;
     }
     
+    @Override
+    public SpectrumMatrix getSpectrum() {
+        return spectrum;
+    }
+    
     @Override
     public Set<String> getPositiveTests() {
         return positiveTestMethods;
@@ -0,0 +1,33 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Source of the Defects4J data used by Defects4JFaultLocalizer: the tests of
+ * the checkout, the failing ones, and the Cobertura coverage of the full run
+ * and of single tests. Test names use the "Class#method" form.
+ */
+public interface Defects4JMetadataProvider {
+
+    /**
+     * All tests of the checkout (defects4j export -p tests.all)
+     */
+    Set<String> getAllTests() throws Exception;
+
+    /**
+     * Tests failing on the checkout (the failing_tests file)
+     */
+    Set<String> getFailingTests() throws Exception;
+
+    /**
+     * coverage.xml of the run of all the tests
+     */
+    File getCoverage() throws Exception;
+
+    /**
+     * coverage.xml of the run of the given test alone, or null if it is not
+     * available
+     */
+    File getTestCoverage(String test) throws Exception;
+}
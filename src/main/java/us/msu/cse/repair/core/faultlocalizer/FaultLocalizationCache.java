@@ -0,0 +1,275 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+
+import us.msu.cse.repair.core.parser.LCNode;
+
+/**
+ * On-disk cache of fault localization results. The key is a SHA-256 over the
+ * bytes of every file under binJavaDir and binTestDir, the dependencies, the
+ * executed test classes and the settings that change the result (localizer,
+ * formula, threshold). Rebuilding the program changes the key, so stale
+ * entries are never read; they are simply no longer looked up.
+ *
+ * If the localizer kept a row for every test, the spectrum is stored too, so
+ * that a cache hit still gives the seed lines, the test filter and the
+ * coverage matrix the lines the tests executed.
+ */
+public class FaultLocalizationCache {
+	private static final String FORMAT = "arja-fl-3";
+
+	private final File cacheDir;
+
+	public FaultLocalizationCache(String cacheDir) {
+		this.cacheDir = new File(cacheDir);
+	}
+
+	public String getKey(String binJavaDir, String binTestDir, Set<String> dependences, Set<String> tests,
+			String... settings) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("SHA-256 is not available", e);
+		}
+
+		update(digest, FORMAT);
+		for (String setting : settings)
+			update(digest, setting);
+
+		hashPath(digest, new File(binJavaDir));
+		hashPath(digest, new File(binTestDir));
+
+		if (dependences != null) {
+			for (String dependence : new TreeSet<String>(dependences))
+				hashPath(digest, new File(dependence));
+		}
+
+		if (tests != null) {
+			for (String test : new TreeSet<String>(tests))
+				update(digest, test);
+		}
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest())
+			key.append(String.format("%02x", b));
+		return key.toString();
+	}
+
+	/**
+	 * The cached result of the key, or null if there is none or it cannot be
+	 * read.
+	 */
+	public IFaultLocalizer load(String key) {
+		File file = getFile(key);
+		if (!file.isFile())
+			return null;
+
+		try {
+			List<String> lines = FileUtils.readLines(file, "UTF-8");
+			if (lines.isEmpty() || !lines.get(0).equals(FORMAT))
+				return null;
+
+			int index = 1;
+			Set<String> positiveTests = new HashSet<String>();
+			int count = Integer.parseInt(lines.get(index++).trim());
+			for (int i = 0; i < count; i++)
+				positiveTests.add(lines.get(index++));
+
+			Set<String> negativeTests = new HashSet<String>();
+			count = Integer.parseInt(lines.get(index++).trim());
+			for (int i = 0; i < count; i++)
+				negativeTests.add(lines.get(index++));
+
+			Map<LCNode, Double> faultyLines = new HashMap<LCNode, Double>();
+			count = Integer.parseInt(lines.get(index++).trim());
+			for (int i = 0; i < count; i++) {
+				String[] info = lines.get(index++).split(" ");
+				String[] node = info[0].split("#");
+				faultyLines.put(new LCNode(node[0], Integer.parseInt(node[1])), Double.parseDouble(info[1]));
+			}
+
+			SpectrumMatrix spectrum = null;
+			count = Integer.parseInt(lines.get(index++).trim());
+			if (count > 0) {
+				spectrum = new SpectrumMatrix();
+				for (int i = 0; i < count; i++) {
+					String[] node = lines.get(index++).split("#");
+					spectrum.getLineId(new LCNode(node[0], Integer.parseInt(node[1])));
+				}
+				count = Integer.parseInt(lines.get(index++).trim());
+				for (int i = 0; i < count; i++) {
+					String[] info = lines.get(index++).split(" ");
+					BitSet row = new BitSet();
+					for (int j = 2; j < info.length; j++)
+						row.set(Integer.parseInt(info[j]));
+					spectrum.addTest(info[1], info[0].equals("F"), row);
+				}
+			}
+			return new CachedFaultLocalizer(faultyLines, positiveTests, negativeTests, spectrum);
+		} catch (RuntimeException | IOException e) {
+			System.err.println("Fault localization cache entry cannot be read: " + file);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the result under the key. The spectrum is only stored if it is
+	 * not null and has a row for every test. The entry is written to a
+	 * temporary file first and then moved, so concurrent runs never read a
+	 * partial entry.
+	 */
+	public void store(String key, Map<LCNode, Double> faultyLines, Set<String> positiveTests,
+			Set<String> negativeTests, SpectrumMatrix spectrum) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		lines.add(FORMAT);
+		addAll(lines, positiveTests);
+		addAll(lines, negativeTests);
+
+		Map<String, Double> sortedLines = new TreeMap<String, Double>();
+		for (Map.Entry<LCNode, Double> entry : faultyLines.entrySet())
+			sortedLines.put(entry.getKey().toString(), entry.getValue());
+		lines.add(String.valueOf(sortedLines.size()));
+		for (Map.Entry<String, Double> entry : sortedLines.entrySet())
+			lines.add(entry.getKey() + " " + entry.getValue());
+
+		if (spectrum == null || !spectrum.hasAllRows())
+			lines.add("0");
+		else {
+			lines.add(String.valueOf(spectrum.getLineCount()));
+			for (int id = 0; id < spectrum.getLineCount(); id++)
+				lines.add(spectrum.getLine(id).toString());
+			lines.add(String.valueOf(spectrum.getTestCount()));
+			for (int row = 0; row < spectrum.getTestCount(); row++) {
+				StringBuilder builder = new StringBuilder(spectrum.isFailed(row) ? "F" : "P");
+				builder.append(" ").append(spectrum.getTest(row));
+				BitSet executed = spectrum.getRow(row);
+				for (int id = executed.nextSetBit(0); id >= 0; id = executed.nextSetBit(id + 1))
+					builder.append(" ").append(id);
+				lines.add(builder.toString());
+			}
+		}
+
+		FileUtils.forceMkdir(cacheDir);
+		File tmp = File.createTempFile(key, ".tmp", cacheDir);
+		try {
+			FileUtils.writeLines(tmp, "UTF-8", lines, "\n");
+			Files.move(tmp.toPath(), getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	File getFile(String key) {
+		return new File(cacheDir, key + ".fl");
+	}
+
+	void addAll(List<String> lines, Collection<String> tests) {
+		lines.add(String.valueOf(tests.size()));
+		lines.addAll(new TreeSet<String>(tests));
+	}
+
+	void hashPath(MessageDigest digest, File path) throws IOException {
+		update(digest, path.getPath());
+		if (path.isFile())
+			hashFile(digest, path);
+		else if (path.isDirectory()) {
+			// relative paths in a fixed order, so the key does not depend on listing order
+			Map<String, File> files = new TreeMap<String, File>();
+			String root = path.getCanonicalPath();
+			for (File file : FileUtils.listFiles(path, null, true))
+				files.put(file.getCanonicalPath().substring(root.length()), file);
+			for (Map.Entry<String, File> entry : files.entrySet()) {
+				update(digest, entry.getKey());
+				hashFile(digest, entry.getValue());
+			}
+		}
+	}
+
+	void hashFile(MessageDigest digest, File file) throws IOException {
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file.toPath())) {
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				digest.update(buffer, 0, n);
+		}
+		update(digest, String.valueOf(file.length()));
+	}
+
+	void update(MessageDigest digest, String str) {
+		try {
+			digest.update(str.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Result read from the cache. The formula is part of the key, so it is
+	 * not applied again. The spectrum is null if none was stored.
+	 */
+	static class CachedFaultLocalizer implements IFaultLocalizer {
+		Map<LCNode, Double> faultyLines;
+		Set<String> positiveTestMethods;
+		Set<String> negativeTestMethods;
+		SpectrumMatrix spectrum;
+
+		CachedFaultLocalizer(Map<LCNode, Double> faultyLines, Set<String> positiveTestMethods,
+				Set<String> negativeTestMethods, SpectrumMatrix spectrum) {
+			this.faultyLines = faultyLines;
+			this.positiveTestMethods = positiveTestMethods;
+			this.negativeTestMethods = negativeTestMethods;
+			this.spectrum = spectrum;
+		}
+
+		@Override
+		public Map<LCNode, Double> searchSuspicious(double thr) {
+			Map<LCNode, Double> partFaultyLines = new HashMap<LCNode, Double>();
+			for (Map.Entry<LCNode, Double> entry : faultyLines.entrySet()) {
+				if (entry.getValue() >= thr)
+					partFaultyLines.put(entry.getKey(), entry.getValue());
+			}
+			return partFaultyLines;
+		}
+
+		@Override
+		public Map<LCNode, Double> searchSuspicious(double thr, SuspiciousnessFormula formula) {
+			return searchSuspicious(thr);
+		}
+
+		@Override
+		public SpectrumMatrix getSpectrum() {
+			return spectrum;
+		}
+
+		@Override
+		public Set<String> getPositiveTests() {
+			return positiveTestMethods;
+		}
+
+		@Override
+		public Set<String> getNegativeTests() {
+			return negativeTestMethods;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import us.msu.cse.repair.core.parser.LCNode;
+
+/**
+ * Reads the binary spectra written by GZoltarSpectraConverter. The file is
+ * memory-mapped; the tests are decoded when it is opened, while the lines
+ * are read straight from the mapping in searchSuspicious. As they are sorted
+ * by decreasing suspiciousness, the read stops at the first line below the
+ * threshold, and only the classes of the lines kept are decoded.
+ */
+public class GZoltarBinaryFaultLocalizer implements IFaultLocalizer {
+	Set<String> positiveTestMethods;
+	Set<String> negativeTestMethods;
+
+	MappedByteBuffer buffer;
+
+	// offsets of the class names in the mapping, decoded on first use
+	int[] classOffsets;
+	String[] classNames;
+
+	int lineCount;
+	int linesOffset;
+
+	public GZoltarBinaryFaultLocalizer(File spectraFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(spectraFile.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if (buffer.getInt() != GZoltarSpectraConverter.MAGIC
+				|| buffer.getInt() != GZoltarSpectraConverter.VERSION)
+			throw new IOException("Not a spectra file of this version: " + spectraFile);
+
+		positiveTestMethods = new HashSet<String>();
+		negativeTestMethods = new HashSet<String>();
+		int testCount = buffer.getInt();
+		for (int i = 0; i < testCount; i++) {
+			boolean failed = buffer.get() != 0;
+			String test = readString(buffer);
+			if (failed)
+				negativeTestMethods.add(test);
+			else
+				positiveTestMethods.add(test);
+		}
+
+		int classCount = buffer.getInt();
+		classOffsets = new int[classCount];
+		classNames = new String[classCount];
+		for (int i = 0; i < classCount; i++) {
+			classOffsets[i] = buffer.position();
+			buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+		}
+
+		lineCount = buffer.getInt();
+		linesOffset = buffer.position();
+	}
+
+	@Override
+	public Map<LCNode, Double> searchSuspicious(double thr) {
+		Map<LCNode, Double> partFaultyLines = new HashMap<LCNode, Double>();
+		for (int i = 0; i < lineCount; i++) {
+			int offset = linesOffset + i * GZoltarSpectraConverter.LINE_SIZE;
+			double suspValue = buffer.getDouble(offset);
+			if (suspValue < thr)
+				break;
+			String className = getClassName(buffer.getInt(offset + 8));
+			partFaultyLines.put(new LCNode(className, buffer.getInt(offset + 12)), suspValue);
+		}
+		return partFaultyLines;
+	}
+
+	/**
+	 * GZoltar only exports the suspiciousness it computed (Ochiai), so the
+	 * formula cannot be changed.
+	 */
+	@Override
+	public Map<LCNode, Double> searchSuspicious(double thr, SuspiciousnessFormula formula) {
+		if (formula != SuspiciousnessFormula.OCHIAI)
+			System.err.println("GZoltar spectra are already scored, " + formula + " is ignored");
+		return searchSuspicious(thr);
+	}
+
+	String getClassName(int classId) {
+		if (classNames[classId] == null) {
+			ByteBuffer view = buffer.duplicate();
+			view.position(classOffsets[classId]);
+			classNames[classId] = readString(view);
+		}
+		return classNames[classId];
+	}
+
+	static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public SpectrumMatrix getSpectrum() {
+		return null;
+	}
+
+	@Override
+	public Set<String> getPositiveTests() {
+		return this.positiveTestMethods;
+	}
+
+	@Override
+	public Set<String> getNegativeTests() {
+		return this.negativeTestMethods;
+	}
+}
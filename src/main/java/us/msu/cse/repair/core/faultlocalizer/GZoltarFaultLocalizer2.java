@@ -61,6 +61,22 @@ public class GZoltarFaultLocalizer2 implements IFaultLocalizer {
 		return partFaultyLines;
 	}
 
+	/**
+	 * GZoltar only exports the suspiciousness it computed (Ochiai), so the
+	 * formula cannot be changed.
+	 */
+	@Override
+	public Map<LCNode, Double> searchSuspicious(double thr, SuspiciousnessFormula formula) {
+		if (formula != SuspiciousnessFormula.OCHIAI)
+			System.err.println("GZoltar spectra are already scored, " + formula + " is ignored");
+		return searchSuspicious(thr);
+	}
+
+	@Override
+	public SpectrumMatrix getSpectrum() {
+		return null;
+	}
+
 	@Override
 	public Set<String> getPositiveTests() {
 		// TODO Auto-generated method stub
@@ -0,0 +1,128 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import us.msu.cse.repair.core.parser.LCNode;
+
+/**
+ * Converts the text output of GZoltar 1.6.2 (the files tests and spectra of
+ * a gzoltar data directory) into the binary file read by
+ * GZoltarBinaryFaultLocalizer. Layout, big-endian:
+ *
+ * <pre>
+ * int magic, int version
+ * int tests,   per test:  byte failed, int length, UTF-8 name
+ * int classes, per class: int length, UTF-8 name
+ * int lines,   per line:  double suspiciousness, int class, int line number
+ * </pre>
+ *
+ * Lines are sorted by decreasing suspiciousness, so a threshold ends the
+ * read at the first line below it. Lines whose suspiciousness is NaN never
+ * pass a threshold and are dropped.
+ *
+ * Usage: GZoltarSpectraConverter gzoltarDataDir [outputFile]
+ */
+public class GZoltarSpectraConverter {
+	public static final String FILE_NAME = "spectra.bin";
+
+	static final int MAGIC = 0x41524A53;
+	static final int VERSION = 1;
+
+	// suspiciousness, class id and line number
+	static final int LINE_SIZE = 16;
+
+	public static void main(String[] args) throws IOException {
+		File output = args.length > 1 ? new File(args[1]) : new File(args[0], FILE_NAME);
+		convert(args[0], output);
+		System.out.println("Spectra written to " + output);
+	}
+
+	/**
+	 * The binary file of a gzoltar data directory, or null if it has not been
+	 * converted or is older than the text spectra.
+	 */
+	public static File getBinaryFile(String gzoltarDataDir) {
+		File binary = new File(gzoltarDataDir, FILE_NAME);
+		File spectra = new File(gzoltarDataDir, "spectra");
+		if (!binary.isFile() || binary.lastModified() < spectra.lastModified())
+			return null;
+		return binary;
+	}
+
+	public static void convert(String gzoltarDataDir, File output) throws IOException {
+		GZoltarFaultLocalizer2 text = new GZoltarFaultLocalizer2(gzoltarDataDir);
+		write(text.faultyLines, text.positiveTestMethods, text.negativeTestMethods, output);
+	}
+
+	public static void write(Map<LCNode, Double> faultyLines, Set<String> positiveTests, Set<String> negativeTests,
+			File output) throws IOException {
+		List<Map.Entry<LCNode, Double>> lines = new ArrayList<Map.Entry<LCNode, Double>>();
+		for (Map.Entry<LCNode, Double> entry : faultyLines.entrySet()) {
+			if (!entry.getValue().isNaN())
+				lines.add(entry);
+		}
+		lines.sort((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()));
+
+		List<String> classNames = new ArrayList<String>();
+		Map<String, Integer> classIds = new HashMap<String, Integer>();
+		for (Map.Entry<LCNode, Double> entry : lines) {
+			String className = entry.getKey().getClassName();
+			if (!classIds.containsKey(className)) {
+				classIds.put(className, classNames.size());
+				classNames.add(className);
+			}
+		}
+
+		// written next to the output and moved, a reader never maps a partial file
+		File tmp = File.createTempFile(FILE_NAME, ".tmp", output.getAbsoluteFile().getParentFile());
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+
+				out.writeInt(positiveTests.size() + negativeTests.size());
+				for (String test : positiveTests) {
+					out.writeByte(0);
+					writeString(out, test);
+				}
+				for (String test : negativeTests) {
+					out.writeByte(1);
+					writeString(out, test);
+				}
+
+				out.writeInt(classNames.size());
+				for (String className : classNames)
+					writeString(out, className);
+
+				out.writeInt(lines.size());
+				for (Map.Entry<LCNode, Double> entry : lines) {
+					out.writeDouble(entry.getValue());
+					out.writeInt(classIds.get(entry.getKey().getClassName()));
+					out.writeInt(entry.getKey().getLineNumber());
+				}
+			}
+			Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	static void writeString(DataOutputStream out, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -8,6 +8,19 @@ import us.msu.cse.repair.core.parser.LCNode;
 public interface IFaultLocalizer {
 	public Map<LCNode, Double> searchSuspicious(double thr);
 
+	/**
+	 * Scores the lines with the given formula. Localizers that keep their
+	 * spectrum can be asked again with another formula without collecting the
+	 * coverage again.
+	 */
+	public Map<LCNode, Double> searchSuspicious(double thr, SuspiciousnessFormula formula);
+
+	/**
+	 * The spectrum the lines are scored from, or null if the localizer does
+	 * not keep one.
+	 */
+	public SpectrumMatrix getSpectrum();
+
 	public Set<String> getPositiveTests();
 
 	public Set<String> getNegativeTests();
@@ -1,52 +1,80 @@
 package us.msu.cse.repair.core.faultlocalizer;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
+import org.apache.commons.io.FileUtils;
 import org.jacoco.core.analysis.Analyzer;
 import org.jacoco.core.analysis.CoverageBuilder;
 import org.jacoco.core.analysis.IClassCoverage;
 import org.jacoco.core.analysis.ICounter;
 import org.jacoco.core.analysis.ILine;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
 import org.jacoco.core.data.ExecutionDataStore;
-import org.jacoco.core.data.SessionInfoStore;
-import org.jacoco.core.instr.Instrumenter;
-import org.jacoco.core.runtime.IRuntime;
-import org.jacoco.core.runtime.LoggerRuntime;
-import org.jacoco.core.runtime.RuntimeData;
-import org.junit.runner.JUnitCore;
-import org.junit.runner.Result;
-import org.junit.runner.notification.Failure;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.data.ISessionInfoVisitor;
+import org.jacoco.core.data.SessionInfo;
 
 import us.msu.cse.repair.core.parser.LCNode;
-import us.msu.cse.repair.core.util.SafeClassLoader;
+import us.msu.cse.repair.core.util.ProcessWithTimeout;
+import us.msu.cse.repair.core.util.StreamReaderThread;
 
 /**
  * JaCoCo-based Fault Localizer for Java 11+
  * 
- * This implementation uses JaCoCo for coverage collection and implements
- * the Ochiai formula for fault localization, providing a drop-in replacement
- * for GZoltar that works with Java 11+.
+ * This implementation uses JaCoCo for coverage collection and scores the
+ * resulting SpectrumMatrix with a SuspiciousnessFormula (Ochiai by default),
+ * providing a drop-in replacement for GZoltar that works with Java 11+.
+ * 
+ * The test classes are split into shards, and every shard runs in its own
+ * forked JVM (see JaCoCoShardRunner), one test method at a time. Each shard
+ * writes the execution data of its tests to an exec file, and the files are
+ * merged into one execution data store per test at the end. The lines that
+ * the static initializers of a class cover, run before the first test of a
+ * shard, are added to the row of every test that executes the class.
+ * 
+ * Every test method gets testTimeout ms, and a test that times out counts as
+ * failing; the rest of its shard runs in a new JVM. Every shard gets
+ * shardTimeout ms in all (0 means no limit for either). The tests run with
+ * TZ=America/Los_Angeles, as in the test executors, and what they print is
+ * logged to a file per shard, kept if the shard did not finish normally.
  */
 public class JaCoCoFaultLocalizer implements IFaultLocalizer {
     Set<String> positiveTestMethods;
     Set<String> negativeTestMethods;
-    Map<LCNode, Double> faultyLines;
+    SpectrumMatrix spectrum;
+
+    static final long DEFAULT_TEST_TIMEOUT = 6000;
+    static final long DEFAULT_SHARD_TIMEOUT = 3600000;
+
+    long testTimeout;
+    long shardTimeout;
 
     public JaCoCoFaultLocalizer(Set<String> binJavaClasses, Set<String> binExecuteTestClasses, 
             String binJavaDir, String binTestDir, Set<String> dependences) 
             throws FileNotFoundException, IOException {
+        this(binJavaClasses, binExecuteTestClasses, binJavaDir, binTestDir, dependences,
+                Runtime.getRuntime().availableProcessors(), System.getProperty("java.home") + "/bin/java",
+                DEFAULT_TEST_TIMEOUT, DEFAULT_SHARD_TIMEOUT);
+    }
+
+    public JaCoCoFaultLocalizer(Set<String> binJavaClasses, Set<String> binExecuteTestClasses, 
+            String binJavaDir, String binTestDir, Set<String> dependences, int shards, String jvmPath,
+            long testTimeout, long shardTimeout) throws FileNotFoundException, IOException {
         
         System.out.println("=== JaCoCo Fault Localizer (Java 11+) ===");
         System.out.println("Binary Java Dir: " + binJavaDir);
@@ -56,87 +84,148 @@ public class JaCoCoFaultLocalizer implements IFaultLocalizer {
         
         positiveTestMethods = new HashSet<String>();
         negativeTestMethods = new HashSet<String>();
-        faultyLines = new HashMap<LCNode, Double>();
+        spectrum = new SpectrumMatrix();
+        this.testTimeout = testTimeout;
+        this.shardTimeout = shardTimeout;
 
+        List<File> tmpFiles = new ArrayList<>();
         try {
-            // Build classpath
-            List<String> classpathList = new ArrayList<>();
-            classpathList.add(binJavaDir);
-            classpathList.add(binTestDir);
-            if (dependences != null) {
-                classpathList.addAll(dependences);
+            File javaClassesFile = File.createTempFile("jacocoClasses", ".txt");
+            tmpFiles.add(javaClassesFile);
+            FileUtils.writeLines(javaClassesFile, binJavaClasses);
+
+            // Split the test classes round robin, in a fixed order
+            List<String> testClasses = new ArrayList<>(new TreeSet<>(binExecuteTestClasses));
+            int numberOfShards = Math.max(1, Math.min(shards, testClasses.size()));
+            List<List<String>> shardClasses = new ArrayList<>();
+            for (int i = 0; i < numberOfShards; i++) {
+                shardClasses.add(new ArrayList<String>());
             }
-            
-            // Create URL array for class loader
-            URL[] urls = new URL[classpathList.size()];
-            for (int i = 0; i < classpathList.size(); i++) {
-                urls[i] = new File(classpathList.get(i)).toURI().toURL();
+            for (int i = 0; i < testClasses.size(); i++) {
+                shardClasses.get(i % numberOfShards).add(testClasses.get(i));
             }
+            System.out.println("Shards (forked JVMs): " + numberOfShards);
             
-            // Create class loader
-            URLClassLoader classLoader = new URLClassLoader(urls, getClass().getClassLoader());
-            
-            // Initialize JaCoCo runtime
-            IRuntime runtime = new LoggerRuntime();
+            String dps = "";
+            if (dependences == null || dependences.isEmpty()) {
+                dps = File.pathSeparator;
+            } else {
+                for (String dependence : dependences) {
+                    dps += dependence + File.pathSeparator;
+                }
+            }
             
-            // Storage for coverage data per test
-            Map<String, ExecutionDataStore> testCoverageMap = new HashMap<>();
+            // Start every shard
+            List<List<String>> shardParams = new ArrayList<>();
+            List<Process> processes = new ArrayList<>();
+            List<File> execFiles = new ArrayList<>();
+            List<File> logFiles = new ArrayList<>();
+            for (List<String> classes : shardClasses) {
+                File testsFile = File.createTempFile("jacocoShard", ".txt");
+                tmpFiles.add(testsFile);
+                FileUtils.writeLines(testsFile, classes);
+                
+                List<String> params = new ArrayList<>();
+                params.add(jvmPath);
+                params.add("-cp");
+                params.add(System.getProperty("java.class.path"));
+                params.add(JaCoCoShardRunner.class.getName());
+                params.add(binJavaDir);
+                params.add(binTestDir);
+                params.add(dps);
+                params.add(testsFile.getCanonicalPath());
+                params.add(javaClassesFile.getCanonicalPath());
+                shardParams.add(params);
+                
+                File execFile = File.createTempFile("jacocoShard", ".exec");
+                tmpFiles.add(execFile);
+                execFiles.add(execFile);
+                File logFile = File.createTempFile("jacocoShard", ".log");
+                logFiles.add(logFile);
+                processes.add(startShard(params, execFile, logFile, null));
+            }
             
-            // Run each test and collect coverage
-            for (String testClassName : binExecuteTestClasses) {
-                try {
-                    // Load test class using SafeClassLoader
-                    Class<?> testClass = SafeClassLoader.loadClass(testClassName, classLoader);
+            // Wait for the shards and merge their results. A shard ends at a
+            // test that times out, and the tests after it run in a new JVM.
+            long deadline = System.currentTimeMillis() + shardTimeout;
+            Map<String, ExecutionDataStore> testCoverageMap = new LinkedHashMap<>();
+            ExecutionDataStore initializerData = new ExecutionDataStore();
+            for (int i = 0; i < processes.size(); i++) {
+                Process process = processes.get(i);
+                boolean complete = true;
+                while (process != null) {
+                    StreamReaderThread reader = new StreamReaderThread(process.getInputStream());
+                    reader.start();
+                    int timeLeft = 0;
+                    if (shardTimeout > 0)
+                        timeLeft = (int) Math.min(Integer.MAX_VALUE, Math.max(1, deadline - System.currentTimeMillis()));
+                    int exitCode = new ProcessWithTimeout(process).waitForProcess(timeLeft);
+                    reader.join();
+                    if (exitCode == Integer.MIN_VALUE) {
+                        System.err.println("Shard " + i + " did not finish within " + shardTimeout + "ms, its results are partial");
+                        complete = false;
+                    } else if (exitCode != 0) {
+                        System.err.println("Shard " + i + " exited with code " + exitCode + ", its results may be partial");
+                        complete = false;
+                    }
                     
-                    // Get all test methods
-                    Method[] methods = testClass.getDeclaredMethods();
-                    for (Method method : methods) {
-                        if (method.isAnnotationPresent(org.junit.Test.class)) {
-                            String testMethodName = testClassName + "#" + method.getName();
-                            
-                            // Create runtime data for this test
-                            RuntimeData runtimeData = new RuntimeData();
-                            runtime.startup(runtimeData);
-                            
-                            // Run the test
-                            JUnitCore junit = new JUnitCore();
-                            Result result = junit.run(testClass);
-                            
-                            // Collect coverage data
-                            ExecutionDataStore executionData = new ExecutionDataStore();
-                            SessionInfoStore sessionInfo = new SessionInfoStore();
-                            runtimeData.collect(executionData, sessionInfo, false);
-                            runtime.shutdown();
-                            
-                            // Store coverage for this test
-                            testCoverageMap.put(testMethodName, executionData);
-                            
-                            // Classify test result
-                            if (result.wasSuccessful()) {
-                                positiveTestMethods.add(testMethodName);
-                            } else {
-                                negativeTestMethods.add(testMethodName);
-                                // Print failure info
-                                for (Failure failure : result.getFailures()) {
-                                    System.out.println("Test failed: " + testMethodName);
-                                    System.out.println("  " + failure.getMessage());
-                                }
+                    List<String> results = new ArrayList<>();
+                    String timedOutTest = null;
+                    for (String line : reader.getOutput()) {
+                        if (!line.startsWith("TestResult:")) {
+                            continue;
+                        }
+                        String[] info = line.substring("TestResult:".length()).trim().split(" ", 2);
+                        if (info[0].equals("PASS")) {
+                            positiveTestMethods.add(info[1]);
+                        } else {
+                            // a test that times out fails, as in the test executors
+                            negativeTestMethods.add(info[1]);
+                            System.out.println("Test failed: " + info[1]);
+                            if (info[0].equals("TIMEOUT")) {
+                                timedOutTest = info[1];
                             }
                         }
+                        results.add(info[1]);
+                    }
+                    
+                    Map<String, ExecutionDataStore> shardCoverage = readExecFile(execFiles.get(i));
+                    ExecutionDataStore shardInitializers = shardCoverage.get(JaCoCoShardRunner.INITIALIZERS_SESSION);
+                    if (shardInitializers != null) {
+                        for (ExecutionData classData : shardInitializers.getContents()) {
+                            initializerData.put(classData);
+                        }
+                    }
+                    for (String test : results) {
+                        ExecutionDataStore store = shardCoverage.get(test);
+                        testCoverageMap.put(test, store != null ? store : new ExecutionDataStore());
                     }
-                } catch (Exception e) {
-                    System.err.println("Error running test class: " + testClassName);
-                    e.printStackTrace();
+                    
+                    process = null;
+                    if (timedOutTest != null && complete) {
+                        System.out.println("Test timed out: " + timedOutTest + ", shard " + i + " continues in a new JVM");
+                        File execFile = File.createTempFile("jacocoShard", ".exec");
+                        tmpFiles.add(execFile);
+                        execFiles.set(i, execFile);
+                        process = startShard(shardParams.get(i), execFile, logFiles.get(i), timedOutTest);
+                    }
+                }
+                
+                if (complete) {
+                    logFiles.get(i).delete();
+                } else {
+                    System.err.println("Output of shard " + i + ": " + logFiles.get(i).getCanonicalPath());
                 }
             }
             
             System.out.println("Passed tests: " + positiveTestMethods.size());
             System.out.println("Failed tests: " + negativeTestMethods.size());
             
-            // Analyze coverage and calculate suspiciousness
+            // Analyze coverage and build the spectrum
             if (!negativeTestMethods.isEmpty()) {
-                analyzeCoverageAndCalculateSuspiciousness(
+                analyzeCoverageAndBuildSpectrum(
                     testCoverageMap, 
+                    initializerData, 
                     binJavaDir, 
                     binJavaClasses
                 );
@@ -144,125 +233,180 @@ public class JaCoCoFaultLocalizer implements IFaultLocalizer {
                 System.out.println("WARNING: No failing tests found!");
             }
             
-            System.out.println("Faulty lines found: " + faultyLines.size());
-            
-            classLoader.close();
+            System.out.println("Executed lines: " + spectrum.getLineCount());
             
         } catch (Exception e) {
             System.err.println("ERROR in JaCoCo Fault Localizer: " + e.getMessage());
             e.printStackTrace();
             throw new IOException("Fault localization failed", e);
+        } finally {
+            for (File file : tmpFiles) {
+                file.delete();
+            }
         }
     }
     
     /**
-     * Analyze coverage data and calculate suspiciousness using Ochiai formula
+     * Start a shard JVM on the tests after resumeAfter, or on all of them if it
+     * is null. What the tests print goes to the log file of the shard.
      */
-    private void analyzeCoverageAndCalculateSuspiciousness(
+    private Process startShard(List<String> shardParams, File execFile, File logFile, String resumeAfter)
+            throws IOException {
+        List<String> params = new ArrayList<>(shardParams);
+        params.add(execFile.getCanonicalPath());
+        params.add(String.valueOf(testTimeout));
+        if (resumeAfter != null) {
+            params.add(resumeAfter);
+        }
+        
+        ProcessBuilder builder = new ProcessBuilder(params);
+        builder.redirectError(ProcessBuilder.Redirect.appendTo(logFile));
+        builder.environment().put("TZ", "America/Los_Angeles");
+        return builder.start();
+    }
+    
+    /**
+     * Read the exec file of a shard: one session per test, followed by the
+     * execution data of the classes it executed
+     */
+    private Map<String, ExecutionDataStore> readExecFile(File execFile) {
+        final Map<String, ExecutionDataStore> coverage = new HashMap<>();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(execFile))) {
+            ExecutionDataReader reader = new ExecutionDataReader(in);
+            final ExecutionDataStore[] current = new ExecutionDataStore[1];
+            reader.setSessionInfoVisitor(new ISessionInfoVisitor() {
+                @Override
+                public void visitSessionInfo(SessionInfo info) {
+                    current[0] = coverage.computeIfAbsent(info.getId(), k -> new ExecutionDataStore());
+                }
+            });
+            reader.setExecutionDataVisitor(new IExecutionDataVisitor() {
+                @Override
+                public void visitClassExecution(ExecutionData data) {
+                    if (current[0] != null) {
+                        current[0].put(data);
+                    }
+                }
+            });
+            reader.read();
+        } catch (IOException e) {
+            // A shard that crashed leaves a truncated file, keep what was read
+            System.err.println("Exec file cannot be fully read: " + execFile);
+        }
+        return coverage;
+    }
+    
+    /**
+     * Analyze coverage data and add the row of every test to the spectrum.
+     * Only the classes a test executed are analyzed for it, and the lines
+     * their static initializers covered before the tests are added.
+     */
+    private void analyzeCoverageAndBuildSpectrum(
             Map<String, ExecutionDataStore> testCoverageMap,
+            ExecutionDataStore initializerData,
             String binJavaDir,
             Set<String> binJavaClasses) throws IOException {
         
-        // For each class, analyze coverage
-        for (String className : binJavaClasses) {
-            String classFilePath = binJavaDir + "/" + className.replace('.', '/') + ".class";
-            File classFile = new File(classFilePath);
-            
-            if (!classFile.exists()) {
-                continue;
+        Map<String, byte[]> classBytes = new HashMap<>();
+        
+        Map<String, List<Integer>> initializerLines = new HashMap<>();
+        for (ExecutionData classData : initializerData.getContents()) {
+            String className = classData.getName().replace('/', '.');
+            byte[] bytes = getClassBytes(classBytes, binJavaDir, binJavaClasses, className);
+            if (bytes != null && classData.hasHits()) {
+                initializerLines.put(className, getCoveredLines(initializerData, bytes, className));
             }
+        }
+        
+        for (Map.Entry<String, ExecutionDataStore> entry : testCoverageMap.entrySet()) {
+            String testName = entry.getKey();
+            ExecutionDataStore executionData = entry.getValue();
+            BitSet row = new BitSet();
             
-            // Count coverage for each line
-            Map<Integer, LineCoverage> lineCoverageMap = new HashMap<>();
-            
-            for (Map.Entry<String, ExecutionDataStore> entry : testCoverageMap.entrySet()) {
-                String testName = entry.getKey();
-                ExecutionDataStore executionData = entry.getValue();
-                boolean testFailed = negativeTestMethods.contains(testName);
+            for (ExecutionData classData : executionData.getContents()) {
+                String className = classData.getName().replace('/', '.');
+                byte[] bytes = getClassBytes(classBytes, binJavaDir, binJavaClasses, className);
+                if (bytes == null) {
+                    continue;
+                }
                 
-                try {
-                    // Analyze this execution
-                    CoverageBuilder coverageBuilder = new CoverageBuilder();
-                    Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
-                    
-                    try (FileInputStream fis = new FileInputStream(classFile)) {
-                        analyzer.analyzeClass(fis, className);
-                    }
-                    
-                    // Get coverage for this class
-                    for (IClassCoverage classCoverage : coverageBuilder.getClasses()) {
-                        if (classCoverage.getName().replace('/', '.').equals(className)) {
-                            // Process each line
-                            for (int line = classCoverage.getFirstLine(); 
-                                 line <= classCoverage.getLastLine(); line++) {
-                                ILine lineInfo = classCoverage.getLine(line);
-                                
-                                if (lineInfo.getStatus() != ICounter.EMPTY) {
-                                    LineCoverage lc = lineCoverageMap.computeIfAbsent(
-                                        line, k -> new LineCoverage());
-                                    
-                                    if (lineInfo.getInstructionCounter().getCoveredCount() > 0) {
-                                        if (testFailed) {
-                                            lc.ef++; // executed by failing test
-                                        } else {
-                                            lc.ep++; // executed by passing test
-                                        }
-                                    } else {
-                                        if (testFailed) {
-                                            lc.nf++; // not executed by failing test
-                                        } else {
-                                            lc.np++; // not executed by passing test
-                                        }
-                                    }
-                                }
-                            }
-                        }
+                for (int line : getCoveredLines(executionData, bytes, className)) {
+                    row.set(spectrum.getLineId(new LCNode(className, line)));
+                }
+                List<Integer> lines = initializerLines.get(className);
+                if (lines != null) {
+                    for (int line : lines) {
+                        row.set(spectrum.getLineId(new LCNode(className, line)));
                     }
-                } catch (Exception e) {
-                    // Continue with next test
                 }
             }
             
-            // Calculate Ochiai suspiciousness for each line
-            for (Map.Entry<Integer, LineCoverage> entry : lineCoverageMap.entrySet()) {
-                int lineNumber = entry.getKey();
-                LineCoverage lc = entry.getValue();
-                
-                double suspiciousness = calculateOchiai(lc.ef, lc.ep, lc.nf, lc.np);
-                
-                if (suspiciousness > 0) {
-                    LCNode lcNode = new LCNode(className, lineNumber);
-                    faultyLines.put(lcNode, suspiciousness);
-                }
-            }
+            spectrum.addTest(testName, negativeTestMethods.contains(testName), row);
         }
     }
     
     /**
-     * Calculate Ochiai suspiciousness score
-     * Formula: ef / sqrt((ef + nf) * (ef + ep))
+     * The bytes of one of binJavaClasses, read once, or null if it is not one
+     * or has no class file
      */
-    private double calculateOchiai(int ef, int ep, int nf, int np) {
-        if (ef == 0) {
-            return 0.0;
+    private byte[] getClassBytes(Map<String, byte[]> classBytes, String binJavaDir, Set<String> binJavaClasses,
+            String className) throws IOException {
+        if (!binJavaClasses.contains(className)) {
+            return null;
         }
-        
-        double denominator = Math.sqrt((ef + nf) * (ef + ep));
-        if (denominator == 0) {
-            return 0.0;
+        byte[] bytes = classBytes.get(className);
+        if (bytes == null) {
+            File classFile = new File(binJavaDir, className.replace('.', '/') + ".class");
+            if (!classFile.exists()) {
+                return null;
+            }
+            bytes = FileUtils.readFileToByteArray(classFile);
+            classBytes.put(className, bytes);
         }
-        
-        return ef / denominator;
+        return bytes;
+    }
+    
+    /**
+     * The lines of a class covered in the execution data, none if the class
+     * cannot be analyzed
+     */
+    private List<Integer> getCoveredLines(ExecutionDataStore executionData, byte[] bytes, String className) {
+        List<Integer> lines = new ArrayList<>();
+        try {
+            CoverageBuilder coverageBuilder = new CoverageBuilder();
+            Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
+            analyzer.analyzeClass(bytes, className);
+            
+            for (IClassCoverage classCoverage : coverageBuilder.getClasses()) {
+                for (int line = classCoverage.getFirstLine(); 
+                     line <= classCoverage.getLastLine(); line++) {
+                    ILine lineInfo = classCoverage.getLine(line);
+                    
+                    if (lineInfo.getStatus() != ICounter.EMPTY
+                            && lineInfo.getInstructionCounter().getCoveredCount() > 0) {
+                        lines.add(line);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // Continue with next class
+        }
+        return lines;
     }
 
     @Override
     public Map<LCNode, Double> searchSuspicious(double thr) {
-        Map<LCNode, Double> partFaultyLines = new HashMap<LCNode, Double>();
-        for (Map.Entry<LCNode, Double> entry : faultyLines.entrySet()) {
-            if (entry.getValue() >= thr)
-                partFaultyLines.put(entry.getKey(), entry.getValue());
-        }
-        return partFaultyLines;
+        return searchSuspicious(thr, SuspiciousnessFormula.OCHIAI);
+    }
+
+    @Override
+    public Map<LCNode, Double> searchSuspicious(double thr, SuspiciousnessFormula formula) {
+        return spectrum.getSuspiciousLines(formula, thr);
+    }
+
+    @Override
+    public SpectrumMatrix getSpectrum() {
+        return spectrum;
     }
 
     @Override
@@ -274,14 +418,4 @@ public class JaCoCoFaultLocalizer implements IFaultLocalizer {
     public Set<String> getNegativeTests() {
         return this.negativeTestMethods;
     }
-    
-    /**
-     * Helper class to track line coverage statistics
-     */
-    private static class LineCoverage {
-        int ef = 0; // executed by failing tests
-        int ep = 0; // executed by passing tests
-        int nf = 0; // not executed by failing tests
-        int np = 0; // not executed by passing tests
-    }
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.IExecutionDataVisitor;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.Result;
+
+import us.msu.cse.repair.core.util.SafeClassLoader;
+
+/**
+ * Main class of the JVMs forked by JaCoCoFaultLocalizer. Every test method of
+ * the given test classes is run on its own with Request.method, against the
+ * classes of binJavaDir instrumented in process. The execution data of each
+ * test is written to the exec file as a session named after the test, and
+ * its outcome is printed as "TestResult: PASS|FAIL test".
+ *
+ * The classes of javaClassesFile are initialized before the first test, and
+ * the execution data of their static initializers is written first, as the
+ * session INITIALIZERS_SESSION.
+ *
+ * Every test runs on its own daemon thread and gets testTimeout ms (0 means
+ * no limit). A test that does not finish in time is printed as
+ * "TestResult: TIMEOUT test" and ends the shard, since it is left running
+ * and would still hit the probes of the tests after it. The caller starts
+ * the shard again with that test as resumeAfter, so that only the tests
+ * after it are run.
+ *
+ * Arguments: binJavaDir binTestDir dependences testClassesFile
+ * javaClassesFile execFile testTimeout [resumeAfter]
+ */
+public class JaCoCoShardRunner {
+	static final String INITIALIZERS_SESSION = "<clinit>";
+
+	public static void main(String[] args) throws Exception {
+		String binJavaDir = args[0];
+		String binTestDir = args[1];
+		String dependences = args[2];
+		List<String> testClassNames = FileUtils.readLines(new File(args[3]), "UTF-8");
+		List<String> javaClassNames = FileUtils.readLines(new File(args[4]), "UTF-8");
+		File execFile = new File(args[5]);
+		long testTimeout = Long.parseLong(args[6]);
+		String resumeAfter = args.length > 7 ? args[7] : null;
+
+		// tests may print anything, keep stdout for the results
+		PrintStream out = System.out;
+		System.setOut(System.err);
+
+		List<URL> urls = new ArrayList<URL>();
+		urls.add(new File(binJavaDir).toURI().toURL());
+		urls.add(new File(binTestDir).toURI().toURL());
+		for (String dependence : dependences.split(File.pathSeparator)) {
+			if (!dependence.trim().isEmpty())
+				urls.add(new File(dependence.trim()).toURI().toURL());
+		}
+
+		LoggerRuntime runtime = new LoggerRuntime();
+		RuntimeData data = new RuntimeData();
+		runtime.startup(data);
+
+		SpectrumFaultLocalizer.InstrumentingClassLoader loader = new SpectrumFaultLocalizer.InstrumentingClassLoader(
+				urls.toArray(new URL[urls.size()]), binJavaDir, new Instrumenter(runtime));
+
+		OutputStream execOut = new BufferedOutputStream(new FileOutputStream(execFile));
+		final ExecutionDataWriter writer = new ExecutionDataWriter(execOut);
+		IExecutionDataVisitor executedClasses = new IExecutionDataVisitor() {
+			@Override
+			public void visitClassExecution(ExecutionData classData) {
+				if (classData.hasHits())
+					writer.visitClassExecution(classData);
+			}
+		};
+
+		SpectrumFaultLocalizer.initializeClasses(javaClassNames, loader);
+		data.setSessionId(INITIALIZERS_SESSION);
+		data.collect(executedClasses, writer, false);
+
+		shard: for (String testClassName : testClassNames) {
+			testClassName = testClassName.trim();
+			if (testClassName.isEmpty())
+				continue;
+
+			Class<?> testClass;
+			try {
+				testClass = SafeClassLoader.loadClass(testClassName, loader);
+			} catch (Throwable t) {
+				System.err.println("Test class cannot be loaded: " + testClassName);
+				continue;
+			}
+			if (Modifier.isAbstract(testClass.getModifiers()))
+				continue;
+
+			List<Description> tests = new ArrayList<Description>();
+			try {
+				collectTests(Request.aClass(testClass).getRunner().getDescription(), tests);
+			} catch (Throwable t) {
+				System.err.println("Tests cannot be listed: " + testClassName);
+				continue;
+			}
+
+			for (Description test : tests) {
+				String testName = testClassName + "#" + test.getMethodName();
+				if (resumeAfter != null) {
+					if (testName.equals(resumeAfter))
+						resumeAfter = null;
+					continue;
+				}
+
+				data.reset();
+				final boolean passed[] = { false };
+				Thread thread = startTest(testClass, test.getMethodName(), loader, passed);
+				thread.join(testTimeout);
+				boolean timedOut = thread.isAlive();
+
+				// written before the next reset, the probes are not copied
+				data.setSessionId(testName);
+				data.collect(executedClasses, writer, false);
+				if (timedOut) {
+					out.println("TestResult: TIMEOUT " + testName);
+					break shard;
+				}
+				out.println("TestResult: " + (passed[0] ? "PASS" : "FAIL") + " " + testName);
+			}
+		}
+
+		execOut.close();
+		runtime.shutdown();
+		out.flush();
+
+		// tests may leave non-daemon threads behind
+		System.exit(0);
+	}
+
+	static Thread startTest(final Class<?> testClass, final String methodName, ClassLoader loader,
+			final boolean passed[]) {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				Result result = new JUnitCore().run(Request.method(testClass, methodName));
+				passed[0] = result.wasSuccessful();
+			}
+		};
+		thread.setContextClassLoader(loader);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	static void collectTests(Description description, List<Description> tests) {
+		if (description.isTest()) {
+			if (description.getMethodName() != null)
+				tests.add(description);
+		} else {
+			for (Description child : description.getChildren())
+				collectTests(child, tests);
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+import org.jacoco.core.instr.Instrumenter;
+import org.jacoco.core.runtime.IRuntime;
+import org.jacoco.core.runtime.LoggerRuntime;
+import org.jacoco.core.runtime.RuntimeData;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import us.msu.cse.repair.core.parser.LCNode;
+import us.msu.cse.repair.core.util.SafeClassLoader;
+
+/**
+ * Fault localizer that runs the test classes once, in process, with the
+ * classes of binJavaDir instrumented by JaCoCo. A RunListener resets the
+ * execution data when a test starts and collects it when the test finishes,
+ * so every test gets its exact row in a SpectrumMatrix. The suspiciousness
+ * is computed from the matrix with any SuspiciousnessFormula, Ochiai by
+ * default.
+ *
+ * The classes are initialized before the first test, and the lines their
+ * static initializers cover are added to the row of every test that
+ * executes the class, as in TestFilter, not only to the first test that
+ * loads it.
+ *
+ * As with InternalTestExecutor, the tests share the JVM of the repair
+ * process, so a test suite that does not terminate or calls System.exit
+ * cannot be localized this way.
+ */
+public class SpectrumFaultLocalizer implements IFaultLocalizer {
+	Set<String> positiveTestMethods;
+	Set<String> negativeTestMethods;
+
+	SpectrumMatrix spectrum;
+
+	public SpectrumFaultLocalizer(Set<String> binJavaClasses, Set<String> binExecuteTestClasses, String binJavaDir,
+			String binTestDir, Set<String> dependences) throws IOException {
+		positiveTestMethods = new HashSet<String>();
+		negativeTestMethods = new HashSet<String>();
+		spectrum = new SpectrumMatrix();
+
+		List<String> classpath = new ArrayList<String>();
+		classpath.add(binJavaDir);
+		classpath.add(binTestDir);
+		if (dependences != null)
+			classpath.addAll(dependences);
+		URL[] urls = new URL[classpath.size()];
+		for (int i = 0; i < classpath.size(); i++)
+			urls[i] = new File(classpath.get(i)).toURI().toURL();
+
+		IRuntime runtime = new LoggerRuntime();
+		RuntimeData data = new RuntimeData();
+		try {
+			runtime.startup(data);
+		} catch (Exception e) {
+			throw new IOException("JaCoCo runtime could not be started", e);
+		}
+
+		InstrumentingClassLoader loader = new InstrumentingClassLoader(urls, binJavaDir, new Instrumenter(runtime));
+		try {
+			List<Class<?>> testClasses = new ArrayList<Class<?>>();
+			for (String testClassName : binExecuteTestClasses) {
+				try {
+					Class<?> testClass = SafeClassLoader.loadClass(testClassName, loader);
+					if (!Modifier.isAbstract(testClass.getModifiers()))
+						testClasses.add(testClass);
+				} catch (Throwable t) {
+					System.err.println("Test class cannot be loaded: " + testClassName);
+				}
+			}
+
+			initializeClasses(binJavaClasses, loader);
+			SpectrumListener listener = new SpectrumListener(data, loader);
+			listener.collectInitializerLines();
+
+			System.out.println("Running " + testClasses.size() + " test classes once with coverage...");
+			JUnitCore junit = new JUnitCore();
+			junit.addListener(listener);
+			junit.run(testClasses.toArray(new Class<?>[testClasses.size()]));
+		} finally {
+			runtime.shutdown();
+			loader.close();
+		}
+
+		System.out.println("Passed tests: " + positiveTestMethods.size());
+		System.out.println("Failed tests: " + negativeTestMethods.size());
+		System.out.println("Executed lines: " + spectrum.getLineCount());
+	}
+
+	/**
+	 * Initializes the classes in name order. A class whose initializer fails
+	 * here is initialized by the first test that uses it.
+	 */
+	static void initializeClasses(Collection<String> classNames, ClassLoader loader) {
+		for (String className : new TreeSet<String>(classNames)) {
+			try {
+				Class.forName(className, true, loader);
+			} catch (Throwable t) {
+				System.err.println("Class cannot be initialized before the tests: " + className);
+			}
+		}
+	}
+
+	@Override
+	public Map<LCNode, Double> searchSuspicious(double thr) {
+		return searchSuspicious(thr, SuspiciousnessFormula.OCHIAI);
+	}
+
+	@Override
+	public Map<LCNode, Double> searchSuspicious(double thr, SuspiciousnessFormula formula) {
+		return spectrum.getSuspiciousLines(formula, thr);
+	}
+
+	@Override
+	public SpectrumMatrix getSpectrum() {
+		return spectrum;
+	}
+
+	@Override
+	public Set<String> getPositiveTests() {
+		return this.positiveTestMethods;
+	}
+
+	@Override
+	public Set<String> getNegativeTests() {
+		return this.negativeTestMethods;
+	}
+
+	/**
+	 * Records the covered lines of every test as it finishes.
+	 */
+	class SpectrumListener extends RunListener {
+		final RuntimeData data;
+		final InstrumentingClassLoader loader;
+
+		// class name -> probes -> covered lines, tests often hit a class the same way
+		final Map<String, Map<BitSet, int[]>> analyzedProbes = new HashMap<String, Map<BitSet, int[]>>();
+
+		// class name -> lines covered by its static initializer
+		final Map<String, int[]> initializerLines = new HashMap<String, int[]>();
+
+		boolean failed;
+
+		SpectrumListener(RuntimeData data, InstrumentingClassLoader loader) {
+			this.data = data;
+			this.loader = loader;
+		}
+
+		/**
+		 * Keeps the lines covered by the classes initialized so far, before
+		 * the first test resets the execution data.
+		 */
+		void collectInitializerLines() throws IOException {
+			ExecutionDataStore executionData = new ExecutionDataStore();
+			data.collect(executionData, new SessionInfoStore(), false);
+			for (ExecutionData classData : executionData.getContents()) {
+				if (classData.hasHits()) {
+					String className = classData.getName().replace('/', '.');
+					initializerLines.put(className, getCoveredLines(className, classData));
+				}
+			}
+		}
+
+		@Override
+		public void testStarted(Description description) {
+			data.reset();
+			failed = false;
+		}
+
+		@Override
+		public void testFailure(Failure failure) {
+			if (failure.getDescription().getMethodName() != null)
+				failed = true;
+			else
+				System.err.println("Test class failed: " + failure.getDescription().getClassName());
+		}
+
+		@Override
+		public void testFinished(Description description) throws Exception {
+			String test = description.getClassName() + "#" + description.getMethodName();
+			if (failed)
+				negativeTestMethods.add(test);
+			else
+				positiveTestMethods.add(test);
+
+			ExecutionDataStore executionData = new ExecutionDataStore();
+			data.collect(executionData, new SessionInfoStore(), false);
+			BitSet row = new BitSet();
+			for (ExecutionData classData : executionData.getContents()) {
+				if (!classData.hasHits())
+					continue;
+				String className = classData.getName().replace('/', '.');
+				for (int lineNumber : getCoveredLines(className, classData))
+					row.set(spectrum.getLineId(new LCNode(className, lineNumber)));
+
+				int[] lines = initializerLines.get(className);
+				if (lines != null) {
+					for (int lineNumber : lines)
+						row.set(spectrum.getLineId(new LCNode(className, lineNumber)));
+				}
+			}
+			spectrum.addTest(test, failed, row);
+		}
+
+		int[] getCoveredLines(String className, ExecutionData classData) throws IOException {
+			boolean probes[] = classData.getProbes();
+			BitSet key = new BitSet(probes.length);
+			for (int i = 0; i < probes.length; i++) {
+				if (probes[i])
+					key.set(i);
+			}
+
+			Map<BitSet, int[]> analyzed = analyzedProbes.get(className);
+			if (analyzed == null) {
+				analyzed = new HashMap<BitSet, int[]>();
+				analyzedProbes.put(className, analyzed);
+			}
+			int[] lines = analyzed.get(key);
+			if (lines != null)
+				return lines;
+
+			byte[] bytes = loader.getOriginalBytes(className);
+			if (bytes == null)
+				return new int[0];
+
+			// analyze against a copy, the runtime keeps writing to the probes of the next test
+			ExecutionDataStore store = new ExecutionDataStore();
+			store.put(new ExecutionData(classData.getId(), classData.getName(), probes.clone()));
+			CoverageBuilder coverageBuilder = new CoverageBuilder();
+			new Analyzer(store, coverageBuilder).analyzeClass(bytes, className);
+
+			List<Integer> covered = new ArrayList<Integer>();
+			for (IClassCoverage cc : coverageBuilder.getClasses()) {
+				for (int i = cc.getFirstLine(); i <= cc.getLastLine(); i++) {
+					int status = cc.getLine(i).getStatus();
+					if (status == ICounter.FULLY_COVERED || status == ICounter.PARTLY_COVERED)
+						covered.add(i);
+				}
+			}
+			lines = new int[covered.size()];
+			for (int i = 0; i < lines.length; i++)
+				lines[i] = covered.get(i);
+			analyzed.put(key, lines);
+			return lines;
+		}
+	}
+
+	/**
+	 * Defines the classes found in binJavaDir instrumented, everything else is
+	 * loaded as usual.
+	 */
+	static class InstrumentingClassLoader extends URLClassLoader {
+		final String binJavaDir;
+		final Instrumenter instrumenter;
+		final Map<String, byte[]> originalBytes = new HashMap<String, byte[]>();
+
+		InstrumentingClassLoader(URL[] urls, String binJavaDir, Instrumenter instrumenter) {
+			super(urls);
+			this.binJavaDir = binJavaDir;
+			this.instrumenter = instrumenter;
+		}
+
+		@Override
+		protected Class<?> findClass(final String qualifiedClassName) throws ClassNotFoundException {
+			File classFile = new File(binJavaDir, qualifiedClassName.replace('.', '/') + ".class");
+			if (!classFile.isFile())
+				return super.findClass(qualifiedClassName);
+
+			try {
+				byte[] bytes = FileUtils.readFileToByteArray(classFile);
+				byte[] instrumented = instrumenter.instrument(bytes, qualifiedClassName);
+				synchronized (originalBytes) {
+					originalBytes.put(qualifiedClassName, bytes);
+				}
+				return defineClass(qualifiedClassName, instrumented, 0, instrumented.length);
+			} catch (IOException e) {
+				throw new ClassNotFoundException(qualifiedClassName, e);
+			}
+		}
+
+		byte[] getOriginalBytes(String className) {
+			synchronized (originalBytes) {
+				return originalBytes.get(className);
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import us.msu.cse.repair.core.parser.LCNode;
+
+/**
+ * Test-by-line coverage matrix. Every line gets an id on first use and every
+ * test a row, the bitset of the ids of the lines it executes. The column
+ * cardinalities (ef and ep of every line) are kept up to date as rows are
+ * added, so scoring all the lines with a formula is a single pass over two
+ * int arrays, and different formulas can be compared without collecting the
+ * coverage again.
+ *
+ * Sources that only know aggregated counts for some tests can add them with
+ * addTests and addExecutions instead of rows.
+ */
+public class SpectrumMatrix {
+	private final List<LCNode> lines = new ArrayList<LCNode>();
+	private final Map<LCNode, Integer> lineIds = new HashMap<LCNode, Integer>();
+
+	private final List<String> tests = new ArrayList<String>();
+	private final Map<String, Integer> testRows = new HashMap<String, Integer>();
+	private final List<BitSet> rows = new ArrayList<BitSet>();
+	private final BitSet failedRows = new BitSet();
+
+	private int[] executedFailed = new int[64];
+	private int[] executedPassed = new int[64];
+
+	private int totalFailed;
+	private int totalPassed;
+
+	/**
+	 * The id of a line, assigned on first use.
+	 */
+	public int getLineId(LCNode line) {
+		Integer id = lineIds.get(line);
+		if (id == null) {
+			id = lines.size();
+			lineIds.put(line, id);
+			lines.add(line);
+			if (id == executedFailed.length) {
+				executedFailed = Arrays.copyOf(executedFailed, id * 2);
+				executedPassed = Arrays.copyOf(executedPassed, id * 2);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * The id of a line, or -1 if no test executes it.
+	 */
+	public int findLineId(LCNode line) {
+		Integer id = lineIds.get(line);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Adds the row of a test: the ids of the lines it executes.
+	 */
+	public void addTest(String test, boolean failed, BitSet executedLines) {
+		if (failed) {
+			failedRows.set(rows.size());
+			totalFailed++;
+		} else
+			totalPassed++;
+		testRows.put(test, rows.size());
+		tests.add(test);
+		rows.add(executedLines);
+
+		int[] executed = failed ? executedFailed : executedPassed;
+		for (int id = executedLines.nextSetBit(0); id >= 0; id = executedLines.nextSetBit(id + 1))
+			executed[id]++;
+	}
+
+	/**
+	 * Counts tests whose rows are not known.
+	 */
+	public void addTests(boolean failed, int count) {
+		if (failed)
+			totalFailed += count;
+		else
+			totalPassed += count;
+	}
+
+	/**
+	 * Counts executions of a line by tests added with addTests.
+	 */
+	public void addExecutions(int lineId, boolean failed, int count) {
+		if (failed)
+			executedFailed[lineId] += count;
+		else
+			executedPassed[lineId] += count;
+	}
+
+	/**
+	 * Scores every line with the formula and keeps those whose
+	 * suspiciousness is positive and at least thr. The scores of an unbounded
+	 * formula are divided by the maximum finite score, and infinite ones
+	 * (Double.MAX_VALUE) become 1, so every suspiciousness is within [0, 1].
+	 */
+	public Map<LCNode, Double> getSuspiciousLines(SuspiciousnessFormula formula, double thr) {
+		double[] suspValues = new double[lines.size()];
+		double maxFinite = 0;
+		for (int id = 0; id < lines.size(); id++) {
+			int ef = executedFailed[id];
+			int ep = executedPassed[id];
+			suspValues[id] = formula.getSuspiciousness(ef, ep, totalFailed - ef, totalPassed - ep);
+			if (suspValues[id] < Double.MAX_VALUE)
+				maxFinite = Math.max(maxFinite, suspValues[id]);
+		}
+
+		Map<LCNode, Double> suspiciousLines = new HashMap<LCNode, Double>();
+		for (int id = 0; id < lines.size(); id++) {
+			double suspValue = suspValues[id];
+			if (!formula.isBounded())
+				suspValue = (suspValue >= Double.MAX_VALUE) ? 1 : suspValue / maxFinite;
+			if (suspValue > 0 && suspValue >= thr)
+				suspiciousLines.put(lines.get(id), suspValue);
+		}
+		return suspiciousLines;
+	}
+
+	/**
+	 * Whether every test has a row, i.e. no test was added with addTests. Only
+	 * then does the matrix tell exactly which tests execute a line.
+	 */
+	public boolean hasAllRows() {
+		return rows.size() == totalFailed + totalPassed;
+	}
+
+	/**
+	 * The lines executed by at least one test.
+	 */
+	public Set<LCNode> getExecutedLines() {
+		Set<LCNode> executedLines = new LinkedHashSet<LCNode>();
+		for (int id = 0; id < lines.size(); id++) {
+			if (executedFailed[id] + executedPassed[id] > 0)
+				executedLines.add(lines.get(id));
+		}
+		return executedLines;
+	}
+
+	/**
+	 * The tests, in the order given, that execute at least one of the lines.
+	 * Tests without a row are kept, since nothing is known about them.
+	 */
+	public Set<String> getExecutingTests(Collection<LCNode> executedLines, Collection<String> candidates) {
+		BitSet ids = new BitSet(lines.size());
+		for (LCNode line : executedLines) {
+			int id = findLineId(line);
+			if (id >= 0)
+				ids.set(id);
+		}
+
+		Set<String> executingTests = new LinkedHashSet<String>();
+		for (String test : candidates) {
+			Integer row = testRows.get(test);
+			if (row == null || rows.get(row).intersects(ids))
+				executingTests.add(test);
+		}
+		return executingTests;
+	}
+
+	/**
+	 * The row of a test, or null if it has none.
+	 */
+	public BitSet getRow(String test) {
+		Integer row = testRows.get(test);
+		return row == null ? null : rows.get(row);
+	}
+
+	public int getLineCount() {
+		return lines.size();
+	}
+
+	public LCNode getLine(int lineId) {
+		return lines.get(lineId);
+	}
+
+	public int getTestCount() {
+		return tests.size();
+	}
+
+	public String getTest(int row) {
+		return tests.get(row);
+	}
+
+	public boolean isFailed(int row) {
+		return failedRows.get(row);
+	}
+
+	public BitSet getRow(int row) {
+		return rows.get(row);
+	}
+
+	public int getExecutedFailed(int lineId) {
+		return executedFailed[lineId];
+	}
+
+	public int getExecutedPassed(int lineId) {
+		return executedPassed[lineId];
+	}
+
+	public int getTotalFailed() {
+		return totalFailed;
+	}
+
+	public int getTotalPassed() {
+		return totalPassed;
+	}
+}
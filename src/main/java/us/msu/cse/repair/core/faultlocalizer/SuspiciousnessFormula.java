@@ -0,0 +1,78 @@
+package us.msu.cse.repair.core.faultlocalizer;
+
+/**
+ * Spectrum-based suspiciousness formulas. ef and ep are the numbers of
+ * failing and passing tests that execute a line, nf and np those that do
+ * not. A line no failing test executes is never suspicious.
+ *
+ * Only D* is unbounded; its scores are normalized by SpectrumMatrix, since
+ * the suspiciousness of a line is also used as a probability.
+ */
+public enum SuspiciousnessFormula {
+	OCHIAI {
+		@Override
+		double compute(int ef, int ep, int nf, int np) {
+			return ef / Math.sqrt((double) (ef + nf) * (ef + ep));
+		}
+	},
+	TARANTULA {
+		@Override
+		double compute(int ef, int ep, int nf, int np) {
+			double failed = (double) ef / (ef + nf);
+			double passed = (ep + np == 0) ? 0 : (double) ep / (ep + np);
+			return failed / (failed + passed);
+		}
+	},
+	// D* with * = 2
+	DSTAR {
+		@Override
+		double compute(int ef, int ep, int nf, int np) {
+			if (ep + nf == 0)
+				return Double.MAX_VALUE;
+			return (double) ef * ef / (ep + nf);
+		}
+
+		@Override
+		public boolean isBounded() {
+			return false;
+		}
+	},
+	JACCARD {
+		@Override
+		double compute(int ef, int ep, int nf, int np) {
+			return (double) ef / (ef + nf + ep);
+		}
+	},
+	BARINEL {
+		@Override
+		double compute(int ef, int ep, int nf, int np) {
+			return 1 - (double) ep / (ep + ef);
+		}
+	};
+
+	abstract double compute(int ef, int ep, int nf, int np);
+
+	/**
+	 * Whether every score is within [0, 1].
+	 */
+	public boolean isBounded() {
+		return true;
+	}
+
+	public double getSuspiciousness(int ef, int ep, int nf, int np) {
+		if (ef == 0)
+			return 0;
+		return compute(ef, ep, nf, np);
+	}
+
+	/**
+	 * The formula of the given name, ignoring case.
+	 */
+	public static SuspiciousnessFormula fromName(String name) {
+		for (SuspiciousnessFormula formula : values()) {
+			if (formula.name().equalsIgnoreCase(name))
+				return formula;
+		}
+		return null;
+	}
+}
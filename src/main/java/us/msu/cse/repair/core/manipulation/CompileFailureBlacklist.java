@@ -0,0 +1,97 @@
+package us.msu.cse.repair.core.manipulation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jmetal.util.JMException;
+
+/**
+ * Edits known to make their file uncompilable. After a failed compilation,
+ * every javac error is mapped back to the edit whose spliced fragment
+ * contains it. An edit is blacklisted at once if it was the only change in
+ * its file, since nothing else can be blamed there; otherwise it is
+ * blacklisted once it has been blamed in MIN_BLAMES failed compilations; an
+ * edit is blamed at most once per compilation, however many errors it holds.
+ * Errors outside every fragment (e.g., a use of a variable whose declaration
+ * was deleted) and files rewritten because of overlapping edits are not
+ * attributed.
+ *
+ * With parallel evaluation, the edits of a whole batch are selected (and
+ * repaired against the blacklist) before any of them is compiled, and blame
+ * counts do not depend on the order compilations finish, so the blacklist a
+ * batch sees does not vary between runs.
+ */
+public class CompileFailureBlacklist {
+	static final int MIN_BLAMES = 3;
+
+	private final EditFragmentCache fragmentCache;
+
+	private final Set<SourceEdit> blacklist = ConcurrentHashMap.newKeySet();
+	private final Map<SourceEdit, AtomicInteger> blames = new ConcurrentHashMap<SourceEdit, AtomicInteger>();
+
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong attributedFailures = new AtomicLong();
+	private final AtomicLong repairedVariants = new AtomicLong();
+	private final AtomicLong skippedCompilations = new AtomicLong();
+
+	public CompileFailureBlacklist(EditFragmentCache fragmentCache) {
+		this.fragmentCache = fragmentCache;
+	}
+
+	public boolean contains(SourceEdit edit) {
+		return blacklist.contains(edit);
+	}
+
+	/**
+	 * Learns from a failed compilation of a variant. editsPerFile holds the
+	 * edits of each modified file, errorPositions the character offsets of
+	 * the errors javac reported in each file.
+	 */
+	public void learn(Map<String, List<SourceEdit>> editsPerFile, Map<String, List<Long>> errorPositions)
+			throws JMException {
+		failures.incrementAndGet();
+		// each blamed edit, and whether it was the only change in its file
+		Map<SourceEdit, Boolean> blamed = new HashMap<SourceEdit, Boolean>();
+		for (Map.Entry<String, List<Long>> entry : errorPositions.entrySet()) {
+			List<SourceEdit> edits = editsPerFile.get(entry.getKey());
+			if (edits == null)
+				continue;
+
+			boolean onlyChange = fragmentCache.countChanges(edits) == 1;
+			for (long position : entry.getValue()) {
+				SourceEdit edit = fragmentCache.locate(edits, position);
+				if (edit != null)
+					blamed.put(edit, onlyChange);
+			}
+		}
+
+		for (Map.Entry<SourceEdit, Boolean> entry : blamed.entrySet()) {
+			SourceEdit edit = entry.getKey();
+			int count = blames.computeIfAbsent(edit, k -> new AtomicInteger()).incrementAndGet();
+			if (entry.getValue() || count >= MIN_BLAMES)
+				blacklist.add(edit);
+		}
+		if (!blamed.isEmpty())
+			attributedFailures.incrementAndGet();
+	}
+
+	public void recordRepairedVariant() {
+		repairedVariants.incrementAndGet();
+	}
+
+	public void recordSkippedCompilation() {
+		skippedCompilations.incrementAndGet();
+	}
+
+	@Override
+	public String toString() {
+		return "Compile-failure blacklist: " + blacklist.size() + " edits, " + failures.get()
+				+ " failed compilations (" + attributedFailures.get() + " attributed), " + repairedVariants.get()
+				+ " variants repaired, " + skippedCompilations.get() + " compilations skipped";
+	}
+}
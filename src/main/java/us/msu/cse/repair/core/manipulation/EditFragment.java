@@ -0,0 +1,29 @@
+package us.msu.cse.repair.core.manipulation;
+
+/**
+ * The text produced by a single edit: the range [start, end) of the original
+ * source is replaced by text.
+ */
+public class EditFragment {
+	private final int start;
+	private final int end;
+	private final String text;
+
+	public EditFragment(int start, int end, String text) {
+		this.start = start;
+		this.end = end;
+		this.text = text;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public String getText() {
+		return text;
+	}
+}
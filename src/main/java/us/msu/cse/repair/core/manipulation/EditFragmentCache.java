@@ -0,0 +1,193 @@
+package us.msu.cse.repair.core.manipulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.TextEdit;
+
+import jmetal.util.JMException;
+
+/**
+ * Renders every edit to an EditFragment once, by running its manipulation
+ * through an ASTRewrite of its own against the original file. A variant is
+ * then built by splicing the fragments of its edits into the original source,
+ * without any AST work.
+ *
+ * Fragments of one file can only be spliced if their ranges are disjoint and
+ * do not touch (two insertions at the same offset have no defined order);
+ * otherwise splice returns null and the caller rewrites that file with all
+ * of its edits at once.
+ */
+public class EditFragmentCache {
+	private static final EditFragment NO_CHANGE = new EditFragment(0, 0, "");
+
+	private final Map<String, CompilationUnit> sourceASTs;
+	private final Map<String, String> sourceContents;
+	private final Object astLock;
+
+	private final Map<SourceEdit, EditFragment> fragments = new ConcurrentHashMap<SourceEdit, EditFragment>();
+
+	private final AtomicLong renders = new AtomicLong();
+	private final AtomicLong splices = new AtomicLong();
+	private final AtomicLong fallbacks = new AtomicLong();
+
+	public EditFragmentCache(Map<String, CompilationUnit> sourceASTs, Map<String, String> sourceContents,
+			Object astLock) {
+		this.sourceASTs = sourceASTs;
+		this.sourceContents = sourceContents;
+		this.astLock = astLock;
+	}
+
+	/**
+	 * Returns the fragment of the edit, or null if the manipulation does not
+	 * change the file (e.g., RedirectBranch on a statement that is not an if).
+	 */
+	public EditFragment getFragment(SourceEdit edit) throws JMException {
+		EditFragment fragment = fragments.get(edit);
+		if (fragment == null) {
+			fragment = render(edit);
+			fragments.put(edit, fragment);
+		}
+		return fragment == NO_CHANGE ? null : fragment;
+	}
+
+	private EditFragment render(SourceEdit edit) throws JMException {
+		String sourceFilePath = edit.getModificationPoint().getSourceFilePath();
+		String content = sourceContents.get(sourceFilePath);
+		Document doc = new Document(content);
+
+		TextEdit edits;
+		synchronized (astLock) {
+			CompilationUnit unit = sourceASTs.get(sourceFilePath);
+			ASTRewrite rewriter = ASTRewrite.create(unit.getAST());
+			AbstractManipulation manipulation = ManipulationFactory.getManipulation(edit.getManipName(),
+					edit.getModificationPoint(), edit.getIngredStatement(), rewriter);
+			if (!manipulation.manipulate())
+				return NO_CHANGE;
+			edits = rewriter.rewriteAST(doc, null);
+		}
+
+		// the region of the text edit, not a textual diff: with repeated text
+		// a diff could slide into a range that another edit changes. Taken
+		// before apply, which moves the region into the modified text
+		if (edits.getLength() == 0 && !edits.hasChildren())
+			return NO_CHANGE;
+		int start = edits.getOffset();
+		int end = edits.getExclusiveEnd();
+
+		try {
+			edits.apply(doc);
+		} catch (BadLocationException e) {
+			throw new JMException("EditFragmentCache.render: " + e.getMessage());
+		}
+		renders.incrementAndGet();
+
+		String modified = doc.get();
+		return new EditFragment(start, end, modified.substring(start, modified.length() - (content.length() - end)));
+	}
+
+	/**
+	 * Builds the source of one file from the edits on it, or returns null if
+	 * their fragments overlap.
+	 */
+	public String splice(String sourceFilePath, List<SourceEdit> edits) throws JMException {
+		List<EditFragment> list = new ArrayList<EditFragment>();
+		for (SourceEdit edit : edits) {
+			EditFragment fragment = getFragment(edit);
+			if (fragment != null)
+				list.add(fragment);
+		}
+
+		Collections.sort(list, new Comparator<EditFragment>() {
+			@Override
+			public int compare(EditFragment f1, EditFragment f2) {
+				return Integer.compare(f1.getStart(), f2.getStart());
+			}
+		});
+
+		for (int i = 1; i < list.size(); i++) {
+			if (list.get(i - 1).getEnd() >= list.get(i).getStart()) {
+				fallbacks.incrementAndGet();
+				return null;
+			}
+		}
+
+		String content = sourceContents.get(sourceFilePath);
+		StringBuilder builder = new StringBuilder(content.length() + 256);
+		int offset = 0;
+		for (EditFragment fragment : list) {
+			builder.append(content, offset, fragment.getStart());
+			builder.append(fragment.getText());
+			offset = fragment.getEnd();
+		}
+		builder.append(content, offset, content.length());
+		splices.incrementAndGet();
+		return builder.toString();
+	}
+
+	/**
+	 * Number of edits in the list that change the file.
+	 */
+	public int countChanges(List<SourceEdit> edits) throws JMException {
+		int count = 0;
+		for (SourceEdit edit : edits) {
+			if (getFragment(edit) != null)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * The edit whose text contains the given offset of the file spliced from
+	 * the edits, or null if the offset lies outside every fragment or the
+	 * file could not be spliced.
+	 */
+	public SourceEdit locate(List<SourceEdit> edits, long position) throws JMException {
+		final Map<SourceEdit, EditFragment> changes = new LinkedHashMap<SourceEdit, EditFragment>();
+		for (SourceEdit edit : edits) {
+			EditFragment fragment = getFragment(edit);
+			if (fragment != null)
+				changes.put(edit, fragment);
+		}
+
+		List<SourceEdit> sorted = new ArrayList<SourceEdit>(changes.keySet());
+		Collections.sort(sorted, new Comparator<SourceEdit>() {
+			@Override
+			public int compare(SourceEdit e1, SourceEdit e2) {
+				return Integer.compare(changes.get(e1).getStart(), changes.get(e2).getStart());
+			}
+		});
+
+		long delta = 0;
+		int previousEnd = -1;
+		for (SourceEdit edit : sorted) {
+			EditFragment fragment = changes.get(edit);
+			if (previousEnd >= fragment.getStart())
+				return null;
+			previousEnd = fragment.getEnd();
+
+			long start = fragment.getStart() + delta;
+			long end = start + fragment.getText().length();
+			if (position >= start && position < end)
+				return edit;
+			delta += fragment.getText().length() - (fragment.getEnd() - fragment.getStart());
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "Edit fragments: " + fragments.size() + " cached, " + renders.get() + " rendered, " + splices.get()
+				+ " files spliced, " + fallbacks.get() + " files rewritten because of overlapping edits";
+	}
+}
@@ -0,0 +1,50 @@
+package us.msu.cse.repair.core.manipulation;
+
+import org.eclipse.jdt.core.dom.Statement;
+
+import us.msu.cse.repair.core.parser.ModificationPoint;
+
+/**
+ * One edit of a program variant: a manipulation applied to a modification
+ * point, with an ingredient if the manipulation uses one. Two edits are equal
+ * if they use the same modification point and ingredient objects and the
+ * same manipulation.
+ */
+public class SourceEdit {
+	private final ModificationPoint mp;
+	private final String manipName;
+	private final Statement ingredStatement;
+
+	public SourceEdit(ModificationPoint mp, String manipName, Statement ingredStatement) {
+		this.mp = mp;
+		this.manipName = manipName;
+		this.ingredStatement = ingredStatement;
+	}
+
+	public ModificationPoint getModificationPoint() {
+		return mp;
+	}
+
+	public String getManipName() {
+		return manipName;
+	}
+
+	public Statement getIngredStatement() {
+		return ingredStatement;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SourceEdit))
+			return false;
+		SourceEdit other = (SourceEdit) obj;
+		return mp == other.mp && ingredStatement == other.ingredStatement
+				&& manipName.equalsIgnoreCase(other.manipName);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * System.identityHashCode(mp) + System.identityHashCode(ingredStatement))
+				+ manipName.toLowerCase().hashCode();
+	}
+}
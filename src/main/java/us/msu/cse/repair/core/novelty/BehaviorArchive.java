@@ -25,7 +25,7 @@ public class BehaviorArchive {
 	 * 添加行为描述符到档案
 	 * @param descriptor 行为描述符
 	 */
-	public void add(BehaviorDescriptor descriptor) {
+	public synchronized void add(BehaviorDescriptor descriptor) {
 		// 如果档案未满，直接添加
 		if (archive.size() < maxSize) {
 			archive.add(descriptor);
@@ -42,7 +42,7 @@ public class BehaviorArchive {
 	 * @param k k-近邻的 k 值
 	 * @return Novelty Score（平均距离）
 	 */
-	public double computeNoveltyScore(BehaviorDescriptor descriptor, int k) {
+	public synchronized double computeNoveltyScore(BehaviorDescriptor descriptor, int k) {
 		if (archive.isEmpty()) {
 			// 档案为空，返回一个较大的默认值
 			return 1.0;
@@ -75,7 +75,7 @@ public class BehaviorArchive {
 	 * @param k k-近邻的 k 值
 	 * @return 平均距离
 	 */
-	public double computePopulationNovelty(BehaviorDescriptor descriptor, 
+	public synchronized double computePopulationNovelty(BehaviorDescriptor descriptor, 
 			List<BehaviorDescriptor> populationDescriptors, int k) {
 		if (populationDescriptors.isEmpty()) {
 			return 1.0;
@@ -108,14 +108,14 @@ public class BehaviorArchive {
 	 * 获取档案大小
 	 * @return 档案大小
 	 */
-	public int size() {
+	public synchronized int size() {
 		return archive.size();
 	}
 	
 	/**
 	 * 清空档案
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		archive.clear();
 	}
 }
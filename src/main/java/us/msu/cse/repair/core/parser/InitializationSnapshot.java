@@ -0,0 +1,354 @@
+package us.msu.cse.repair.core.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.jdt.core.dom.NodeFinder;
+import org.eclipse.jdt.core.dom.Statement;
+
+/**
+ * On-disk snapshot of what the initialization modules produce: the
+ * modification points, their ingredients and available manipulations, the
+ * faulty lines, the positive tests before filtering and the tests left after
+ * it, and the number of random draws the modules made, which a restoring run
+ * replays. The caller keys it by the sources, the binaries and the settings,
+ * like the fault localization cache.
+ *
+ * A statement is stored as the range of its node in its source file. An
+ * ingredient that is not part of a file (a seed whose variables the screener
+ * renamed in a copy) is stored as its source text. Loading parses only the
+ * files of the ranges, without bindings, since the search only matches and
+ * rewrites the statements; a range that no longer finds its statement makes
+ * the snapshot unusable.
+ */
+public class InitializationSnapshot {
+	private static final String FORMAT = "arja-init-2";
+
+	private final File snapshotDir;
+
+	String[] classpathEntries;
+	String[] sourcepathEntries;
+	Map<String, String> compilerOptions;
+
+	List<ModificationPoint> modificationPoints;
+	List<List<String>> availableManipulations;
+	Map<LCNode, Double> faultyLines;
+	Set<String> originalPositiveTests;
+	Set<String> positiveTests;
+	Set<String> negativeTests;
+	Map<String, CompilationUnit> sourceASTs;
+	Map<String, String> sourceContents;
+	int randomDraws;
+
+	public InitializationSnapshot(String snapshotDir, String[] classpathEntries, String[] sourcepathEntries,
+			Map<String, String> compilerOptions) {
+		this.snapshotDir = new File(snapshotDir);
+		this.classpathEntries = classpathEntries;
+		this.sourcepathEntries = sourcepathEntries;
+		this.compilerOptions = compilerOptions;
+	}
+
+	/**
+	 * Reads the snapshot of the key and rebuilds its statements. Returns
+	 * false if there is none or it cannot be used.
+	 */
+	public boolean load(String key) {
+		File file = getFile(key);
+		if (!file.isFile())
+			return false;
+
+		try {
+			List<String> lines = FileUtils.readLines(file, "UTF-8");
+			if (lines.isEmpty() || !lines.get(0).equals(FORMAT))
+				return false;
+
+			int index = 1;
+			randomDraws = Integer.parseInt(lines.get(index++));
+
+			originalPositiveTests = new HashSet<String>();
+			int count = Integer.parseInt(lines.get(index++));
+			for (int i = 0; i < count; i++)
+				originalPositiveTests.add(lines.get(index++));
+
+			positiveTests = new HashSet<String>();
+			count = Integer.parseInt(lines.get(index++));
+			for (int i = 0; i < count; i++)
+				positiveTests.add(lines.get(index++));
+
+			negativeTests = new HashSet<String>();
+			count = Integer.parseInt(lines.get(index++));
+			for (int i = 0; i < count; i++)
+				negativeTests.add(lines.get(index++));
+
+			faultyLines = new HashMap<LCNode, Double>();
+			count = Integer.parseInt(lines.get(index++));
+			for (int i = 0; i < count; i++) {
+				String[] info = lines.get(index++).split(" ");
+				faultyLines.put(toLCNode(info[0]), Double.parseDouble(info[1]));
+			}
+
+			String[] paths = new String[Integer.parseInt(lines.get(index++))];
+			for (int i = 0; i < paths.length; i++)
+				paths[i] = lines.get(index++);
+			if (!parse(paths))
+				return false;
+
+			modificationPoints = new ArrayList<ModificationPoint>();
+			availableManipulations = new ArrayList<List<String>>();
+			count = Integer.parseInt(lines.get(index++));
+			for (int i = 0; i < count; i++) {
+				// path range type susp static lcnode
+				String[] info = lines.get(index++).split(" ");
+				String path = paths[Integer.parseInt(info[0])];
+				Statement statement = findStatement(path, info, 1);
+				if (statement == null)
+					return false;
+
+				ModificationPoint mp = new ModificationPoint();
+				mp.setSourceFilePath(path);
+				mp.setStatement(statement);
+				mp.setSuspValue(Double.parseDouble(info[4]));
+				mp.setInStaticMethod(info[5].equals("1"));
+				mp.setLCNode(toLCNode(info[6]));
+
+				String manipulations = lines.get(index++);
+				availableManipulations.add(manipulations.isEmpty() ? new ArrayList<String>()
+						: new ArrayList<String>(Arrays.asList(manipulations.split(" "))));
+
+				List<Statement> ingredients = new ArrayList<Statement>();
+				int ingredientCount = Integer.parseInt(lines.get(index++));
+				for (int j = 0; j < ingredientCount; j++) {
+					String line = lines.get(index++);
+					Statement ingredient;
+					if (line.startsWith("t "))
+						ingredient = parseStatement(unescape(line.substring(2)));
+					else {
+						String[] range = line.substring(2).split(" ");
+						ingredient = findStatement(paths[Integer.parseInt(range[0])], range, 1);
+					}
+					if (ingredient == null)
+						return false;
+					ingredients.add(ingredient);
+				}
+				mp.setIngredients(ingredients);
+				modificationPoints.add(mp);
+			}
+			return true;
+		} catch (RuntimeException | IOException e) {
+			System.err.println("Initialization snapshot cannot be read: " + file);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the snapshot under the key, through a temporary file that is
+	 * then moved, so concurrent runs never read a partial one.
+	 */
+	public void store(String key, List<ModificationPoint> modificationPoints,
+			List<List<String>> availableManipulations, Map<LCNode, Double> faultyLines,
+			Set<String> originalPositiveTests, Set<String> positiveTests, Set<String> negativeTests,
+			Map<String, CompilationUnit> sourceASTs, int randomDraws) throws IOException {
+		Map<CompilationUnit, String> astPaths = new IdentityHashMap<CompilationUnit, String>();
+		for (Map.Entry<String, CompilationUnit> entry : sourceASTs.entrySet())
+			astPaths.put(entry.getValue(), entry.getKey());
+
+		Map<String, Integer> pathIDs = new LinkedHashMap<String, Integer>();
+		List<String> mpLines = new ArrayList<String>();
+		for (int i = 0; i < modificationPoints.size(); i++) {
+			ModificationPoint mp = modificationPoints.get(i);
+			mpLines.add(getRange(mp.getSourceFilePath(), mp.getStatement(), pathIDs) + " " + mp.getSuspValue() + " "
+					+ (mp.isInStaticMethod() ? "1" : "0") + " " + mp.getLCNode());
+			mpLines.add(String.join(" ", availableManipulations.get(i)));
+
+			mpLines.add(String.valueOf(mp.getIngredients().size()));
+			for (Statement ingredient : mp.getIngredients()) {
+				String path = ingredient.getRoot() instanceof CompilationUnit ? astPaths.get(ingredient.getRoot())
+						: null;
+				if (path != null)
+					mpLines.add("r " + getRange(path, ingredient, pathIDs));
+				else
+					mpLines.add("t " + escape(ingredient.toString()));
+			}
+		}
+
+		List<String> lines = new ArrayList<String>();
+		lines.add(FORMAT);
+		lines.add(String.valueOf(randomDraws));
+		addAll(lines, originalPositiveTests);
+		addAll(lines, positiveTests);
+		addAll(lines, negativeTests);
+
+		Map<String, Double> sortedLines = new TreeMap<String, Double>();
+		for (Map.Entry<LCNode, Double> entry : faultyLines.entrySet())
+			sortedLines.put(entry.getKey().toString(), entry.getValue());
+		lines.add(String.valueOf(sortedLines.size()));
+		for (Map.Entry<String, Double> entry : sortedLines.entrySet())
+			lines.add(entry.getKey() + " " + entry.getValue());
+
+		lines.add(String.valueOf(pathIDs.size()));
+		lines.addAll(pathIDs.keySet());
+		lines.add(String.valueOf(modificationPoints.size()));
+		lines.addAll(mpLines);
+
+		FileUtils.forceMkdir(snapshotDir);
+		File tmp = File.createTempFile(key, ".tmp", snapshotDir);
+		try {
+			FileUtils.writeLines(tmp, "UTF-8", lines, "\n");
+			Files.move(tmp.toPath(), getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	public List<ModificationPoint> getModificationPoints() {
+		return modificationPoints;
+	}
+
+	public List<List<String>> getAvailableManipulations() {
+		return availableManipulations;
+	}
+
+	public Map<LCNode, Double> getFaultyLines() {
+		return faultyLines;
+	}
+
+	public Set<String> getOriginalPositiveTests() {
+		return originalPositiveTests;
+	}
+
+	public Set<String> getPositiveTests() {
+		return positiveTests;
+	}
+
+	public Set<String> getNegativeTests() {
+		return negativeTests;
+	}
+
+	public Map<String, CompilationUnit> getSourceASTs() {
+		return sourceASTs;
+	}
+
+	public Map<String, String> getSourceContents() {
+		return sourceContents;
+	}
+
+	public int getRandomDraws() {
+		return randomDraws;
+	}
+
+	boolean parse(String[] paths) {
+		sourceASTs = new HashMap<String, CompilationUnit>();
+		sourceContents = new HashMap<String, String>();
+
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setEnvironment(classpathEntries, sourcepathEntries, null, true);
+		parser.setCompilerOptions(compilerOptions);
+		parser.createASTs(paths, null, new String[] { "UTF-8" }, new FileASTRequestor() {
+			@Override
+			public void acceptAST(String sourceFilePath, CompilationUnit cu) {
+				try {
+					String content = new String(FileUtils.readFileToByteArray(new File(sourceFilePath)));
+					sourceContents.put(sourceFilePath, content);
+					sourceASTs.put(sourceFilePath, cu);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, null);
+		return sourceASTs.size() == paths.length;
+	}
+
+	/**
+	 * The statement of the file at the range info[from], info[from + 1] with
+	 * the node type info[from + 2], or null if there is none.
+	 */
+	Statement findStatement(String path, String[] info, int from) {
+		CompilationUnit cu = sourceASTs.get(path);
+		int start = Integer.parseInt(info[from]);
+		int length = Integer.parseInt(info[from + 1]);
+		int type = Integer.parseInt(info[from + 2]);
+
+		ASTNode node = new NodeFinder(cu, start, length).getCoveredNode();
+		while (node != null && node.getStartPosition() == start && node.getLength() == length) {
+			if (node.getNodeType() == type && node instanceof Statement)
+				return (Statement) node;
+			node = node.getParent();
+		}
+		System.out.println("No statement at " + start + "+" + length + " of " + path + ", the snapshot is stale");
+		return null;
+	}
+
+	Statement parseStatement(String source) {
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setKind(ASTParser.K_STATEMENTS);
+		parser.setCompilerOptions(compilerOptions);
+		parser.setSource(source.toCharArray());
+		Block block = (Block) parser.createAST(null);
+		if (block.statements().size() != 1)
+			return null;
+		Statement statement = (Statement) block.statements().get(0);
+		return (Statement) ASTNode.copySubtree(block.getAST(), statement);
+	}
+
+	String getRange(String path, Statement statement, Map<String, Integer> pathIDs) {
+		Integer id = pathIDs.get(path);
+		if (id == null) {
+			id = pathIDs.size();
+			pathIDs.put(path, id);
+		}
+		return id + " " + statement.getStartPosition() + " " + statement.getLength() + " "
+				+ statement.getNodeType();
+	}
+
+	File getFile(String key) {
+		return new File(snapshotDir, key + ".init");
+	}
+
+	void addAll(List<String> lines, Set<String> tests) {
+		lines.add(String.valueOf(tests.size()));
+		lines.addAll(new TreeSet<String>(tests));
+	}
+
+	LCNode toLCNode(String str) {
+		int index = str.lastIndexOf('#');
+		return new LCNode(str.substring(0, index), Integer.parseInt(str.substring(index + 1)));
+	}
+
+	String escape(String str) {
+		return str.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	String unescape(String str) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '\\' && i + 1 < str.length()) {
+				char next = str.charAt(++i);
+				sb.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+}
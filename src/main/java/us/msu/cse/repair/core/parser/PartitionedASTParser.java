@@ -0,0 +1,183 @@
+package us.msu.cse.repair.core.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+/**
+ * Parses the source files in partitions, each on its own thread with its own
+ * ASTParser over the same classpath and source path. Every file is visited
+ * into collections of its own, and the files are merged in the order of the
+ * given paths, so the modification points, seed statements (with the same
+ * representative statement and the same lists in their infos) and declared
+ * classes are those of a single createASTs batch over the paths.
+ *
+ * The partitions are whole package directories, so a file and the files of
+ * its package share one binding environment. Bindings of different
+ * partitions are not interchangeable: equal types are isEqualTo, but
+ * isAssignmentCompatible between them is false. Callers therefore only
+ * partition the files when ingredients are neither type-matched nor taken
+ * from other packages.
+ */
+public class PartitionedASTParser {
+	String[] classpathEntries;
+	String[] sourcepathEntries;
+	Map<String, String> compilerOptions;
+	int threads;
+
+	Map<LCNode, Double> faultyLines;
+	Set<LCNode> seedLines;
+
+	public PartitionedASTParser(String[] classpathEntries, String[] sourcepathEntries,
+			Map<String, String> compilerOptions, int threads, Map<LCNode, Double> faultyLines, Set<LCNode> seedLines) {
+		this.classpathEntries = classpathEntries;
+		this.sourcepathEntries = sourcepathEntries;
+		this.compilerOptions = compilerOptions;
+		this.threads = threads;
+
+		this.faultyLines = faultyLines;
+		this.seedLines = seedLines;
+	}
+
+	/**
+	 * Fills the collections and returns true, or returns false without
+	 * touching them if a file got no AST. JDT drops the rest of a batch when
+	 * it aborts on an incomplete classpath, and where it does so depends on
+	 * the batch, so the caller then parses serially.
+	 */
+	public boolean parse(String[] sourceFilePaths, List<ModificationPoint> modificationPoints,
+			Map<SeedStatement, SeedStatementInfo> seedStatements, Map<String, CompilationUnit> sourceASTs,
+			Map<String, String> sourceContents, Map<String, ITypeBinding> declaredClasses) throws IOException {
+		List<List<String>> partitions = getPartitions(sourceFilePaths);
+		System.out.println("Parsing " + sourceFilePaths.length + " source files in " + partitions.size()
+				+ " partitions");
+
+		Map<String, FileResult> results = Collections.synchronizedMap(new HashMap<String, FileResult>());
+		ExecutorService executor = Executors.newFixedThreadPool(partitions.size());
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final List<String> partition : partitions)
+				futures.add(executor.submit(() -> parsePartition(partition, results)));
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("AST parsing was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("AST parsing failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (results.size() < sourceFilePaths.length) {
+			System.out.println((sourceFilePaths.length - results.size())
+					+ " source files got no AST in the partitions, the classpath is probably incomplete");
+			return false;
+		}
+
+		for (String path : sourceFilePaths) {
+			FileResult result = results.get(path);
+			modificationPoints.addAll(result.modificationPoints);
+			for (Map.Entry<SeedStatement, SeedStatementInfo> entry : result.seedStatements.entrySet()) {
+				SeedStatementInfo ssi = seedStatements.get(entry.getKey());
+				if (ssi == null)
+					seedStatements.put(entry.getKey(), entry.getValue());
+				else {
+					ssi.getSourceFilePaths().addAll(entry.getValue().getSourceFilePaths());
+					ssi.getLCNodes().addAll(entry.getValue().getLCNodes());
+				}
+			}
+			sourceASTs.putAll(result.sourceASTs);
+			sourceContents.putAll(result.sourceContents);
+			declaredClasses.putAll(result.declaredClasses);
+		}
+		return true;
+	}
+
+	void parsePartition(List<String> partition, final Map<String, FileResult> results) {
+		ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setEnvironment(classpathEntries, sourcepathEntries, null, true);
+		parser.setResolveBindings(true);
+		parser.setBindingsRecovery(true);
+		parser.setCompilerOptions(compilerOptions);
+
+		FileASTRequestor requestor = new FileASTRequestor() {
+			@Override
+			public void acceptAST(String sourceFilePath, CompilationUnit cu) {
+				FileResult result = new FileResult();
+				new FileASTRequestorImpl(faultyLines, seedLines, result.modificationPoints, result.seedStatements,
+						result.sourceASTs, result.sourceContents, result.declaredClasses).acceptAST(sourceFilePath,
+								cu);
+				results.put(sourceFilePath, result);
+			}
+		};
+		parser.createASTs(partition.toArray(new String[partition.size()]), null, new String[] { "UTF-8" },
+				requestor, null);
+	}
+
+	/**
+	 * Groups the files by directory and deals the groups, largest first, to
+	 * the partition with the fewest bytes so far.
+	 */
+	List<List<String>> getPartitions(String[] sourceFilePaths) {
+		Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+		Map<String, Long> groupSizes = new HashMap<String, Long>();
+		for (String path : sourceFilePaths) {
+			File file = new File(path);
+			String dir = file.getParent();
+			if (!groups.containsKey(dir)) {
+				groups.put(dir, new ArrayList<String>());
+				groupSizes.put(dir, 0L);
+			}
+			groups.get(dir).add(path);
+			groupSizes.put(dir, groupSizes.get(dir) + file.length());
+		}
+
+		List<String> dirs = new ArrayList<String>(groups.keySet());
+		dirs.sort((d1, d2) -> Long.compare(groupSizes.get(d2), groupSizes.get(d1)));
+
+		int count = Math.max(1, Math.min(threads, dirs.size()));
+		List<List<String>> partitions = new ArrayList<List<String>>();
+		long[] partitionSizes = new long[count];
+		for (int i = 0; i < count; i++)
+			partitions.add(new ArrayList<String>());
+
+		for (String dir : dirs) {
+			int smallest = 0;
+			for (int i = 1; i < count; i++) {
+				if (partitionSizes[i] < partitionSizes[smallest])
+					smallest = i;
+			}
+			partitions.get(smallest).addAll(groups.get(dir));
+			partitionSizes[smallest] += groupSizes.get(dir);
+		}
+		return partitions;
+	}
+
+	/**
+	 * What the visit of one file adds, in visit order.
+	 */
+	static class FileResult {
+		List<ModificationPoint> modificationPoints = new ArrayList<ModificationPoint>();
+		Map<SeedStatement, SeedStatementInfo> seedStatements = new LinkedHashMap<SeedStatement, SeedStatementInfo>();
+		Map<String, CompilationUnit> sourceASTs = new HashMap<String, CompilationUnit>();
+		Map<String, String> sourceContents = new HashMap<String, String>();
+		Map<String, ITypeBinding> declaredClasses = new LinkedHashMap<String, ITypeBinding>();
+	}
+}
@@ -0,0 +1,95 @@
+package us.msu.cse.repair.core.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import us.msu.cse.repair.core.parser.ingredient.IngredientMode;
+
+/**
+ * Selects the source files that have to be parsed: the files of the faulty
+ * lines, which host the modification points, and the files that can provide
+ * seed statements to them under the ingredient mode (the same files for
+ * File, the files of their packages for Package, all files for Application).
+ * If the seed lines are known, a file without one of them provides no seed
+ * statement either. A class is mapped to the file of its top-level class; if
+ * a class has no such file (e.g., a secondary class), nothing is left out.
+ */
+public class SourceFileSelector {
+	String srcJavaDir;
+	Set<LCNode> faultyLines;
+	Set<LCNode> seedLines;
+	IngredientMode ingredientMode;
+
+	public SourceFileSelector(String srcJavaDir, Set<LCNode> faultyLines, Set<LCNode> seedLines,
+			IngredientMode ingredientMode) {
+		this.srcJavaDir = srcJavaDir;
+		this.faultyLines = faultyLines;
+		this.seedLines = seedLines;
+		this.ingredientMode = ingredientMode;
+	}
+
+	/**
+	 * The canonical paths of the selected files among the given ones, in their
+	 * order.
+	 */
+	public List<String> select(Collection<File> javaFiles) throws IOException {
+		List<String> allPaths = new ArrayList<String>();
+		for (File file : javaFiles)
+			allPaths.add(file.getCanonicalPath());
+
+		Set<String> faultyFiles = getFiles(faultyLines);
+		if (faultyFiles == null)
+			return allPaths;
+
+		Set<String> seedFiles = seedLines == null ? null : getFiles(seedLines);
+
+		Set<String> faultyDirs = new HashSet<String>();
+		for (String path : faultyFiles)
+			faultyDirs.add(new File(path).getParent());
+
+		List<String> selectedPaths = new ArrayList<String>();
+		for (String path : allPaths) {
+			if (faultyFiles.contains(path) || (isInScope(path, faultyFiles, faultyDirs)
+					&& (seedFiles == null || seedFiles.contains(path))))
+				selectedPaths.add(path);
+		}
+		return selectedPaths;
+	}
+
+	boolean isInScope(String path, Set<String> faultyFiles, Set<String> faultyDirs) {
+		if (ingredientMode == IngredientMode.File)
+			return faultyFiles.contains(path);
+		else if (ingredientMode == IngredientMode.Package)
+			return faultyDirs.contains(new File(path).getParent());
+		else
+			return true;
+	}
+
+	/**
+	 * The files of the classes of the lines, or null if one of them is not
+	 * found.
+	 */
+	Set<String> getFiles(Set<LCNode> lines) throws IOException {
+		Set<String> classNames = new HashSet<String>();
+		for (LCNode node : lines)
+			classNames.add(node.getClassName());
+
+		Set<String> files = new HashSet<String>();
+		for (String className : classNames) {
+			int index = className.indexOf('$');
+			String topLevelName = index == -1 ? className : className.substring(0, index);
+			File file = new File(srcJavaDir, topLevelName.replace('.', File.separatorChar) + ".java");
+			if (!file.isFile()) {
+				System.out.println("No source file of " + className + ", all files are parsed");
+				return null;
+			}
+			files.add(file.getCanonicalPath());
+		}
+		return files;
+	}
+}
@@ -5,20 +5,30 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.Statement;
 import org.eclipse.jdt.core.dom.ThrowStatement;
 
+import us.msu.cse.repair.core.filterrules.IngredientFilterRule;
 import us.msu.cse.repair.core.parser.ModificationPoint;
 import us.msu.cse.repair.core.parser.SeedStatement;
 import us.msu.cse.repair.core.parser.SeedStatementInfo;
+import us.msu.cse.repair.core.util.visitors.ClassInstanceAndArrayCreationVisitor;
 
 public abstract class AbstractIngredientScreener {
+	// JDT resolves and caches bindings lazily and unsynchronized, also across the ASTs of a parse
+	private static final Object bindingLock = new Object();
+
 	protected List<ModificationPoint> modificationPoints;
 	protected Map<SeedStatement, SeedStatementInfo> seedStatements;
 	protected IngredientMode ingredientMode;
 
+	protected int threads = 1;
+	protected boolean ingredientFilterRule = false;
+
 	public AbstractIngredientScreener(List<ModificationPoint> modificationPoints,
 			Map<SeedStatement, SeedStatementInfo> seedStatements, IngredientMode ingredientMode) {
 		this.modificationPoints = modificationPoints;
@@ -30,13 +40,54 @@ public abstract class AbstractIngredientScreener {
 		screen(true);
 	}
 
+	/**
+	 * Screens the modification points one after another, or with a fork-join
+	 * pool of the given threads. A point only reads the seeds and its own
+	 * scope and sets its own ingredients, so each point gets the same list in
+	 * the same order either way.
+	 *
+	 * Screening a point reads JDT bindings throughout, which are not
+	 * thread-safe, so a thread holds one lock while it screens a point and
+	 * the points are never screened concurrently.
+	 */
 	public void screen(boolean includeSelf) {
-		for (ModificationPoint mp : modificationPoints) {
+		if (threads > 1 && modificationPoints.size() > 1) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				pool.invoke(new ScreeningTask(0, modificationPoints.size(), includeSelf));
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			for (ModificationPoint mp : modificationPoints)
+				screen(mp, includeSelf);
+		}
+	}
+
+	void screen(ModificationPoint mp, boolean includeSelf) {
+		synchronized (bindingLock) {
 			screenIngredients(mp, ingredientMode, includeSelf);
 			removeRedundantThrow(mp);
+
+			if (ingredientFilterRule) {
+				Iterator<Statement> iterator = mp.getIngredients().iterator();
+				while (iterator.hasNext()) {
+					Statement seed = iterator.next();
+					if (IngredientFilterRule.canFiltered(seed, mp))
+						iterator.remove();
+				}
+			}
 		}
 	}
 
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public void setIngredientFilterRule(boolean ingredientFilterRule) {
+		this.ingredientFilterRule = ingredientFilterRule;
+	}
+
 	private void removeRedundantThrow(ModificationPoint mp) {
 		List<Statement> ingredients = mp.getIngredients();
 		Set<String> throwTypes = new HashSet<String>();
@@ -76,6 +127,65 @@ public abstract class AbstractIngredientScreener {
 		return false;
 	}
 
+	/**
+	 * canPreFiltered with the visible type declarations and the type of the
+	 * modification point computed once per point, and the classes the seed
+	 * creates (null to collect them from the seed).
+	 */
+	protected boolean canPreFiltered(ModificationPoint mp, Map.Entry<SeedStatement, SeedStatementInfo> entry,
+			Set<String> createdClasses, Set<String> visibleTypeDecls, ITypeBinding tb, IngredientMode ingredientMode,
+			boolean includeSelf) {
+		Statement seed = entry.getKey().getStatement();
+
+		if (!IngredientUtil.isInIngredientMode(entry.getValue(), mp, ingredientMode)
+				|| !IngredientUtil.isReturnThrowCompatible(seed, mp))
+			return true;
+
+		if (!includeSelf && IngredientUtil.isSelfInIngredientMode(mp, entry, ingredientMode))
+			return true;
+
+		if (tb == null)
+			return true;
+
+		if (createdClasses == null) {
+			ClassInstanceAndArrayCreationVisitor ciacVisitor = new ClassInstanceAndArrayCreationVisitor();
+			seed.accept(ciacVisitor);
+			createdClasses = ciacVisitor.getClasses();
+		}
+		if (!IngredientUtil.isNewInScope(createdClasses, visibleTypeDecls, tb))
+			return true;
+
+		return false;
+	}
+
 	protected abstract void screenIngredients(ModificationPoint mp, IngredientMode ingredientMode,
 			boolean includeSelf);
+
+	/**
+	 * Screens the points in [from, to), split in halves down to single
+	 * points.
+	 */
+	class ScreeningTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		int from;
+		int to;
+		boolean includeSelf;
+
+		ScreeningTask(int from, int to, boolean includeSelf) {
+			this.from = from;
+			this.to = to;
+			this.includeSelf = includeSelf;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1)
+				screen(modificationPoints.get(from), includeSelf);
+			else {
+				int mid = (from + to) / 2;
+				invokeAll(new ScreeningTask(from, mid, includeSelf), new ScreeningTask(mid, to, includeSelf));
+			}
+		}
+	}
 }
@@ -3,32 +3,49 @@ package us.msu.cse.repair.core.parser.ingredient;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.Statement;
 
 import us.msu.cse.repair.core.parser.ModificationPoint;
 import us.msu.cse.repair.core.parser.SeedStatement;
 import us.msu.cse.repair.core.parser.SeedStatementInfo;
 import us.msu.cse.repair.core.parser.StatementInfoExtractor;
+import us.msu.cse.repair.core.util.Helper;
 
 public class DirectIngredientScreener extends AbstractIngredientScreener {
+	IngredientIndex index;
+
 	public DirectIngredientScreener(List<ModificationPoint> modificationPoints,
 			Map<SeedStatement, SeedStatementInfo> seedStatements, IngredientMode ingredientMode) {
 		super(modificationPoints, seedStatements, ingredientMode);
 		// TODO Auto-generated constructor stub
 	}
 
+	@Override
+	public void screen(boolean includeSelf) {
+		index = new IngredientIndex(seedStatements);
+		super.screen(includeSelf);
+	}
+
 	@Override
 	protected void screenIngredients(ModificationPoint mp, IngredientMode ingredientMode, boolean includeSelf) {
 		// TODO Auto-generated method stub
 		List<Statement> ingredients = new ArrayList<Statement>();
-		for (Map.Entry<SeedStatement, SeedStatementInfo> entry : seedStatements.entrySet()) {
-			if (canPreFiltered(mp, entry, ingredientMode, includeSelf))
+
+		Statement statement = mp.getStatement();
+		Set<String> visibleTypeDecls = Helper.getVisibleTypeDeclarations(statement);
+		ITypeBinding tb = Helper.getAbstractTypeDeclaration(statement).resolveBinding();
+
+		// only the seeds whose variables and methods are all visible can be in scope
+		for (int id : index.getCandidates(mp, true)) {
+			if (canPreFiltered(mp, index.getSeed(id), index.getCreatedClasses(id), visibleTypeDecls, tb,
+					ingredientMode, includeSelf))
 				continue;
 
-			Statement seed = entry.getKey().getStatement();
-			StatementInfoExtractor sie = new StatementInfoExtractor(seed);
-			sie.extract();
+			Statement seed = index.getSeed(id).getKey().getStatement();
+			StatementInfoExtractor sie = index.getStatementInfo(id);
 
 			if (IngredientUtil.isInMethodScope(seed, mp, sie) && IngredientUtil.isInVarScope(seed, mp, sie))
 				ingredients.add(seed);
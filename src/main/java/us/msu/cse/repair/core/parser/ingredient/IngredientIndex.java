@@ -0,0 +1,147 @@
+package us.msu.cse.repair.core.parser.ingredient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.Statement;
+
+import us.msu.cse.repair.core.parser.ModificationPoint;
+import us.msu.cse.repair.core.parser.SeedStatement;
+import us.msu.cse.repair.core.parser.SeedStatementInfo;
+import us.msu.cse.repair.core.parser.StatementInfoExtractor;
+import us.msu.cse.repair.core.util.visitors.ClassInstanceAndArrayCreationVisitor;
+
+/**
+ * The seed statements with the variables, methods and created classes of
+ * each extracted once, and an inverted index from every variable and method
+ * name to the seeds that use it. A seed is only in the scope of a
+ * modification point if each name it uses is visible there (isInVarScope and
+ * isInMethodScope look every name up in the scope maps before matching the
+ * types), so the candidates of a point are the seeds all of whose names are
+ * among the point's. Seeds are numbered in the iteration order of the seed
+ * map, and candidates are returned in that order.
+ *
+ * The extracted maps are shared by all points; they are only read by the
+ * scope checks, so a screener that changes them has to copy them first.
+ */
+public class IngredientIndex {
+	List<Map.Entry<SeedStatement, SeedStatementInfo>> seeds;
+	List<StatementInfoExtractor> statementInfos;
+	List<Set<String>> createdClasses;
+
+	Map<String, List<Integer>> varIndex;
+	Map<String, List<Integer>> methodIndex;
+	int[] varCounts;
+	int[] symbolCounts;
+
+	public IngredientIndex(Map<SeedStatement, SeedStatementInfo> seedStatements) {
+		seeds = new ArrayList<Map.Entry<SeedStatement, SeedStatementInfo>>(seedStatements.entrySet());
+		statementInfos = new ArrayList<StatementInfoExtractor>(seeds.size());
+		createdClasses = new ArrayList<Set<String>>(seeds.size());
+
+		varIndex = new HashMap<String, List<Integer>>();
+		methodIndex = new HashMap<String, List<Integer>>();
+		varCounts = new int[seeds.size()];
+		symbolCounts = new int[seeds.size()];
+
+		for (int i = 0; i < seeds.size(); i++) {
+			Statement seed = seeds.get(i).getKey().getStatement();
+			StatementInfoExtractor sie = new StatementInfoExtractor(seed);
+			sie.extract();
+			statementInfos.add(sie);
+
+			ClassInstanceAndArrayCreationVisitor ciacVisitor = new ClassInstanceAndArrayCreationVisitor();
+			seed.accept(ciacVisitor);
+			createdClasses.add(ciacVisitor.getClasses());
+
+			varCounts[i] = add(varIndex, i, "v:", sie.getVars().keySet())
+					+ add(varIndex, i, "t:", sie.getThisVars().keySet())
+					+ add(varIndex, i, "s:", sie.getSuperVars().keySet());
+			symbolCounts[i] = varCounts[i] + add(methodIndex, i, "v:", sie.getMethods().keySet())
+					+ add(methodIndex, i, "t:", sie.getThisMethods().keySet())
+					+ add(methodIndex, i, "s:", sie.getSuperMethods().keySet());
+		}
+	}
+
+	public int size() {
+		return seeds.size();
+	}
+
+	public Map.Entry<SeedStatement, SeedStatementInfo> getSeed(int id) {
+		return seeds.get(id);
+	}
+
+	public StatementInfoExtractor getStatementInfo(int id) {
+		return statementInfos.get(id);
+	}
+
+	public Set<String> getCreatedClasses(int id) {
+		return createdClasses.get(id);
+	}
+
+	/**
+	 * The seeds whose variables (and methods, if withMethods) are all visible
+	 * at the modification point, in seed order.
+	 */
+	public List<Integer> getCandidates(ModificationPoint mp, boolean withMethods) {
+		int[] hits = new int[seeds.size()];
+
+		Set<String> visibleVars = new HashSet<String>();
+		addAll(visibleVars, "v:", mp.getLocalVars(), mp.getDeclaredFields(), mp.getInheritedFields(),
+				mp.getOuterFields());
+		addAll(visibleVars, "t:", mp.getDeclaredFields(), mp.getInheritedFields());
+		addAll(visibleVars, "s:", mp.getInheritedFields());
+		count(hits, varIndex, visibleVars);
+
+		int[] counts = varCounts;
+		if (withMethods) {
+			Set<String> visibleMethods = new HashSet<String>();
+			addAll(visibleMethods, "v:", mp.getDeclaredMethods(), mp.getInheritedMethods(), mp.getOuterMethods());
+			addAll(visibleMethods, "t:", mp.getDeclaredMethods(), mp.getInheritedMethods());
+			addAll(visibleMethods, "s:", mp.getInheritedMethods());
+			count(hits, methodIndex, visibleMethods);
+			counts = symbolCounts;
+		}
+
+		List<Integer> candidates = new ArrayList<Integer>();
+		for (int i = 0; i < hits.length; i++) {
+			if (hits[i] == counts[i])
+				candidates.add(i);
+		}
+		return candidates;
+	}
+
+	int add(Map<String, List<Integer>> index, int id, String kind, Set<String> names) {
+		for (String name : names) {
+			String key = kind + name;
+			List<Integer> ids = index.get(key);
+			if (ids == null) {
+				ids = new ArrayList<Integer>();
+				index.put(key, ids);
+			}
+			ids.add(id);
+		}
+		return names.size();
+	}
+
+	void addAll(Set<String> visible, String kind, Map<?, ?>... scopes) {
+		for (Map<?, ?> scope : scopes) {
+			for (Object name : scope.keySet())
+				visible.add(kind + name);
+		}
+	}
+
+	void count(int[] hits, Map<String, List<Integer>> index, Set<String> visible) {
+		for (String key : visible) {
+			List<Integer> ids = index.get(key);
+			if (ids != null) {
+				for (int id : ids)
+					hits[id]++;
+			}
+		}
+	}
+}
@@ -617,11 +617,19 @@ public class IngredientUtil {
 		ITypeBinding tb = Helper.getAbstractTypeDeclaration(statement).resolveBinding();
 		if (tb == null)
 			return false;
-		String clsName = tb.getBinaryName();
 
 		ClassInstanceAndArrayCreationVisitor ciacVisitor = new ClassInstanceAndArrayCreationVisitor();
 		seed.accept(ciacVisitor);
-		Set<String> classes = ciacVisitor.getClasses();
+		return isNewInScope(ciacVisitor.getClasses(), visibleTypeDecls, tb);
+	}
+
+	/**
+	 * isNewInScope with the classes the seed creates, and the visible type
+	 * declarations and the type of the modification point, computed
+	 * beforehand.
+	 */
+	public static boolean isNewInScope(Set<String> classes, Set<String> visibleTypeDecls, ITypeBinding tb) {
+		String clsName = tb.getBinaryName();
 
 		for (String cls : classes) {
 			if (!cls.contains("$")) {
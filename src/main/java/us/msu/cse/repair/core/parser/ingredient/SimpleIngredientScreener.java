@@ -14,18 +14,28 @@ import us.msu.cse.repair.core.parser.StatementInfoExtractor;
 // for GenProg
 
 public class SimpleIngredientScreener extends AbstractIngredientScreener {
+	IngredientIndex index;
+
 	public SimpleIngredientScreener(List<ModificationPoint> modificationPoints,
 			Map<SeedStatement, SeedStatementInfo> seedStatements, IngredientMode ingredientMode) {
 		super(modificationPoints, seedStatements, ingredientMode);
 		// TODO Auto-generated constructor stub
 	}
 
+	@Override
+	public void screen(boolean includeSelf) {
+		index = new IngredientIndex(seedStatements);
+		super.screen(includeSelf);
+	}
+
 	@Override
 	protected void screenIngredients(ModificationPoint mp, IngredientMode ingredientMode, boolean includeSelf) {
 		// TODO Auto-generated method stub
 		List<Statement> ingredients = new ArrayList<Statement>();
 
-		for (Map.Entry<SeedStatement, SeedStatementInfo> entry : seedStatements.entrySet()) {
+		// the methods are not checked here, so only the variables narrow the seeds
+		for (int id : index.getCandidates(mp, false)) {
+			Map.Entry<SeedStatement, SeedStatementInfo> entry = index.getSeed(id);
 			Statement seed = entry.getKey().getStatement();
 
 			if (!IngredientUtil.isInIngredientMode(entry.getValue(), mp, ingredientMode))
@@ -34,9 +44,7 @@ public class SimpleIngredientScreener extends AbstractIngredientScreener {
 			if (!includeSelf && IngredientUtil.isSelfInIngredientMode(mp, entry, ingredientMode))
 				continue;
 
-			StatementInfoExtractor sie = new StatementInfoExtractor(seed);
-			sie.extract();
-
+			StatementInfoExtractor sie = index.getStatementInfo(id);
 			if (IngredientUtil.isInVarScope(seed, mp, sie))
 				ingredients.add(seed);
 		}
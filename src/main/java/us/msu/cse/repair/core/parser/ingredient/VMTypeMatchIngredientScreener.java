@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.Statement;
 
 import us.msu.cse.repair.core.parser.MethodInfo;
@@ -16,6 +17,7 @@ import us.msu.cse.repair.core.parser.SeedStatement;
 import us.msu.cse.repair.core.parser.SeedStatementInfo;
 import us.msu.cse.repair.core.parser.StatementInfoExtractor;
 import us.msu.cse.repair.core.parser.VarInfo;
+import us.msu.cse.repair.core.util.Helper;
 import us.msu.cse.repair.core.util.visitors.VMConvASTVisitor;
 
 public class VMTypeMatchIngredientScreener extends AbstractIngredientScreener {
@@ -30,8 +32,13 @@ public class VMTypeMatchIngredientScreener extends AbstractIngredientScreener {
 	protected void screenIngredients(ModificationPoint mp, IngredientMode ingredientMode, boolean includeSelf) {
 		// TODO Auto-generated method stub
 		Set<SeedStatement> ingredientSet = new HashSet<SeedStatement>();
+
+		Statement statement = mp.getStatement();
+		Set<String> visibleTypeDecls = Helper.getVisibleTypeDeclarations(statement);
+		ITypeBinding tb = Helper.getAbstractTypeDeclaration(statement).resolveBinding();
+
 		for (Map.Entry<SeedStatement, SeedStatementInfo> entry : seedStatements.entrySet()) {
-			if (canPreFiltered(mp, entry, ingredientMode, includeSelf))
+			if (canPreFiltered(mp, entry, null, visibleTypeDecls, tb, ingredientMode, includeSelf))
 				continue;
 
 			Statement seed = entry.getKey().getStatement();
@@ -1,12 +1,20 @@
 package us.msu.cse.repair.core.testexecutors;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.tools.JavaFileObject;
+
+import org.apache.commons.io.FileUtils;
+
+import us.msu.cse.repair.core.compiler.JavaFileObjectImpl;
 import us.msu.cse.repair.core.util.ProcessWithTimeout;
 import us.msu.cse.repair.core.util.StreamReaderThread;
 
@@ -24,6 +32,7 @@ public class ExternalTestExecutor implements ITestExecutor {
 	Set<String> dependences;
 
 	String binWorkingDir;
+	Map<String, JavaFileObject> compiledClasses;
 
 	String externalProjRoot;
 
@@ -35,17 +44,38 @@ public class ExternalTestExecutor implements ITestExecutor {
 
 	int waitTime;
 	boolean isExceptional;
+	boolean isPartial;
+	int exitCode;
 
 	int failuresInPositive;
 	int failuresInNegative;
 
+	double estimatedFailuresInPositive;
+	double estimatedFailuresInNegative;
+
 	Set<String> failedTests;
 
+	TestScheduler scheduler;
+	TestDurationProfile durationProfile;
+
 	final int MAX = 300;
 
 	public ExternalTestExecutor(Set<String> positiveTests, Set<String> negativeTests, String finalTestsInfoPath,
 			String binJavaDir, String binTestDir, Set<String> dependences, String binWorkingDir,
 			String externalProjRoot, String jvmPath, int waitTime) {
+		this(positiveTests, negativeTests, finalTestsInfoPath, binJavaDir, binTestDir, dependences, binWorkingDir,
+				null, externalProjRoot, jvmPath, waitTime, null, null);
+	}
+
+	/**
+	 * If compiledClasses is not null, the variant is handed to the runner
+	 * through its stdin, together with the tests, and binWorkingDir is not
+	 * used.
+	 */
+	public ExternalTestExecutor(Set<String> positiveTests, Set<String> negativeTests, String finalTestsInfoPath,
+			String binJavaDir, String binTestDir, Set<String> dependences, String binWorkingDir,
+			Map<String, JavaFileObject> compiledClasses, String externalProjRoot, String jvmPath, int waitTime,
+			TestScheduler scheduler, TestDurationProfile durationProfile) {
 		this.positiveTests = positiveTests;
 		this.negativeTests = negativeTests;
 		this.finalTestsInfoPath = finalTestsInfoPath;
@@ -56,6 +86,7 @@ public class ExternalTestExecutor implements ITestExecutor {
 		this.externalProjRoot = externalProjRoot;
 
 		this.binWorkingDir = binWorkingDir;
+		this.compiledClasses = compiledClasses;
 
 		this.jvmPath = jvmPath;
 
@@ -64,6 +95,9 @@ public class ExternalTestExecutor implements ITestExecutor {
 		this.failuresInPositive = 0;
 		this.failuresInNegative = 0;
 		this.isExceptional = false;
+
+		this.scheduler = scheduler;
+		this.durationProfile = durationProfile;
 	}
 
 	@Override
@@ -78,14 +112,101 @@ public class ExternalTestExecutor implements ITestExecutor {
 		}
 		
 		// TODO Auto-generated method stub
+		List<String> tests = TestScheduler.order(scheduler, positiveTests, negativeTests);
+		int failFastFrom = TestScheduler.getFailFastFrom(scheduler, tests, negativeTests);
+
+		failedTests = new HashSet<String>();
+		Set<String> executedTests = new HashSet<String>();
+
+		// a test that times out ends its runner, the tests after it are run by a new one
+		long start = System.currentTimeMillis();
+		List<String> pendingTests = tests;
+		while (true) {
+			int timeLeft = waitTime;
+			if (pendingTests != tests && waitTime > 0) {
+				timeLeft = waitTime - (int) (System.currentTimeMillis() - start);
+				if (timeLeft <= 0) {
+					isPartial = true;
+					break;
+				}
+			}
+
+			StreamReaderThread streamReaderThread = launch(pendingTests, pendingTests == tests, failFastFrom,
+					timeLeft);
+
+			// with per-test timeouts, a run killed by waitTime still counts: the
+			// runner reports every test as soon as it finishes
+			isPartial = (durationProfile != null && exitCode == Integer.MIN_VALUE);
+			if ((exitCode != 0 && !isPartial) || streamReaderThread.isStreamExceptional()) {
+				isExceptional = true;
+				System.err.println("ExternalTestExecutor failed with exit code: " + exitCode);
+				System.err.println("Stream exceptional: " + streamReaderThread.isStreamExceptional());
+				System.err.println("Process Output:");
+				for (String line : streamReaderThread.getOutput()) {
+					System.err.println("  " + line);
+				}
+				return false;
+			}
+
+			int executedCount = 0;
+			boolean timedOut = false;
+			for (String str : streamReaderThread.getOutput()) {
+				if (str.startsWith("FailedTest"))
+					failedTests.add(str.split(":")[1].trim());
+				else if (str.startsWith("ExecutedTest")) {
+					executedTests.add(str.split(":")[1].trim());
+					executedCount++;
+				} else if (str.startsWith("TimeoutTest"))
+					timedOut = true;
+			}
+
+			if (isPartial || !timedOut || executedCount >= pendingTests.size())
+				break;
+			pendingTests = TestScheduler.getTestsAfterTimeout(pendingTests, executedCount, failFastFrom);
+			failFastFrom = -1;
+			if (pendingTests.isEmpty())
+				break;
+		}
+
+		List<String> unexecutedTests = new ArrayList<String>();
+		for (String test : tests) {
+			if (!executedTests.contains(test))
+				unexecutedTests.add(test);
+		}
+
+		if (scheduler != null)
+			scheduler.record(executedTests, failedTests);
+		estimatedFailuresInPositive = TestScheduler.estimateFailures(scheduler, unexecutedTests, positiveTests);
+		estimatedFailuresInNegative = TestScheduler.estimateFailures(scheduler, unexecutedTests, negativeTests);
+
+		for (String test : failedTests) {
+			if (negativeTests.contains(test))
+				failuresInNegative++;
+			else
+				failuresInPositive++;
+		}
+		return failedTests.isEmpty() && !isPartial;
+	}
+
+	/**
+	 * Runs the tests in a new runner JVM, all of the executor's tests if all
+	 * is true, and waits at most timeLeft ms for it. The exit code is left in
+	 * exitCode.
+	 */
+	StreamReaderThread launch(List<String> tests, boolean all, int failFastFrom, int timeLeft)
+			throws IOException, InterruptedException {
 		List<String> params = new ArrayList<String>();
 		params.add(jvmPath);
 		params.add("-cp");
 
+		// in memory, the program is loaded by the runner itself so that the
+		// variant classes can take precedence over binJavaDir
 		String cpStr = "";
-		cpStr += (binWorkingDir + File.pathSeparator);
-		cpStr += (binJavaDir + File.pathSeparator);
-		cpStr += (binTestDir + File.pathSeparator);
+		if (compiledClasses == null) {
+			cpStr += (binWorkingDir + File.pathSeparator);
+			cpStr += (binJavaDir + File.pathSeparator);
+			cpStr += (binTestDir + File.pathSeparator);
+		}
 		cpStr += new File(externalProjRoot, "bin").getCanonicalPath();
 		if (dependences != null) {
 			for (String dp : dependences)
@@ -95,17 +216,32 @@ public class ExternalTestExecutor implements ITestExecutor {
 
 		params.add("us.msu.cse.repair.external.junit.JUnitTestRunner");
 
-		if (finalTestsInfoPath != null && positiveTests.size() > MAX)
+		// each test may carry its own timeout as "test=ms"; the runner is a
+		// fresh JVM, so the timeouts allow for a cold start
+		List<String> testEntries = new ArrayList<String>();
+		for (String test : tests)
+			testEntries.add(durationProfile == null ? test : test + "=" + durationProfile.getTimeout(test, true));
+
+		if (compiledClasses != null) {
+			params.add("-");
+			params.add("programDirs=" + binJavaDir + File.pathSeparator + binTestDir);
+		} else if ((scheduler != null || durationProfile != null) && tests.size() > MAX) {
+			// the order and the timeouts matter, so the shared tests file cannot be used
+			File scheduledTestsFile = new File(binWorkingDir, "scheduled_tests.txt");
+			FileUtils.writeLines(scheduledTestsFile, testEntries);
+			params.add("@" + scheduledTestsFile.getCanonicalPath());
+		} else if (all && finalTestsInfoPath != null && positiveTests.size() > MAX)
 			params.add("@" + finalTestsInfoPath);
 		else {
 			String testStrs = "";
-			for (String test : positiveTests)
-				testStrs += (test + File.pathSeparator);
-			for (String test : negativeTests)
-				testStrs += (test + File.pathSeparator);
+			for (String entry : testEntries)
+				testStrs += (entry + File.pathSeparator);
 			params.add(testStrs);
 		}
 
+		if (failFastFrom >= 0)
+			params.add("failFast=" + failFastFrom);
+
 		ProcessBuilder builder = new ProcessBuilder(params);
 		// ✅ 修复：移除错误的方法调用
 		// builder.redirectOutput();  // ❌ 删除：无参数调用会导致编译错误
@@ -120,37 +256,32 @@ public class ExternalTestExecutor implements ITestExecutor {
 		StreamReaderThread streamReaderThread = new StreamReaderThread(process.getInputStream());
 		streamReaderThread.start();
 
+		if (compiledClasses != null)
+			writeVariant(process, testEntries);
+
 		ProcessWithTimeout processWithTimeout = new ProcessWithTimeout(process);
-		int exitCode = processWithTimeout.waitForProcess(waitTime);
+		exitCode = processWithTimeout.waitForProcess(timeLeft);
 
 		streamReaderThread.join();
+		return streamReaderThread;
+	}
 
-		if (exitCode != 0 || streamReaderThread.isStreamExceptional()) {
-			isExceptional = true;
-			System.err.println("ExternalTestExecutor failed with exit code: " + exitCode);
-			System.err.println("Stream exceptional: " + streamReaderThread.isStreamExceptional());
-			System.err.println("Process Output:");
-			for (String line : streamReaderThread.getOutput()) {
-				System.err.println("  " + line);
+	void writeVariant(Process process, List<String> testEntries) {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()))) {
+			out.writeInt(compiledClasses.size());
+			for (Map.Entry<String, JavaFileObject> entry : compiledClasses.entrySet()) {
+				byte[] bytes = ((JavaFileObjectImpl) entry.getValue()).getByteCode();
+				out.writeUTF(entry.getKey());
+				out.writeInt(bytes.length);
+				out.write(bytes);
 			}
-			return false;
-		}
-
-		List<String> output = streamReaderThread.getOutput();
-
-		failedTests = new HashSet<String>();
-		for (String str : output) {
-			if (str.startsWith("FailedTest"))
-				failedTests.add(str.split(":")[1].trim());
-		}
-
-		for (String test : failedTests) {
-			if (negativeTests.contains(test))
-				failuresInNegative++;
-			else
-				failuresInPositive++;
+			out.writeInt(testEntries.size());
+			for (String entry : testEntries)
+				out.writeUTF(entry);
+		} catch (IOException e) {
+			// the runner died early, its exit code tells the rest
+			System.err.println("ExternalTestExecutor: cannot hand over the variant: " + e.getMessage());
 		}
-		return failedTests.isEmpty();
 	}
 
 	@Override
@@ -169,7 +300,7 @@ public class ExternalTestExecutor implements ITestExecutor {
 	public double getRatioOfFailuresInPositive() {
 		// TODO Auto-generated method stub
 		if (!positiveTests.isEmpty())
-			return (double) failuresInPositive / positiveTests.size();
+			return (failuresInPositive + estimatedFailuresInPositive) / positiveTests.size();
 		else
 			return 0;
 	}
@@ -178,7 +309,7 @@ public class ExternalTestExecutor implements ITestExecutor {
 	public double getRatioOfFailuresInNegative() {
 		// TODO Auto-generated method stub
 		if (!negativeTests.isEmpty())
-			return (double) failuresInNegative / negativeTests.size();
+			return (failuresInNegative + estimatedFailuresInNegative) / negativeTests.size();
 		else
 			return 0;
 	}
@@ -189,6 +320,11 @@ public class ExternalTestExecutor implements ITestExecutor {
 		return this.isExceptional;
 	}
 
+	@Override
+	public boolean isPartial() {
+		return this.isPartial;
+	}
+
 	@Override
 	public Set<String> getFailedTests() {
 		return this.failedTests;
@@ -15,5 +15,7 @@ public interface ITestExecutor {
 
 	public boolean isExceptional();
 
+	public boolean isPartial();
+
 	public Set<String> getFailedTests();
 }
@@ -2,7 +2,7 @@ package us.msu.cse.repair.core.testexecutors;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -28,14 +28,27 @@ public class InternalTestExecutor implements ITestExecutor {
 
 	int waitTime;
 	boolean isTimeout;
+	boolean isPartial;
 
 	int failuresInPositive;
 	int failuresInNegative;
 
+	double estimatedFailuresInPositive;
+	double estimatedFailuresInNegative;
+
 	Set<String> failedTests;
 
+	TestScheduler scheduler;
+	TestDurationProfile durationProfile;
+
 	public InternalTestExecutor(Set<String> positiveTests, Set<String> negativeTests,
 			CustomURLClassLoader urlClassLoader, int waitTime) throws MalformedURLException {
+		this(positiveTests, negativeTests, urlClassLoader, waitTime, null, null);
+	}
+
+	public InternalTestExecutor(Set<String> positiveTests, Set<String> negativeTests,
+			CustomURLClassLoader urlClassLoader, int waitTime, TestScheduler scheduler,
+			TestDurationProfile durationProfile) throws MalformedURLException {
 		// 设置时区以匹配 Defects4J v3.0.1 要求
 		TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
 		
@@ -49,14 +62,18 @@ public class InternalTestExecutor implements ITestExecutor {
 
 		this.failuresInPositive = 0;
 		this.failuresInNegative = 0;
+
+		this.scheduler = scheduler;
+		this.durationProfile = durationProfile;
 	}
 
 	@Override
 	public boolean runTests() throws IOException {
 		// TODO Auto-generated method stub
-		failedTests = new HashSet<String>();
+		List<String> tests = TestScheduler.order(scheduler, positiveTests, negativeTests);
+		TestOutcomes outcomes = new TestOutcomes();
 
-		TestRunThread thread = new TestRunThread();
+		TestRunThread thread = new TestRunThread(tests, outcomes);
 		thread.start();
 		try {
 			thread.join(waitTime);
@@ -65,10 +82,7 @@ public class InternalTestExecutor implements ITestExecutor {
 			e.printStackTrace();
 		}
 
-		boolean flag;
-
 		if (thread.isAlive()) {
-			isTimeout = true;
 			// ✅ Java 11 兼容性修复：改进线程中断处理
 			thread.interrupt();
 			
@@ -83,36 +97,53 @@ public class InternalTestExecutor implements ITestExecutor {
 			if (thread.isAlive()) {
 				System.err.println("Warning: Test thread did not respond to interrupt, may cause resource leak");
 			}
-			
-			flag = false;
-		} else
-			flag = thread.isSuccess;
+
+			// without per-test timeouts, a partial run is not trusted
+			if (durationProfile == null) {
+				isTimeout = true;
+				failedTests = outcomes.getFailedTests();
+				urlClassLoader.close();
+				return false;
+			}
+			outcomes.setTimedOut(true);
+		}
+
+		failedTests = outcomes.getFailedTests();
+		for (String test : failedTests) {
+			if (negativeTests.contains(test))
+				failuresInNegative++;
+			else
+				failuresInPositive++;
+		}
+
+		List<String> executedTests = outcomes.getExecutedTests();
+		if (scheduler != null)
+			scheduler.record(executedTests, failedTests);
+
+		List<String> unexecutedTests = tests.subList(executedTests.size(), tests.size());
+		isPartial = outcomes.isTimedOut() || !outcomes.getTimedOutTests().isEmpty();
+		estimatedFailuresInPositive = TestScheduler.estimateFailures(scheduler, unexecutedTests, positiveTests);
+		estimatedFailuresInNegative = TestScheduler.estimateFailures(scheduler, unexecutedTests, negativeTests);
 
 		urlClassLoader.close();
-		return flag;
+		return thread.isSuccess && !outcomes.isTimedOut() && failedTests.isEmpty();
 	}
 
 	private class TestRunThread extends Thread {
-		boolean isSuccess;
+		List<String> tests;
+		TestOutcomes outcomes;
+		volatile boolean isSuccess;
+
+		TestRunThread(List<String> tests, TestOutcomes outcomes) {
+			this.tests = tests;
+			this.outcomes = outcomes;
+		}
 
 		@Override
 		public void run() {
 			try {
-				boolean posSuccess = runPositiveTests();
-				// ✅ 检查中断状态
-				if (Thread.currentThread().isInterrupted()) {
-					System.out.println("Test execution interrupted after positive tests");
-					isSuccess = false;
-					return;
-				}
-				boolean negSuccess = runNegativeTests();
-				// ✅ 再次检查中断状态
-				if (Thread.currentThread().isInterrupted()) {
-					System.out.println("Test execution interrupted after negative tests");
-					isSuccess = false;
-					return;
-				}
-				isSuccess = posSuccess & negSuccess;
+				runScheduledTests(tests, outcomes);
+				isSuccess = true;
 			} catch (ClassNotFoundException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -130,49 +161,56 @@ public class InternalTestExecutor implements ITestExecutor {
 		}
 	}
 
-	boolean runPositiveTests() throws ClassNotFoundException {
-		for (String test : positiveTests) {
+	/**
+	 * Runs the tests in the given order and records their outcomes as they
+	 * finish. With a duration profile every test runs on its own thread and
+	 * is abandoned after its timeout; it may still change static state, so
+	 * the run stops there and the rest of the tests are estimated. In
+	 * fail-fast mode the run stops at the first failure past the tests that
+	 * always run.
+	 */
+	void runScheduledTests(List<String> tests, TestOutcomes outcomes) throws Exception {
+		int failFastFrom = TestScheduler.getFailFastFrom(scheduler, tests, negativeTests);
+		boolean anyFailed = false;
+		for (int i = 0; i < tests.size(); i++) {
+			String test = tests.get(i);
 			// ✅ 在每个测试前检查中断状态
-			if (Thread.currentThread().isInterrupted()) {
-				System.out.println("Interrupted during positive test execution");
-				return false;
-			}
-			
-			String[] temp = test.split("#");
-
-			Class<?> targetClass = urlClassLoader.loadClass(temp[0]);
-			Request request = Request.method(targetClass, temp[1]);
-
-			Result result = new JUnitCore().run(request);
-
-			if (!result.wasSuccessful()) {
-				failuresInPositive++;
-				failedTests.add(test);
-			}
-		}
-
-		return failuresInPositive == 0;
-	}
+			if (Thread.currentThread().isInterrupted())
+				throw new InterruptedException("Interrupted during test execution");
 
-	boolean runNegativeTests() throws ClassNotFoundException {
-		for (String test : negativeTests) {
-			// ✅ 在每个测试前检查中断状态
-			if (Thread.currentThread().isInterrupted()) {
-				System.out.println("Interrupted during negative test execution");
-				return false;
-			}
-			
 			String[] temp = test.split("#");
 			Class<?> targetClass = urlClassLoader.loadClass(temp[0]);
-			Request request = Request.method(targetClass, temp[1]);
-			Result result = new JUnitCore().run(request);
-
-			if (!result.wasSuccessful()) {
-				failuresInNegative++;
-				failedTests.add(test);
+			final Request request = Request.method(targetClass, temp[1]);
+
+			long start = System.currentTimeMillis();
+			boolean failed;
+			if (durationProfile == null) {
+				failed = !new JUnitCore().run(request).wasSuccessful();
+			} else {
+				final Result[] result = new Result[1];
+				Thread testThread = new Thread() {
+					@Override
+					public void run() {
+						result[0] = new JUnitCore().run(request);
+					}
+				};
+				testThread.setDaemon(true);
+				testThread.start();
+				testThread.join(durationProfile.getTimeout(test));
+				if (testThread.isAlive()) {
+					testThread.interrupt();
+					outcomes.addTimedOut(test, System.currentTimeMillis() - start);
+					break;
+				}
+				failed = result[0] == null || !result[0].wasSuccessful();
 			}
+			outcomes.add(test, failed, System.currentTimeMillis() - start);
+
+			anyFailed |= failed;
+			if (TestScheduler.stopsAfter(failFastFrom, i, anyFailed))
+				break;
 		}
-		return failuresInNegative == 0;
+		outcomes.setComplete(true);
 	}
 
 	@Override
@@ -191,7 +229,7 @@ public class InternalTestExecutor implements ITestExecutor {
 	public double getRatioOfFailuresInPositive() {
 		// TODO Auto-generated method stub
 		if (positiveTests.size() != 0)
-			return (double) failuresInPositive / positiveTests.size();
+			return (failuresInPositive + estimatedFailuresInPositive) / positiveTests.size();
 		else
 			return 0;
 	}
@@ -200,7 +238,7 @@ public class InternalTestExecutor implements ITestExecutor {
 	public double getRatioOfFailuresInNegative() {
 		// TODO Auto-generated method stub
 		if (negativeTests.size() != 0)
-			return (double) failuresInNegative / negativeTests.size();
+			return (failuresInNegative + estimatedFailuresInNegative) / negativeTests.size();
 		else
 			return 0;
 	}
@@ -211,6 +249,11 @@ public class InternalTestExecutor implements ITestExecutor {
 		return this.isTimeout;
 	}
 
+	@Override
+	public boolean isPartial() {
+		return this.isPartial;
+	}
+
 	@Override
 	public Set<String> getFailedTests() {
 		// TODO Auto-generated method stub
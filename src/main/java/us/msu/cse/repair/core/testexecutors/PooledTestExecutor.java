@@ -0,0 +1,143 @@
+package us.msu.cse.repair.core.testexecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Runs the tests of a variant on a warm worker JVM taken from a
+ * TestWorkerPool. The compiled classes are streamed to the worker, so
+ * nothing is written to disk. With a TestDurationProfile, every test has its
+ * own timeout and a run cut short by waitTime still yields a fitness.
+ */
+public class PooledTestExecutor implements ITestExecutor {
+	Set<String> positiveTests;
+	Set<String> negativeTests;
+
+	Map<String, JavaFileObject> compiledClasses;
+	TestWorkerPool workerPool;
+
+	int waitTime;
+	boolean isExceptional;
+	boolean isPartial;
+
+	int failuresInPositive;
+	int failuresInNegative;
+
+	double estimatedFailuresInPositive;
+	double estimatedFailuresInNegative;
+
+	Set<String> failedTests;
+
+	TestScheduler scheduler;
+	TestDurationProfile durationProfile;
+
+	public PooledTestExecutor(Set<String> positiveTests, Set<String> negativeTests,
+			Map<String, JavaFileObject> compiledClasses, TestWorkerPool workerPool, int waitTime) {
+		this(positiveTests, negativeTests, compiledClasses, workerPool, waitTime, null, null);
+	}
+
+	public PooledTestExecutor(Set<String> positiveTests, Set<String> negativeTests,
+			Map<String, JavaFileObject> compiledClasses, TestWorkerPool workerPool, int waitTime,
+			TestScheduler scheduler, TestDurationProfile durationProfile) {
+		this.positiveTests = positiveTests;
+		this.negativeTests = negativeTests;
+
+		this.compiledClasses = compiledClasses;
+		this.workerPool = workerPool;
+
+		this.waitTime = waitTime;
+
+		this.failuresInPositive = 0;
+		this.failuresInNegative = 0;
+		this.isExceptional = false;
+
+		this.scheduler = scheduler;
+		this.durationProfile = durationProfile;
+	}
+
+	@Override
+	public boolean runTests() throws Exception {
+		if (positiveTests.isEmpty() && negativeTests.isEmpty()) {
+			System.err.println("PooledTestExecutor: No tests to run!");
+			isExceptional = true;
+			return false;
+		}
+
+		List<String> tests = TestScheduler.order(scheduler, positiveTests, negativeTests);
+		int failFastFrom = TestScheduler.getFailFastFrom(scheduler, tests, negativeTests);
+		TestOutcomes outcomes = workerPool.run(compiledClasses, tests, durationProfile, waitTime, failFastFrom);
+
+		if (!outcomes.isComplete()) {
+			System.err.println("PooledTestExecutor: worker " + (outcomes.isTimedOut() ? "timed out" : "died")
+					+ " after " + outcomes.getExecutedTests().size() + " of " + tests.size() + " tests");
+			// without per-test timeouts, a partial run is not trusted
+			if (durationProfile == null || !outcomes.isTimedOut()) {
+				isExceptional = true;
+				return false;
+			}
+			isPartial = true;
+		}
+
+		failedTests = outcomes.getFailedTests();
+		for (String test : failedTests) {
+			if (negativeTests.contains(test))
+				failuresInNegative++;
+			else
+				failuresInPositive++;
+		}
+
+		int executedCount = outcomes.getExecutedTests().size();
+		if (scheduler != null)
+			scheduler.record(tests.subList(0, executedCount), failedTests);
+
+		List<String> unexecutedTests = tests.subList(executedCount, tests.size());
+		estimatedFailuresInPositive = TestScheduler.estimateFailures(scheduler, unexecutedTests, positiveTests);
+		estimatedFailuresInNegative = TestScheduler.estimateFailures(scheduler, unexecutedTests, negativeTests);
+		return failedTests.isEmpty() && outcomes.isComplete();
+	}
+
+	@Override
+	public int getFailureCountInPositive() {
+		return this.failuresInPositive;
+	}
+
+	@Override
+	public int getFailureCountInNegative() {
+		return this.failuresInNegative;
+	}
+
+	@Override
+	public double getRatioOfFailuresInPositive() {
+		if (!positiveTests.isEmpty())
+			return (failuresInPositive + estimatedFailuresInPositive) / positiveTests.size();
+		else
+			return 0;
+	}
+
+	@Override
+	public double getRatioOfFailuresInNegative() {
+		if (!negativeTests.isEmpty())
+			return (failuresInNegative + estimatedFailuresInNegative) / negativeTests.size();
+		else
+			return 0;
+	}
+
+	@Override
+	public boolean isExceptional() {
+		return this.isExceptional;
+	}
+
+	@Override
+	public boolean isPartial() {
+		return this.isPartial;
+	}
+
+	@Override
+	public Set<String> getFailedTests() {
+		return this.failedTests;
+	}
+}
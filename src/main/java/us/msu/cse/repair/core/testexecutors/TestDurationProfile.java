@@ -0,0 +1,97 @@
+package us.msu.cse.repair.core.testexecutors;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Durations of the tests on the original program, used to give every test
+ * its own timeout: factor times its baseline duration, at least minTimeout
+ * and at most maxTimeout (the waitTime of a whole run). Tests without a
+ * baseline get maxTimeout.
+ *
+ * The baseline is measured in one worker JVM, where only the first test pays
+ * for the start of the JVM (loading JUnit and the libraries, compiling hot
+ * code). In a fresh JVM any test can be the first, so its timeout there also
+ * allows for that cold start, measured as how much longer the first test took
+ * than when it ran again.
+ */
+public class TestDurationProfile {
+	private final Map<String, Long> baselineDurations;
+	private final double factor;
+	private final long minTimeout;
+	private final long maxTimeout;
+	private final long coldStartMargin;
+
+	public TestDurationProfile(Map<String, Long> baselineDurations, double factor, long minTimeout,
+			long maxTimeout, long coldStartMargin) {
+		this.baselineDurations = new HashMap<String, Long>(baselineDurations);
+		this.factor = factor;
+		this.minTimeout = minTimeout;
+		this.maxTimeout = maxTimeout;
+		this.coldStartMargin = coldStartMargin;
+	}
+
+	/**
+	 * Measures the baseline by running the tests on the original program
+	 * (no variant classes) on a worker of the pool, maxTimeout ms per test,
+	 * then the first test once more on the same, now warm, worker.
+	 */
+	public static TestDurationProfile measure(TestWorkerPool workerPool, List<String> tests, double factor,
+			long minTimeout, long maxTimeout) throws IOException, InterruptedException {
+		// without a baseline, every test gets maxTimeout
+		TestDurationProfile noBaseline = new TestDurationProfile(new HashMap<String, Long>(), factor, minTimeout,
+				maxTimeout, 0);
+		Map<String, JavaFileObject> noClasses = new HashMap<String, JavaFileObject>();
+
+		TestOutcomes outcomes = workerPool.run(noClasses, tests, noBaseline, 0, -1);
+		Map<String, Long> durations = outcomes.getDurations();
+		for (String test : outcomes.getTimedOutTests())
+			durations.remove(test);
+
+		long coldStartMargin = 0;
+		if (!tests.isEmpty() && durations.containsKey(tests.get(0)) && outcomes.getTimedOutTests().isEmpty()) {
+			List<String> firstTest = tests.subList(0, 1);
+			Long warmDuration = workerPool.run(noClasses, firstTest, noBaseline, 0, -1).getDurations()
+					.get(tests.get(0));
+			if (warmDuration != null)
+				coldStartMargin = Math.max(0, durations.get(tests.get(0)) - warmDuration);
+		}
+		return new TestDurationProfile(durations, factor, minTimeout, maxTimeout, coldStartMargin);
+	}
+
+	public long getTimeout(String test) {
+		return getTimeout(test, false);
+	}
+
+	/**
+	 * The timeout of the test, in a fresh JVM if cold is true.
+	 */
+	public long getTimeout(String test, boolean cold) {
+		Long duration = baselineDurations.get(test);
+		if (duration == null)
+			return maxTimeout;
+		long timeout = Math.max(minTimeout, (long) Math.ceil(factor * duration));
+		if (cold)
+			timeout += coldStartMargin;
+		return Math.min(timeout, maxTimeout);
+	}
+
+	public Map<String, Long> getTimeouts(List<String> tests, boolean cold) {
+		Map<String, Long> timeouts = new HashMap<String, Long>();
+		for (String test : tests)
+			timeouts.put(test, getTimeout(test, cold));
+		return timeouts;
+	}
+
+	public long getColdStartMargin() {
+		return coldStartMargin;
+	}
+
+	public int size() {
+		return baselineDurations.size();
+	}
+}
@@ -0,0 +1,89 @@
+package us.msu.cse.repair.core.testexecutors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-test results of one run, possibly partial if the run was cut short.
+ */
+public class TestOutcomes {
+	private final List<String> executedTests = new ArrayList<String>();
+	private final Set<String> failedTests = new HashSet<String>();
+	private final Set<String> timedOutTests = new HashSet<String>();
+	private final Map<String, Long> durations = new HashMap<String, Long>();
+
+	private boolean complete;
+	private boolean timedOut;
+
+	public synchronized void add(String test, boolean failed, long duration) {
+		executedTests.add(test);
+		if (failed)
+			failedTests.add(test);
+		durations.put(test, duration);
+	}
+
+	/**
+	 * Records a test that hit its own timeout; it counts as failed.
+	 */
+	public synchronized void addTimedOut(String test, long duration) {
+		add(test, true, duration);
+		timedOutTests.add(test);
+	}
+
+	/**
+	 * Appends the outcomes of a run that took over from this one in a fresh
+	 * JVM; the state of the run is that of the later one.
+	 */
+	public void addAll(TestOutcomes later) {
+		List<String> laterExecutedTests = later.getExecutedTests();
+		Set<String> laterFailedTests = later.getFailedTests();
+		Set<String> laterTimedOutTests = later.getTimedOutTests();
+		Map<String, Long> laterDurations = later.getDurations();
+		synchronized (this) {
+			for (String test : laterExecutedTests) {
+				if (laterTimedOutTests.contains(test))
+					addTimedOut(test, laterDurations.get(test));
+				else
+					add(test, laterFailedTests.contains(test), laterDurations.get(test));
+			}
+			complete = later.isComplete();
+			timedOut = later.isTimedOut();
+		}
+	}
+
+	public synchronized List<String> getExecutedTests() {
+		return new ArrayList<String>(executedTests);
+	}
+
+	public synchronized Set<String> getFailedTests() {
+		return new HashSet<String>(failedTests);
+	}
+
+	public synchronized Set<String> getTimedOutTests() {
+		return new HashSet<String>(timedOutTests);
+	}
+
+	public synchronized Map<String, Long> getDurations() {
+		return new HashMap<String, Long>(durations);
+	}
+
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	public synchronized void setComplete(boolean complete) {
+		this.complete = complete;
+	}
+
+	public synchronized boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public synchronized void setTimedOut(boolean timedOut) {
+		this.timedOut = timedOut;
+	}
+}
@@ -0,0 +1,239 @@
+package us.msu.cse.repair.core.testexecutors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Orders the tests of a variant by how likely they are to fail, using the
+ * outcomes observed in earlier fitness evaluations. Negative tests always come
+ * first, then the positive tests that have failed before, then the others;
+ * each group in decreasing order of failure rate (ties are broken by name, so
+ * the order only depends on the history).
+ *
+ * With fail-fast, an executor stops at the first failing test once the
+ * negative tests and the positive tests that have failed before are done: the
+ * variant can no longer be test-adequate, and the positive failures the
+ * fitness depends on are observed rather than estimated. The failures of the
+ * tests that did not run are estimated from their historical failure rates;
+ * the estimate lies between zero and the number of tests not run.
+ *
+ * Evaluations that run concurrently defer their outcomes (see defer), so they
+ * all schedule and estimate from the same history, whichever finishes first.
+ */
+public class TestScheduler {
+	private final Map<String, int[]> history = new ConcurrentHashMap<String, int[]>();
+	private final boolean failFast;
+
+	// outcomes held back for the evaluation running on the thread, null if recorded directly
+	private final ThreadLocal<Map<String, int[]>> deferredOutcomes = new ThreadLocal<Map<String, int[]>>();
+
+	public TestScheduler(boolean failFast) {
+		this.failFast = failFast;
+	}
+
+	public boolean isFailFast() {
+		return failFast;
+	}
+
+	/**
+	 * Returns the negative tests, the positive tests that have failed before
+	 * and the other positive tests, each group sorted so that the tests most
+	 * likely to fail run first.
+	 */
+	public List<String> schedule(Set<String> positiveTests, Set<String> negativeTests) {
+		List<String> failedPositiveTests = new ArrayList<String>();
+		List<String> otherPositiveTests = new ArrayList<String>();
+		for (String test : positiveTests) {
+			if (hasFailed(test))
+				failedPositiveTests.add(test);
+			else
+				otherPositiveTests.add(test);
+		}
+
+		List<String> tests = sort(negativeTests);
+		tests.addAll(sort(failedPositiveTests));
+		tests.addAll(sort(otherPositiveTests));
+		return tests;
+	}
+
+	private List<String> sort(Collection<String> tests) {
+		List<String> sorted = new ArrayList<String>(tests);
+		final Map<String, Double> priorities = new HashMap<String, Double>();
+		for (String test : sorted)
+			priorities.put(test, getPriority(test));
+
+		Collections.sort(sorted, new Comparator<String>() {
+			@Override
+			public int compare(String t1, String t2) {
+				int cmp = Double.compare(priorities.get(t2), priorities.get(t1));
+				return cmp != 0 ? cmp : t1.compareTo(t2);
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Execution order of an executor: the schedule if there is a scheduler,
+	 * otherwise the positive tests followed by the negative tests.
+	 */
+	public static List<String> order(TestScheduler scheduler, Set<String> positiveTests, Set<String> negativeTests) {
+		if (scheduler != null)
+			return scheduler.schedule(positiveTests, negativeTests);
+		List<String> tests = new ArrayList<String>(positiveTests);
+		tests.addAll(negativeTests);
+		return tests;
+	}
+
+	/**
+	 * The number of leading tests of a schedule that run even after a
+	 * failure: the negative tests and the positive tests that have failed
+	 * before. -1 if there is no scheduler or no fail-fast.
+	 */
+	public static int getFailFastFrom(TestScheduler scheduler, List<String> tests, Set<String> negativeTests) {
+		if (scheduler == null || !scheduler.isFailFast())
+			return -1;
+		int count = 0;
+		while (count < tests.size()
+				&& (negativeTests.contains(tests.get(count)) || scheduler.hasFailed(tests.get(count))))
+			count++;
+		return count;
+	}
+
+	/**
+	 * Whether a run stops after the test at index, given the result of
+	 * getFailFastFrom and whether a test up to it has failed.
+	 */
+	public static boolean stopsAfter(int failFastFrom, int index, boolean failed) {
+		return failFastFrom >= 0 && failed && index + 1 >= failFastFrom;
+	}
+
+	/**
+	 * The tests to run in a fresh JVM after the one running tests stopped at a
+	 * test that timed out, the last of the executedCount it ran. A timeout is
+	 * a failure, so with fail-fast only the rest of the tests that always run
+	 * are left, and the fresh JVM runs them without fail-fast.
+	 */
+	public static List<String> getTestsAfterTimeout(List<String> tests, int executedCount, int failFastFrom) {
+		int end = tests.size();
+		if (failFastFrom >= 0)
+			end = Math.max(executedCount, Math.min(failFastFrom, end));
+		return tests.subList(executedCount, end);
+	}
+
+	/**
+	 * Failures among the unexecuted tests of a group: the historical estimate
+	 * if there is a scheduler, otherwise all of them are assumed to fail.
+	 */
+	public static double estimateFailures(TestScheduler scheduler, Collection<String> unexecutedTests,
+			Set<String> group) {
+		if (scheduler != null)
+			return scheduler.estimateFailures(unexecutedTests, group);
+		int count = 0;
+		for (String test : unexecutedTests) {
+			if (group.contains(test))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Adds the outcomes of the executed tests to the history.
+	 */
+	public void record(Collection<String> executedTests, Set<String> failedTests) {
+		for (String test : executedTests)
+			record(test, failedTests.contains(test));
+	}
+
+	public void record(String test, boolean failed) {
+		Map<String, int[]> outcomes = deferredOutcomes.get();
+		int[] counts = (outcomes != null ? outcomes : history).computeIfAbsent(test, k -> new int[2]);
+		synchronized (counts) {
+			counts[0]++;
+			if (failed)
+				counts[1]++;
+		}
+	}
+
+	/**
+	 * Holds back the outcomes recorded on the calling thread, until
+	 * stopDeferring, in the returned map instead of the history. They are
+	 * added to the history by apply.
+	 */
+	public Map<String, int[]> defer() {
+		Map<String, int[]> outcomes = new LinkedHashMap<String, int[]>();
+		deferredOutcomes.set(outcomes);
+		return outcomes;
+	}
+
+	public void stopDeferring() {
+		deferredOutcomes.remove();
+	}
+
+	/**
+	 * Adds outcomes held back by defer to the history.
+	 */
+	public void apply(Map<String, int[]> outcomes) {
+		for (Map.Entry<String, int[]> entry : outcomes.entrySet()) {
+			int[] counts = history.computeIfAbsent(entry.getKey(), k -> new int[2]);
+			synchronized (counts) {
+				counts[0] += entry.getValue()[0];
+				counts[1] += entry.getValue()[1];
+			}
+		}
+	}
+
+	/**
+	 * Laplace-smoothed failure rate, so that tests never seen before are tried
+	 * ahead of tests that passed many times.
+	 */
+	double getPriority(String test) {
+		int[] counts = history.get(test);
+		if (counts == null)
+			return 0.5;
+		synchronized (counts) {
+			return (counts[1] + 1.0) / (counts[0] + 2.0);
+		}
+	}
+
+	boolean hasFailed(String test) {
+		int[] counts = history.get(test);
+		if (counts == null)
+			return false;
+		synchronized (counts) {
+			return counts[1] > 0;
+		}
+	}
+
+	/**
+	 * Observed failure rate of a test, 0 if it has never run.
+	 */
+	public double getFailureRate(String test) {
+		int[] counts = history.get(test);
+		if (counts == null)
+			return 0;
+		synchronized (counts) {
+			return counts[0] == 0 ? 0 : (double) counts[1] / counts[0];
+		}
+	}
+
+	/**
+	 * Expected number of failures among the tests of the given group that were
+	 * skipped by fail-fast.
+	 */
+	public double estimateFailures(Collection<String> unexecutedTests, Set<String> group) {
+		double estimate = 0;
+		for (String test : unexecutedTests) {
+			if (group.contains(test))
+				estimate += getFailureRate(test);
+		}
+		return estimate;
+	}
+}
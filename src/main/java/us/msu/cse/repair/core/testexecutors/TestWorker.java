@@ -0,0 +1,175 @@
+package us.msu.cse.repair.core.testexecutors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaFileObject;
+
+import us.msu.cse.repair.core.compiler.JavaFileObjectImpl;
+
+/**
+ * Handle on one warm test-runner JVM (JUnitTestWorker of the external
+ * project). A worker serves one request at a time; a worker that timed out or
+ * died is not reused.
+ */
+public class TestWorker {
+	private final Process process;
+	private final DataOutputStream toWorker;
+	private final DataInputStream fromWorker;
+
+	private int runs;
+	private boolean alive;
+
+	public TestWorker(String binJavaDir, String binTestDir, Set<String> dependences, String externalProjRoot,
+			String jvmPath) throws IOException {
+		List<String> params = new ArrayList<String>();
+		params.add(jvmPath);
+		params.add("-cp");
+
+		File jarDir = new File(externalProjRoot, "lib/*");
+		File binExternalDir = new File(externalProjRoot, "bin");
+		params.add(jarDir.getCanonicalPath() + File.pathSeparator + binExternalDir.getCanonicalPath());
+
+		params.add("us.msu.cse.repair.external.junit.JUnitTestWorker");
+		params.add(binJavaDir);
+		params.add(binTestDir);
+
+		String dps = File.pathSeparator;
+		if (dependences != null) {
+			for (String dp : dependences)
+				dps += (dp + File.pathSeparator);
+		}
+		params.add(dps);
+
+		ProcessBuilder builder = new ProcessBuilder(params);
+		builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+		builder.environment().put("TZ", "America/Los_Angeles");
+
+		process = builder.start();
+		toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+		runs = 0;
+		alive = true;
+	}
+
+	/**
+	 * Runs the tests against the given variant classes. Outcomes are collected
+	 * as the worker reports them; if the run does not finish within timeout ms
+	 * (0 means no limit) or the worker dies, the worker is destroyed and the
+	 * outcomes received so far are returned. Tests listed in testTimeouts are
+	 * stopped after their own timeout and count as failed; the worker then
+	 * ends the run (see TestWorkerPool.run for the tests after it) and is not
+	 * reused. With failFastFrom (see TestScheduler.getFailFastFrom), the
+	 * run is complete after the first failing test past the first
+	 * failFastFrom tests.
+	 */
+	public TestOutcomes run(Map<String, JavaFileObject> compiledClasses, final List<String> tests,
+			Map<String, Long> testTimeouts, long timeout, final int failFastFrom) {
+		runs++;
+		final TestOutcomes outcomes = new TestOutcomes();
+		try {
+			toWorker.writeInt(compiledClasses.size());
+			for (Map.Entry<String, JavaFileObject> entry : compiledClasses.entrySet()) {
+				byte[] bytes = ((JavaFileObjectImpl) entry.getValue()).getByteCode();
+				toWorker.writeUTF(entry.getKey());
+				toWorker.writeInt(bytes.length);
+				toWorker.write(bytes);
+			}
+			toWorker.writeInt(tests.size());
+			for (String test : tests) {
+				Long testTimeout = (testTimeouts == null) ? null : testTimeouts.get(test);
+				toWorker.writeUTF(test);
+				toWorker.writeLong(testTimeout == null ? 0 : testTimeout);
+			}
+			toWorker.writeInt(failFastFrom);
+			toWorker.flush();
+		} catch (IOException e) {
+			destroy();
+			return outcomes;
+		}
+
+		final CountDownLatch finished = new CountDownLatch(1);
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					boolean anyFailed = false;
+					for (int i = 0; i < tests.size(); i++) {
+						String test = tests.get(i);
+						boolean failed = fromWorker.readBoolean();
+						boolean timedOut = fromWorker.readBoolean();
+						long duration = fromWorker.readLong();
+						if (timedOut) {
+							// the worker exits after it, see JUnitTestWorker
+							outcomes.addTimedOut(test, duration);
+							break;
+						}
+						outcomes.add(test, failed, duration);
+						anyFailed |= failed;
+						if (TestScheduler.stopsAfter(failFastFrom, i, anyFailed))
+							break;
+					}
+					outcomes.setComplete(true);
+				} catch (IOException e) {
+					// the worker died or was destroyed, keep what we have
+				}
+				finished.countDown();
+			}
+		};
+		reader.setDaemon(true);
+		reader.start();
+
+		try {
+			boolean done;
+			if (timeout > 0)
+				done = finished.await(timeout, TimeUnit.MILLISECONDS);
+			else {
+				finished.await();
+				done = true;
+			}
+			if (!done)
+				outcomes.setTimedOut(true);
+		} catch (InterruptedException e) {
+			outcomes.setTimedOut(true);
+		}
+
+		if (!outcomes.isComplete() || !outcomes.getTimedOutTests().isEmpty())
+			destroy();
+		return outcomes;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	public boolean isAlive() {
+		return alive && process.isAlive();
+	}
+
+	public void shutdown() {
+		if (isAlive()) {
+			try {
+				toWorker.writeInt(-1);
+				toWorker.flush();
+			} catch (IOException e) {
+				// destroyed below anyway
+			}
+		}
+		destroy();
+	}
+
+	void destroy() {
+		alive = false;
+		process.destroyForcibly();
+	}
+}
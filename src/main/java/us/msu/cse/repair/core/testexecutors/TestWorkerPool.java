@@ -0,0 +1,118 @@
+package us.msu.cse.repair.core.testexecutors;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Pool of warm test-runner JVMs shared by all fitness evaluations. At most
+ * size workers exist at a time; they are started on demand and replaced once
+ * they have served maxRuns requests, or right away after a timeout or crash.
+ */
+public class TestWorkerPool {
+	private final String binJavaDir;
+	private final String binTestDir;
+	private final Set<String> dependences;
+	private final String externalProjRoot;
+	private final String jvmPath;
+
+	private final int maxRuns;
+	private final Semaphore permits;
+	private final BlockingQueue<TestWorker> idleWorkers;
+
+	public TestWorkerPool(int size, int maxRuns, String binJavaDir, String binTestDir, Set<String> dependences,
+			String externalProjRoot, String jvmPath) {
+		this.binJavaDir = binJavaDir;
+		this.binTestDir = binTestDir;
+		this.dependences = dependences;
+		this.externalProjRoot = externalProjRoot;
+		this.jvmPath = jvmPath;
+
+		this.maxRuns = maxRuns;
+		this.permits = new Semaphore(size);
+		this.idleWorkers = new LinkedBlockingQueue<TestWorker>();
+	}
+
+	public TestWorker acquire() throws IOException, InterruptedException {
+		permits.acquire();
+		TestWorker worker = idleWorkers.poll();
+		while (worker != null && !worker.isAlive())
+			worker = idleWorkers.poll();
+
+		if (worker == null) {
+			try {
+				worker = new TestWorker(binJavaDir, binTestDir, dependences, externalProjRoot, jvmPath);
+			} catch (IOException e) {
+				permits.release();
+				throw e;
+			}
+		}
+		return worker;
+	}
+
+	public void release(TestWorker worker) {
+		if (worker.isAlive() && worker.getRuns() < maxRuns)
+			idleWorkers.add(worker);
+		else
+			worker.shutdown();
+		permits.release();
+	}
+
+	/**
+	 * Runs the tests on workers of the pool, see TestWorker.run. A test that
+	 * times out ends the run of its worker, so the tests after it are run on
+	 * a fresh worker within what is left of timeout. The per-test timeouts of
+	 * a fresh worker allow for its cold start.
+	 */
+	public TestOutcomes run(Map<String, JavaFileObject> compiledClasses, List<String> tests,
+			TestDurationProfile durationProfile, long timeout, int failFastFrom)
+			throws IOException, InterruptedException {
+		TestOutcomes outcomes = new TestOutcomes();
+		long start = System.currentTimeMillis();
+		List<String> pendingTests = tests;
+		while (true) {
+			long timeLeft = 0;
+			if (timeout > 0) {
+				timeLeft = timeout - (System.currentTimeMillis() - start);
+				if (timeLeft <= 0) {
+					outcomes.setComplete(false);
+					outcomes.setTimedOut(true);
+					break;
+				}
+			}
+
+			TestWorker worker = acquire();
+			TestOutcomes workerOutcomes;
+			try {
+				Map<String, Long> testTimeouts = (durationProfile == null) ? null
+						: durationProfile.getTimeouts(pendingTests, worker.getRuns() == 0);
+				workerOutcomes = worker.run(compiledClasses, pendingTests, testTimeouts, timeLeft, failFastFrom);
+			} finally {
+				release(worker);
+			}
+			outcomes.addAll(workerOutcomes);
+
+			int executedCount = workerOutcomes.getExecutedTests().size();
+			if (!workerOutcomes.isComplete() || workerOutcomes.getTimedOutTests().isEmpty()
+					|| executedCount >= pendingTests.size())
+				break;
+			pendingTests = TestScheduler.getTestsAfterTimeout(pendingTests, executedCount, failFastFrom);
+			failFastFrom = -1;
+			if (pendingTests.isEmpty())
+				break;
+		}
+		return outcomes;
+	}
+
+	public void shutdown() {
+		TestWorker worker;
+		while ((worker = idleWorkers.poll()) != null)
+			worker.shutdown();
+	}
+}
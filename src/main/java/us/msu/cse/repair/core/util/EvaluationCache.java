@@ -0,0 +1,158 @@
+package us.msu.cse.repair.core.util;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, thread-safe memoization of fitness evaluations. Entries are keyed
+ * on the canonical edit set of a variant (modification point, manipulation,
+ * ingredient), so genotypes that decode to the same phenotype share a result.
+ * The least recently used entry is evicted once the capacity is reached.
+ */
+public class EvaluationCache {
+	private final Map<String, Entry> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public EvaluationCache(final int capacity) {
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	public Entry get(String key) {
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null)
+			hits.incrementAndGet();
+		else
+			misses.incrementAndGet();
+		return entry;
+	}
+
+	public void put(String key, Entry entry) {
+		synchronized (entries) {
+			entries.put(key, entry);
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@Override
+	public String toString() {
+		long h = getHits();
+		long m = getMisses();
+		double rate = (h + m) == 0 ? 0 : (double) h / (h + m);
+		return "Evaluation cache: " + h + " hits, " + m + " misses (hit rate " + String.format("%.2f", rate)
+				+ "), " + size() + " entries";
+	}
+
+	public static class Entry {
+		private final boolean compiled;
+		private final boolean exceptional;
+		private final boolean status;
+		private final boolean complete;
+		private final double ratioOfFailuresInPositive;
+		private final double ratioOfFailuresInNegative;
+		private final int failureCount;
+		private final Set<String> failedTests;
+
+		private Entry(boolean compiled, boolean exceptional, boolean status, boolean complete,
+				double ratioOfFailuresInPositive, double ratioOfFailuresInNegative, int failureCount,
+				Set<String> failedTests) {
+			this.compiled = compiled;
+			this.exceptional = exceptional;
+			this.status = status;
+			this.complete = complete;
+			this.ratioOfFailuresInPositive = ratioOfFailuresInPositive;
+			this.ratioOfFailuresInNegative = ratioOfFailuresInNegative;
+			this.failureCount = failureCount;
+			if (failedTests == null)
+				this.failedTests = Collections.emptySet();
+			else
+				this.failedTests = Collections.unmodifiableSet(new HashSet<String>(failedTests));
+		}
+
+		public static Entry compileFailure() {
+			return new Entry(false, false, false, true, 0, 0, 0, null);
+		}
+
+		public static Entry exceptional() {
+			return new Entry(true, true, false, false, 0, 0, 0, null);
+		}
+
+		/**
+		 * An outcome that is not complete comes from a run cut short by
+		 * waitTime, whose unexecuted tests were estimated.
+		 */
+		public static Entry executed(boolean status, double ratioOfFailuresInPositive,
+				double ratioOfFailuresInNegative, int failureCount, Set<String> failedTests, boolean complete) {
+			return new Entry(true, false, status, complete, ratioOfFailuresInPositive, ratioOfFailuresInNegative,
+					failureCount, failedTests);
+		}
+
+		public boolean isCompiled() {
+			return compiled;
+		}
+
+		public boolean isExceptional() {
+			return exceptional;
+		}
+
+		public boolean getStatus() {
+			return status;
+		}
+
+		public boolean isComplete() {
+			return complete;
+		}
+
+		/**
+		 * Whether the outcome can be reused for the same edits. A run that
+		 * timed out or died may well finish once the machine is less loaded,
+		 * so it is evaluated again.
+		 */
+		public boolean isCacheable() {
+			return !exceptional && complete;
+		}
+
+		public double getRatioOfFailuresInPositive() {
+			return ratioOfFailuresInPositive;
+		}
+
+		public double getRatioOfFailuresInNegative() {
+			return ratioOfFailuresInNegative;
+		}
+
+		public int getFailureCount() {
+			return failureCount;
+		}
+
+		public Set<String> getFailedTests() {
+			return failedTests;
+		}
+	}
+}
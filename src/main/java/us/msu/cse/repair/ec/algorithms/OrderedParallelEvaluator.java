@@ -0,0 +1,112 @@
+package us.msu.cse.repair.ec.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jmetal.core.Problem;
+import jmetal.core.Solution;
+import jmetal.util.Configuration;
+import jmetal.util.JMException;
+import jmetal.util.parallel.IParallelEvaluator;
+import us.msu.cse.repair.core.AbstractRepairProblem;
+import us.msu.cse.repair.core.testexecutors.TestScheduler;
+
+/**
+ * Parallel evaluator for jMetal's pNSGAII that keeps a run reproducible. The
+ * random decisions of an evaluation are taken while the solutions are added,
+ * in the order the algorithm creates them; only compilation and test
+ * execution run concurrently. Results are then recorded in the same order.
+ * The test outcomes of the solutions are held back from the test scheduler
+ * until all of them are evaluated, so every evaluation of a batch schedules
+ * its tests and estimates its failures from the same history.
+ */
+public class OrderedParallelEvaluator implements IParallelEvaluator {
+	private final int numberOfThreads;
+	private Problem problem;
+	private ExecutorService executor;
+	private List<Solution> solutions;
+
+	public OrderedParallelEvaluator(int numberOfThreads) {
+		this.numberOfThreads = numberOfThreads;
+	}
+
+	@Override
+	public void startEvaluator(Problem problem) {
+		this.problem = problem;
+		executor = Executors.newFixedThreadPool(numberOfThreads);
+		solutions = new ArrayList<Solution>();
+		System.out.println("Evaluating solutions with " + numberOfThreads + " threads");
+	}
+
+	@Override
+	public void addSolutionForEvaluation(Solution solution) {
+		try {
+			if (problem instanceof AbstractRepairProblem)
+				((AbstractRepairProblem) problem).prepareEvaluation(solution);
+		} catch (JMException e) {
+			Configuration.logger_.severe("OrderedParallelEvaluator.addSolutionForEvaluation: " + e.getMessage());
+			throw new RuntimeException(e);
+		}
+		solutions.add(solution);
+	}
+
+	@Override
+	public List<Solution> parallelEvaluation() {
+		final TestScheduler scheduler = (problem instanceof AbstractRepairProblem)
+				? ((AbstractRepairProblem) problem).getTestScheduler() : null;
+
+		List<Future<Map<String, int[]>>> futures = new ArrayList<Future<Map<String, int[]>>>();
+		for (final Solution solution : solutions) {
+			futures.add(executor.submit(new Callable<Map<String, int[]>>() {
+				@Override
+				public Map<String, int[]> call() throws Exception {
+					if (scheduler == null) {
+						problem.evaluate(solution);
+						return null;
+					}
+					Map<String, int[]> outcomes = scheduler.defer();
+					try {
+						problem.evaluate(solution);
+					} finally {
+						scheduler.stopDeferring();
+					}
+					return outcomes;
+				}
+			}));
+		}
+
+		List<Solution> evaluated = new ArrayList<Solution>(solutions);
+		try {
+			List<Map<String, int[]>> outcomes = new ArrayList<Map<String, int[]>>();
+			for (Future<Map<String, int[]>> future : futures)
+				outcomes.add(future.get());
+
+			if (scheduler != null) {
+				for (Map<String, int[]> solutionOutcomes : outcomes)
+					scheduler.apply(solutionOutcomes);
+			}
+
+			if (problem instanceof AbstractRepairProblem) {
+				for (Solution solution : evaluated)
+					((AbstractRepairProblem) problem).completeEvaluation(solution);
+			}
+		} catch (InterruptedException | ExecutionException | JMException e) {
+			Configuration.logger_.severe("OrderedParallelEvaluator.parallelEvaluation: " + e.getMessage());
+			throw new RuntimeException(e);
+		} finally {
+			solutions.clear();
+		}
+		return evaluated;
+	}
+
+	@Override
+	public void stopEvaluator() {
+		executor.shutdown();
+	}
+}
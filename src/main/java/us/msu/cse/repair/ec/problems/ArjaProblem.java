@@ -6,6 +6,8 @@ import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -14,7 +16,6 @@ import java.util.Map.Entry;
 import javax.tools.JavaFileObject;
 
 import org.eclipse.jdt.core.dom.Statement;
-import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
 
 import jmetal.core.Solution;
 import jmetal.encodings.variable.ArrayInt;
@@ -23,10 +24,13 @@ import jmetal.util.Configuration;
 import jmetal.util.JMException;
 import us.msu.cse.repair.core.AbstractRepairProblem;
 import us.msu.cse.repair.core.filterrules.MIFilterRule;
+import us.msu.cse.repair.core.manipulation.CompileFailureBlacklist;
+import us.msu.cse.repair.core.manipulation.SourceEdit;
 import us.msu.cse.repair.core.novelty.BehaviorArchive;
 import us.msu.cse.repair.core.novelty.BehaviorDescriptor;
 import us.msu.cse.repair.core.parser.ModificationPoint;
 import us.msu.cse.repair.core.testexecutors.ITestExecutor;
+import us.msu.cse.repair.core.util.EvaluationCache;
 import us.msu.cse.repair.core.util.IO;
 import us.msu.cse.repair.ec.representation.ArrayIntAndBinarySolutionType;
 
@@ -52,6 +56,16 @@ public class ArjaProblem extends AbstractRepairProblem {
 	BehaviorArchive behaviorArchive;
 	Set<String> allTests;  // 所有测试用例（正测试+负测试）
 
+	// phenotype-level fitness memoization, null if disabled
+	EvaluationCache evaluationCache;
+
+	// edits known to break compilation, null if disabled
+	CompileFailureBlacklist compileFailureBlacklist;
+
+	// edit selections of the solutions being evaluated by a parallel evaluator
+	Map<Solution, EditSelection> preparedSelections = Collections
+			.synchronizedMap(new IdentityHashMap<Solution, EditSelection>());
+
 	public ArjaProblem(Map<String, Object> parameters) throws Exception {
 		super(parameters);
 
@@ -99,6 +113,19 @@ public class ArjaProblem extends AbstractRepairProblem {
 		if (noveltyDiversityWeight == null)
 			noveltyDiversityWeight = 0.3;
 
+		Integer evaluationCacheSize = (Integer) parameters.get("evaluationCacheSize");
+		if (evaluationCacheSize == null)
+			evaluationCacheSize = 10000;
+		if (evaluationCacheSize > 0)
+			evaluationCache = new EvaluationCache(evaluationCacheSize);
+
+		// javac errors are mapped to edits through their fragments
+		Boolean compileBlacklist = (Boolean) parameters.get("compileBlacklist");
+		if (compileBlacklist == null)
+			compileBlacklist = true;
+		if (compileBlacklist && editFragmentCache != null)
+			compileFailureBlacklist = new CompileFailureBlacklist(editFragmentCache);
+
 		setProblemParams();
 		
 		// 初始化行为档案（如果启用 Novelty Search）
@@ -150,12 +177,41 @@ public class ArjaProblem extends AbstractRepairProblem {
 	public void evaluate(Solution solution) throws JMException {
 		// TODO Auto-generated method stub
 		System.out.println("One fitness evaluation starts...");
-		
+
+		// solutions handed out by prepareEvaluation are finished by completeEvaluation
+		EditSelection selection = preparedSelections.get(solution);
+		boolean prepared = selection != null;
+		if (!prepared)
+			selection = selectEdits(solution);
+
+		evaluateEdits(solution, selection);
+
+		if (!prepared)
+			finishEvaluation(solution, selection);
+	}
+
+	@Override
+	public void prepareEvaluation(Solution solution) throws JMException {
+		preparedSelections.put(solution, selectEdits(solution));
+	}
+
+	@Override
+	public void completeEvaluation(Solution solution) throws JMException {
+		EditSelection selection = preparedSelections.remove(solution);
+		if (selection != null)
+			finishEvaluation(solution, selection);
+	}
+
+	/**
+	 * Decodes the genome into the edits to apply. This is the only step of an
+	 * evaluation that draws random numbers (in MIFilterRule) and writes back
+	 * into the genome.
+	 */
+	EditSelection selectEdits(Solution solution) {
 		int[] array = ((ArrayInt) solution.getDecisionVariables()[0]).array_;
 		BitSet bits = ((Binary) solution.getDecisionVariables()[1]).bits_;
 
 		int size = modificationPoints.size();
-		Map<String, ASTRewrite> astRewriters = new HashMap<String, ASTRewrite>();
 
 		Map<Integer, Double> selectedMP = new HashMap<Integer, Double>();
 
@@ -193,6 +249,26 @@ public class ArjaProblem extends AbstractRepairProblem {
 			}
 		}
 
+		// repair the genome: blacklisted edits are switched off before compilation
+		if (compileFailureBlacklist != null && !selectedMP.isEmpty()) {
+			boolean repaired = false;
+			Iterator<Integer> iter = selectedMP.keySet().iterator();
+			while (iter.hasNext()) {
+				int i = iter.next();
+				if (compileFailureBlacklist.contains(getSourceEdit(i, size, array))) {
+					iter.remove();
+					bits.set(i, false);
+					repaired = true;
+				}
+			}
+			if (repaired) {
+				if (selectedMP.isEmpty())
+					compileFailureBlacklist.recordSkippedCompilation();
+				else
+					compileFailureBlacklist.recordRepairedVariant();
+			}
+		}
+
 		if (selectedMP.isEmpty()) {
 			assignMaxObjectiveValues(solution);
 			// ✅ 增强日志：输出为什么没有选中修改点
@@ -203,7 +279,7 @@ public class ArjaProblem extends AbstractRepairProblem {
 			if (miFilterRule) {
 				System.out.println("  Suggestion: Try disabling miFilterRule (-DmiFilterRule false)");
 			}
-			return;
+			return new EditSelection(null, 0);
 		}
 
 		int numberOfEdits = selectedMP.size();
@@ -220,29 +296,61 @@ public class ArjaProblem extends AbstractRepairProblem {
 			numberOfEdits = maxNumberOfEdits;
 		}
 
-		for (int i = 0; i < numberOfEdits; i++)
-			manipulateOneModificationPoint(list.get(i).getKey(), size, array, astRewriters);
-
 		for (int i = numberOfEdits; i < selectedMP.size(); i++)
 			bits.set(list.get(i).getKey(), false);
 
-		Map<String, String> modifiedJavaSources = getModifiedJavaSources(astRewriters);
+		return new EditSelection(list, numberOfEdits);
+	}
+
+	void evaluateEdits(Solution solution, EditSelection selection) throws JMException {
+		if (selection.list == null)
+			return;
+
+		int[] array = ((ArrayInt) solution.getDecisionVariables()[0]).array_;
+		int size = modificationPoints.size();
+		List<Map.Entry<Integer, Double>> list = selection.list;
+		int numberOfEdits = selection.numberOfEdits;
+
+		String editKey = null;
+		if (evaluationCache != null) {
+			editKey = getEditKey(list, numberOfEdits, size, array);
+			EvaluationCache.Entry cached = evaluationCache.get(editKey);
+			if (cached != null) {
+				System.out.println("Fitness evaluation cache hit, skipping compilation and test execution");
+				if (cached.isCompiled()) {
+					setNumberOfEditsObjective(solution, numberOfEdits);
+					// the behavior of these edits is in the archive already
+					assignTestObjectives(cached, solution, false);
+				} else
+					assignMaxObjectiveValues(solution);
+				return;
+			}
+		}
+
+		List<SourceEdit> edits = new ArrayList<SourceEdit>();
+		for (int i = 0; i < numberOfEdits; i++)
+			edits.add(getSourceEdit(list.get(i).getKey(), size, array));
+
+		Map<String, String> modifiedJavaSources = getModifiedJavaSources(edits);
 		System.out.println("Compiling modified sources...");
-		Map<String, JavaFileObject> compiledClasses = getCompiledClassesForTestExecution(modifiedJavaSources);
+		Map<String, List<Long>> errorPositions = (compileFailureBlacklist != null)
+				? new HashMap<String, List<Long>>() : null;
+		Map<String, JavaFileObject> compiledClasses = getCompiledClassesForTestExecution(modifiedJavaSources,
+				errorPositions);
 
 		boolean status = false;
 		if (compiledClasses != null) {
 			System.out.println("Compilation successful, starting test execution...");
-			// 设置编辑数量目标（如果不是 full NS 模式，或者目标数量>=2）
-			if (!noveltySearchMode.equalsIgnoreCase("full") && (numberOfObjectives == 2 || numberOfObjectives == 3)) {
-				solution.setObjective(0, numberOfEdits);
-			} else if (noveltySearchMode.equalsIgnoreCase("full") && numberOfObjectives >= 2) {
-				// full 模式下，目标0是编辑数量
-				solution.setObjective(0, numberOfEdits);
-			}
+			setNumberOfEditsObjective(solution, numberOfEdits);
 			try {
 				System.out.println("Invoking test executor...");
-				status = invokeTestExecutor(compiledClasses, solution);
+				EvaluationCache.Entry result = invokeTestExecutor(compiledClasses, selection, solution);
+				if (result != null) {
+					assignTestObjectives(result, solution, true);
+					status = result.getStatus();
+					if (editKey != null && result.isCacheable())
+						evaluationCache.put(editKey, result);
+				}
 				System.out.println("Test execution completed, status: " + status);
 			} catch (Exception e) {
 				// TODO Auto-generated catch block
@@ -251,19 +359,76 @@ public class ArjaProblem extends AbstractRepairProblem {
 			}
 		} else {
 			assignMaxObjectiveValues(solution);
+			if (editKey != null)
+				evaluationCache.put(editKey, EvaluationCache.Entry.compileFailure());
+			if (compileFailureBlacklist != null)
+				compileFailureBlacklist.learn(getEditsPerFile(edits), errorPositions);
 			System.out.println("Compilation fails! (This is normal for some individuals)");
 		}
 
-		if (status) {
-			save(solution, modifiedJavaSources, compiledClasses, list, numberOfEdits);
-		}
+		if (status)
+			selection.modifiedJavaSources = modifiedJavaSources;
+	}
+
+	/**
+	 * Records the outcome of an evaluation: saves the patch of a
+	 * test-adequate variant and counts the evaluation.
+	 */
+	void finishEvaluation(Solution solution, EditSelection selection) {
+		if (selection.list == null)
+			return;
+
+		if (selection.modifiedJavaSources != null)
+			save(solution, selection.modifiedJavaSources, selection.list, selection.numberOfEdits);
 
-		evaluations++;
+		evaluations.incrementAndGet();
 		System.out.println("One fitness evaluation is finished...");
 	}
 
-	void save(Solution solution, Map<String, String> modifiedJavaSources, Map<String, JavaFileObject> compiledClasses,
-			List<Map.Entry<Integer, Double>> list, int numberOfEdits) {
+	void setNumberOfEditsObjective(Solution solution, int numberOfEdits) {
+		// 设置编辑数量目标（如果不是 full NS 模式，或者目标数量>=2）
+		if (!noveltySearchMode.equalsIgnoreCase("full") && (numberOfObjectives == 2 || numberOfObjectives == 3)) {
+			solution.setObjective(0, numberOfEdits);
+		} else if (noveltySearchMode.equalsIgnoreCase("full") && numberOfObjectives >= 2) {
+			// full 模式下，目标0是编辑数量
+			solution.setObjective(0, numberOfEdits);
+		}
+	}
+
+	/**
+	 * Canonical representation of the edits a genome decodes to: the sorted
+	 * (modification point, manipulation, ingredient) triples. The ingredient
+	 * is only part of the key for manipulations that actually use one.
+	 */
+	String getEditKey(List<Map.Entry<Integer, Double>> list, int numberOfEdits, int size, int[] array) {
+		List<String> edits = new ArrayList<String>();
+		for (int i = 0; i < numberOfEdits; i++) {
+			int loc = list.get(i).getKey();
+			String manipName = availableManipulations.get(loc).get(array[loc]);
+			int ingred = -1;
+			if (!modificationPoints.get(loc).getIngredients().isEmpty() && usesIngredient(manipName))
+				ingred = array[loc + size];
+			edits.add(loc + ":" + manipName + ":" + ingred);
+		}
+		Collections.sort(edits);
+		return String.join(";", edits);
+	}
+
+	static boolean usesIngredient(String manipName) {
+		return manipName.equalsIgnoreCase("Replace") || manipName.equalsIgnoreCase("InsertBefore")
+				|| manipName.equalsIgnoreCase("InsertAfter");
+	}
+
+	public EvaluationCache getEvaluationCache() {
+		return evaluationCache;
+	}
+
+	public CompileFailureBlacklist getCompileFailureBlacklist() {
+		return compileFailureBlacklist;
+	}
+
+	void save(Solution solution, Map<String, String> modifiedJavaSources, List<Map.Entry<Integer, Double>> list,
+			int numberOfEdits) {
 		List<Integer> opList = new ArrayList<Integer>();
 		List<Integer> locList = new ArrayList<Integer>();
 		List<Integer> ingredList = new ArrayList<Integer>();
@@ -284,14 +449,14 @@ public class ArjaProblem extends AbstractRepairProblem {
 			if (addTestAdequatePatch(opList, locList, ingredList)) {
 				if (diffFormat) {
 					try {
-						IO.savePatch(modifiedJavaSources, srcJavaDir, this.patchOutputRoot, globalID);
+						IO.savePatch(modifiedJavaSources, srcJavaDir, this.patchOutputRoot, globalID.get());
 					} catch (InterruptedException e) {
 						// TODO Auto-generated catch block
 						e.printStackTrace();
 					}
 				}
 				saveTestAdequatePatch(opList, locList, ingredList);
-				globalID++;
+				globalID.incrementAndGet();
 			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
@@ -299,8 +464,7 @@ public class ArjaProblem extends AbstractRepairProblem {
 		}
 	}
 
-	boolean manipulateOneModificationPoint(int i, int size, int array[], Map<String, ASTRewrite> astRewriters)
-			throws JMException {
+	SourceEdit getSourceEdit(int i, int size, int array[]) {
 		ModificationPoint mp = modificationPoints.get(i);
 		String manipName = availableManipulations.get(i).get(array[i]);
 
@@ -308,10 +472,11 @@ public class ArjaProblem extends AbstractRepairProblem {
 		if (!mp.getIngredients().isEmpty())
 			ingredStatement = mp.getIngredients().get(array[i + size]);
 
-		return manipulateOneModificationPoint(mp, manipName, ingredStatement, astRewriters);
+		return new SourceEdit(mp, manipName, ingredStatement);
 	}
 
-	boolean invokeTestExecutor(Map<String, JavaFileObject> compiledClasses, Solution solution) throws Exception {
+	EvaluationCache.Entry invokeTestExecutor(Map<String, JavaFileObject> compiledClasses, EditSelection selection,
+			Solution solution) throws Exception {
 		Set<String> samplePosTests = getSamplePositiveTests();
 		System.out.println("Getting test executor, sample tests: " + samplePosTests.size());
 		
@@ -321,39 +486,64 @@ public class ArjaProblem extends AbstractRepairProblem {
 			System.err.println("   This means test filtering failed and returned 0 tests.");
 			System.err.println("   Cannot evaluate fitness without tests.");
 			assignMaxObjectiveValues(solution);
-			return false;
+			return null;
 		}
 		
-		ITestExecutor testExecutor = getTestExecutor(compiledClasses, samplePosTests);
+		// positive tests that do not reach an edited point pass as on the original program
+		Set<String> executePosTests = samplePosTests;
+		if (testCoverageMatrix != null) {
+			BitSet editedPoints = new BitSet(modificationPoints.size());
+			for (int i = 0; i < selection.numberOfEdits; i++)
+				editedPoints.set(selection.list.get(i).getKey());
+			executePosTests = testCoverageMatrix.getCoveringTests(editedPoints, samplePosTests);
+			System.out.println("Test impact selection: " + executePosTests.size() + " of " + samplePosTests.size()
+					+ " positive tests");
+		}
+
+		ITestExecutor testExecutor = getTestExecutor(compiledClasses, executePosTests);
 		System.out.println("Test executor created, running tests (waitTime: " + waitTime + "ms)...");
 
 		boolean status = testExecutor.runTests();
 		System.out.println("Tests run completed, status: " + status + ", exceptional: " + testExecutor.isExceptional());
 
-		if (status && percentage != null && percentage < 1) {
+		// the ratio is over the tests that were meant to run, the skipped ones count as passed
+		double ratioOfFailuresInPositive = testExecutor.getRatioOfFailuresInPositive() * executePosTests.size()
+				/ samplePosTests.size();
+
+		if (status && (executePosTests.size() < positiveTests.size())) {
 			testExecutor = getTestExecutor(compiledClasses, positiveTests);
 			status = testExecutor.runTests();
+			ratioOfFailuresInPositive = testExecutor.getRatioOfFailuresInPositive();
 		}
 
-		if (!testExecutor.isExceptional()) {
-			double ratioOfFailuresInPositive = testExecutor.getRatioOfFailuresInPositive();
-			double ratioOfFailuresInNegative = testExecutor.getRatioOfFailuresInNegative();
-			double fitness = weight * testExecutor.getRatioOfFailuresInPositive()
-					+ testExecutor.getRatioOfFailuresInNegative();
+		if (testExecutor.isExceptional())
+			return EvaluationCache.Entry.exceptional();
+
+		return EvaluationCache.Entry.executed(status, ratioOfFailuresInPositive,
+				testExecutor.getRatioOfFailuresInNegative(),
+				testExecutor.getFailureCountInNegative() + testExecutor.getFailureCountInPositive(),
+				testExecutor.getFailedTests(), !testExecutor.isPartial());
+	}
+
+	/**
+	 * Sets the test objectives from the outcome; the behavior descriptor is
+	 * added to the novelty archive only if archive is true.
+	 */
+	void assignTestObjectives(EvaluationCache.Entry result, Solution solution, boolean archive) {
+		if (!result.isExceptional()) {
+			double ratioOfFailuresInPositive = result.getRatioOfFailuresInPositive();
+			double ratioOfFailuresInNegative = result.getRatioOfFailuresInNegative();
+			double fitness = weight * ratioOfFailuresInPositive + ratioOfFailuresInNegative;
 			
 			// 计算行为描述符（如果启用 Novelty Search）
 			BehaviorDescriptor behaviorDescriptor = null;
 			if (!noveltySearchMode.equalsIgnoreCase("none")) {
 				try {
-					Set<String> failedTests = testExecutor.getFailedTests();
-					if (failedTests == null) {
-						System.out.println("Warning: getFailedTests() returned null, using empty set");
-						failedTests = new java.util.HashSet<String>();
-					}
-					behaviorDescriptor = new BehaviorDescriptor(allTests, failedTests);
+					behaviorDescriptor = new BehaviorDescriptor(allTests, result.getFailedTests());
 					
 					// 将行为描述符添加到档案
-					behaviorArchive.add(behaviorDescriptor);
+					if (archive)
+						behaviorArchive.add(behaviorDescriptor);
 				} catch (Exception e) {
 					System.err.println("Error creating behavior descriptor: " + e.getMessage());
 					e.printStackTrace();
@@ -361,8 +551,7 @@ public class ArjaProblem extends AbstractRepairProblem {
 				}
 			}
 			
-			System.out.println("Number of failed tests: "
-					+ (testExecutor.getFailureCountInNegative() + testExecutor.getFailureCountInPositive()));
+			System.out.println("Number of failed tests: " + result.getFailureCount());
 			System.out.println("Weighted failure rate: " + fitness);
 			
 			// 根据 Novelty Search 模式设置目标值
@@ -446,7 +635,6 @@ public class ArjaProblem extends AbstractRepairProblem {
 			assignMaxObjectiveValues(solution);
 			System.out.println("Timeout occurs!");
 		}
-		return status;
 	}
 
 	void assignMaxObjectiveValues(Solution solution) {
@@ -454,4 +642,16 @@ public class ArjaProblem extends AbstractRepairProblem {
 			solution.setObjective(i, Double.MAX_VALUE);
 	}
 
+	static class EditSelection {
+		// selected modification points, sorted by suspiciousness if truncated; null if none
+		final List<Map.Entry<Integer, Double>> list;
+		final int numberOfEdits;
+		// sources of a test-adequate variant, kept until its patch is saved
+		Map<String, String> modifiedJavaSources;
+
+		EditSelection(List<Map.Entry<Integer, Double>> list, int numberOfEdits) {
+			this.list = list;
+			this.numberOfEdits = numberOfEdits;
+		}
+	}
 }
@@ -110,7 +110,7 @@ public class GenProgProblem extends AbstractRepairProblem {
 			save(solution, modifiedJavaSources, compiledClasses);
 		}
 
-		evaluations++;
+		evaluations.incrementAndGet();
 		System.out.println("One fitness evaluation is finished...");
 	}
 
@@ -123,14 +123,14 @@ public class GenProgProblem extends AbstractRepairProblem {
 			if (addTestAdequatePatch(opList, locList, ingredList)) {
 				if (diffFormat) {
 					try {
-						IO.savePatch(modifiedJavaSources, srcJavaDir, this.patchOutputRoot, globalID);
+						IO.savePatch(modifiedJavaSources, srcJavaDir, this.patchOutputRoot, globalID.get());
 					} catch (InterruptedException e) {
 						// TODO Auto-generated catch block
 						e.printStackTrace();
 					}
 				}
 				saveTestAdequatePatch(opList, locList, ingredList);
-				globalID++;
+				globalID.incrementAndGet();
 			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block